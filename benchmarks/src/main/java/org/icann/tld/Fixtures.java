@@ -0,0 +1,107 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.apache.commons.io.*;
+import org.icann.tld.util.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Loads the checked in benchmark fixtures.
+ * <p/>
+ * <code>tlds-1500.txt</code> is the IANA list of Version 2024040200 (1,448 TLDs),
+ * <code>tlds-10000.txt</code> is the same list padded with generated <code>XN--BENCH</code>
+ * names to 10,000 entries and <code>domains-10000.txt</code> holds generated domain names,
+ * about one in ten of them with a TLD that does not exist. The files never change, so
+ * results are comparable between runs and machines.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class Fixtures {
+
+    static final String TLDS_1500 = "tlds-1500.txt";
+    static final String TLDS_10000 = "tlds-10000.txt";
+    static final String DOMAINS = "domains-10000.txt";
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return the lines of a fixture
+     */
+    static String[] lines(String name) throws IOException {
+        InputStream in = open(name);
+        try {
+            List<String> lines = IOUtils.readLines(in, "US-ASCII");
+            return lines.toArray(new String[lines.size()]);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copy a fixture to a temporary file, for the code paths that read files.
+     *
+     * @return the temporary file, deleted when the JVM exits
+     */
+    static File file(String name) throws IOException {
+        File file = File.createTempFile(name, ".txt");
+        file.deleteOnExit();
+        InputStream in = open(name);
+        try {
+            FileUtils.copyInputStreamToFile(in, file);
+        } finally {
+            in.close();
+        }
+        return file;
+    }
+
+    /**
+     * @return a cache holding a TLD list fixture
+     */
+    static TldCache cache(String name) throws IOException {
+        String[] lines = lines(name);
+        return new TldCache(new VersionParser().parse(lines[0]), lines[0], Arrays.asList(lines).subList(1, lines.length));
+    }
+
+    /**
+     * @return an instance loaded with a TLD list fixture that never goes to the network
+     */
+    static TldVerify offlineTldVerify(String name) throws Exception {
+        TldVerify tldVerify = new TldVerify();
+        tldVerify.loadTldDB(file(name).getPath());
+        return tldVerify;
+    }
+
+    private static InputStream open(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream("fixtures/" + name);
+        if (in == null) {
+            throw new FileNotFoundException("Missing benchmark fixture " + name);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.icann.tld.util.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Lookups in the in memory TLD cache, for names that exist and names that do not.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TldCacheBenchmark {
+
+    @Param({Fixtures.TLDS_1500, Fixtures.TLDS_10000})
+    public String tldList;
+
+    private TldCache cache;
+    private String[] domains;
+    private long[] bounds;
+    private String[] tlds;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        cache = Fixtures.cache(tldList);
+        domains = Fixtures.lines(Fixtures.DOMAINS);
+        bounds = new long[domains.length];
+        tlds = new String[domains.length];
+        DomainNameUtil domainNameUtil = new DomainNameUtil();
+        for (int i = 0; i < domains.length; i++) {
+            bounds[i] = domainNameUtil.getTopLevelDomainBounds(domains[i]);
+            tlds[i] = domainNameUtil.getTopLevelDomain(domains[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean exist() {
+        int i = next();
+        return cache.exist(tlds[i]);
+    }
+
+    @Benchmark
+    public boolean existInPlace() {
+        int i = next();
+        return cache.exist(domains[i], DomainNameUtil.topLevelDomainStart(bounds[i]), DomainNameUtil.topLevelDomainEnd(bounds[i]));
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == domains.length ? 0 : i + 1;
+        return i;
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.icann.tld.util.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Loading a TLD list from a cache file, from its text form and from its binary snapshot,
+ * and computing the MD5 digest of the file.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TldListBenchmark {
+
+    @Param({Fixtures.TLDS_1500, Fixtures.TLDS_10000})
+    public String tldList;
+
+    private File file;
+    private File snapshotFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = Fixtures.file(tldList);
+        snapshotFile = File.createTempFile(tldList, TldSnapshot.SUFFIX);
+        snapshotFile.deleteOnExit();
+        TldSnapshot.write(Fixtures.cache(tldList), snapshotFile);
+    }
+
+    @Benchmark
+    public TldVerify loadTldDB() throws Exception {
+        TldVerify tldVerify = new TldVerify();
+        tldVerify.loadTldDB(file.getPath());
+        return tldVerify;
+    }
+
+    @Benchmark
+    public TldCache readSnapshot() throws Exception {
+        return TldSnapshot.read(snapshotFile);
+    }
+
+    @Benchmark
+    public String createDigest() {
+        return new FileBasedMD5Generator().createDigest(file);
+    }
+}
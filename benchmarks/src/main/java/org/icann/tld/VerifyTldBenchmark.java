@@ -0,0 +1,93 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Online verification against an in-process DNS server on the loopback interface, so
+ * the numbers measure the client and not the network. With the DNS result cache disabled
+ * every call is a query, with the cache enabled almost every call is a hit.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VerifyTldBenchmark {
+
+    @Param({"0", "4096"})
+    public int dnsCacheSize;
+
+    private StubDnsServer server;
+    private TldVerify tldVerify;
+    private String[] domains;
+    private List<String> batch;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<String> tlds = Fixtures.cache(Fixtures.TLDS_1500).tlds();
+        server = new StubDnsServer(tlds.toArray(new String[tlds.size()]));
+        tldVerify = new TldVerify();
+        tldVerify.setDnsServer(server.getAddress());
+        tldVerify.setDnsCacheSize(dnsCacheSize);
+        domains = Fixtures.lines(Fixtures.DOMAINS);
+        batch = Arrays.asList(domains).subList(0, 1000);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        tldVerify.close();
+        server.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String next(String[] domains) {
+            int i = next % domains.length;
+            next = i + 1;
+            return domains[i];
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean verifyTld(Cursor cursor) {
+        return tldVerify.verifyTld(cursor.next(domains));
+    }
+
+    @Benchmark
+    public Map<String, Boolean> verifyTldAsyncBatch() throws Exception {
+        return tldVerify.verifyTldAsync(batch).get();
+    }
+}
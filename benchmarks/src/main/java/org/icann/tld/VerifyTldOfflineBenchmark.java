@@ -0,0 +1,95 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Offline verification through one shared {@link TldVerify} from one, four and all
+ * available threads, to show contention on the shared cache.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerifyTldOfflineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        TldVerify tldVerify;
+        String[] domains;
+
+        @Setup
+        public void setUp() throws Exception {
+            tldVerify = Fixtures.offlineTldVerify(Fixtures.TLDS_1500);
+            domains = Fixtures.lines(Fixtures.DOMAINS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup
+        public void setUp() {
+            next = ThreadLocalRandom.current().nextInt(10000);
+        }
+
+        String next(String[] domains) {
+            int i = next % domains.length;
+            next = i + 1;
+            return domains[i];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean oneThread(Shared shared, Cursor cursor) throws Exception {
+        return shared.tldVerify.verifyTldOffline(cursor.next(shared.domains));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean fourThreads(Shared shared, Cursor cursor) throws Exception {
+        return shared.tldVerify.verifyTldOffline(cursor.next(shared.domains));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean allThreads(Shared shared, Cursor cursor) throws Exception {
+        return shared.tldVerify.verifyTldOffline(cursor.next(shared.domains));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean[] batch(Shared shared) throws Exception {
+        return shared.tldVerify.verifyTldOffline(shared.domains);
+    }
+}
@@ -0,0 +1,106 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Stops calls to a remote service after it failed several times in a row.
+ * <p/>
+ * The breaker starts closed and lets every call through. After <code>failureThreshold</code>
+ * consecutive failures it opens, and calls are refused for <code>openNanos</code>. Then one
+ * trial call is let through: if it succeeds the breaker closes again, if it fails the breaker
+ * stays open for another period. Callers report slow calls as failures, and calls that ended
+ * without an outcome, e.g. because the caller was interrupted, as cancelled.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+    private final AtomicBoolean open = new AtomicBoolean();
+    private final AtomicBoolean trial = new AtomicBoolean();
+
+    /**
+     * @param failureThreshold the number of consecutive failures that open the breaker
+     * @param openNanos        how long calls are refused once the breaker is open
+     */
+    CircuitBreaker(int failureThreshold, long openNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * @return <code>true</code> if the call may be made, the caller must then report its outcome
+     *         or that it was cancelled
+     */
+    boolean allowRequest() {
+        if (!open.get()) {
+            return true;
+        }
+        if (System.nanoTime() - openedAt.get() < openNanos) {
+            return false;
+        }
+        return trial.compareAndSet(false, true);
+    }
+
+    /**
+     * Report a call that succeeded, closing the breaker.
+     */
+    void onSuccess() {
+        failures.set(0);
+        open.set(false);
+        trial.set(false);
+    }
+
+    /**
+     * Report a call that failed or was too slow.
+     */
+    void onFailure() {
+        if (failures.incrementAndGet() >= failureThreshold || open.get()) {
+            openedAt.set(System.nanoTime());
+            open.set(true);
+            trial.set(false);
+        }
+    }
+
+    /**
+     * Report a call that ended without an outcome. If it was the trial call, the next
+     * call becomes the trial call instead.
+     */
+    void onCancelled() {
+        trial.set(false);
+    }
+
+    /**
+     * @return <code>true</code> if calls are currently refused
+     */
+    boolean isOpen() {
+        return open.get() && !(System.nanoTime() - openedAt.get() >= openNanos && !trial.get());
+    }
+}
@@ -0,0 +1,171 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A bounded, concurrent cache of DNS verification results keyed by top level domain.
+ * <p/>
+ * Positive results are kept for the TTL of the SOA record and negative results for
+ * the SOA minimum, following RFC 2308 negative caching. TTLs are capped at
+ * {@link #MAX_TTL_SECONDS}. Expired entries are dropped when they are looked up.
+ * <p/>
+ * When the cache grows past its size, entries are evicted in approximately least recently
+ * used order with the CLOCK algorithm: entries queue in the order they were put, a hit only
+ * marks its entry as referenced, and eviction takes entries from the head of the queue,
+ * giving a referenced one a second chance at the tail instead. A flood of lookups of
+ * distinct unknown domains therefore does not push out the ones in steady use, and reads
+ * take no lock.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class DnsResultCache {
+
+    /**
+     * The longest time a result is cached for, in seconds
+     */
+    static final long MAX_TTL_SECONDS = 24 * 60 * 60;
+
+    private final int maxSize;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    DnsResultCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param tld the normalized top level domain
+     * @return the cached result or <code>null</code> if there is none or it expired
+     */
+    Boolean get(String tld) {
+        Entry entry = entries.get(tld);
+        if (entry != null) {
+            if (entry.expires - System.nanoTime() > 0) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hits.increment();
+                return entry.exists;
+            }
+            entries.remove(tld, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param tld    the normalized top level domain
+     * @param exists the result to cache
+     * @param ttl    the number of seconds the result may be cached for
+     */
+    void put(String tld, boolean exists, long ttl) {
+        if (ttl <= 0 || maxSize == 0) {
+            return;
+        }
+        long expires = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.min(ttl, MAX_TTL_SECONDS));
+        Entry entry = new Entry(tld, exists, expires);
+        entries.put(tld, entry);
+        clock.add(entry);
+        queued.incrementAndGet();
+        if (isOverfull()) {
+            evict();
+        }
+    }
+
+    void clear() {
+        synchronized (clock) {
+            entries.clear();
+            clock.clear();
+            queued.set(0);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Evict until the cache fits. The queue also holds entries that were replaced or
+     * removed since they were queued; they are dropped as they come up, and are evicted
+     * when they make the queue twice as long as the cache may be. Each entry in the queue
+     * gets at most one second chance per eviction, so readers can not keep it going.
+     */
+    private void evict() {
+        synchronized (clock) {
+            long now = System.nanoTime();
+            int chances = queued.get();
+            while (isOverfull()) {
+                Entry entry = clock.poll();
+                if (entry == null) {
+                    return;
+                }
+                queued.decrementAndGet();
+                if (entries.get(entry.tld) != entry) {
+                    continue;
+                }
+                if (entry.referenced && entry.expires - now > 0 && chances-- > 0) {
+                    entry.referenced = false;
+                    clock.add(entry);
+                    queued.incrementAndGet();
+                } else {
+                    entries.remove(entry.tld, entry);
+                }
+            }
+        }
+    }
+
+    private boolean isOverfull() {
+        return entries.size() > maxSize || queued.get() > 2 * maxSize;
+    }
+
+    private static class Entry {
+
+        private final String tld;
+        private final boolean exists;
+        private final long expires;
+        private volatile boolean referenced;
+
+        Entry(String tld, boolean exists, long expires) {
+            this.tld = tld;
+            this.exists = exists;
+            this.expires = expires;
+        }
+    }
+}
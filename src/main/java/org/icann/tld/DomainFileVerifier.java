@@ -0,0 +1,240 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.apache.commons.io.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Verifies every domain name in a file of newline separated domain names against
+ * the fixed database of a {@link TldVerify}.
+ * <p/>
+ * The input is read through memory mapped windows of the file and every name is
+ * checked straight from a reusable character buffer, so no string is created per
+ * line. Results are written as <code>domain&lt;TAB&gt;true|false</code> lines, or
+ * only the invalid domain names when {@link #setInvalidOnly(boolean)} is set.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class DomainFileVerifier {
+
+    /**
+     * Default size of the memory mapped window
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final byte[] VALID = "\ttrue\n".getBytes();
+    private static final byte[] INVALID = "\tfalse\n".getBytes();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final TldVerify verify;
+    private boolean invalidOnly;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    public DomainFileVerifier(TldVerify verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * @param invalidOnly <code>true</code> to write only the domain names that failed verification
+     */
+    public void setInvalidOnly(boolean invalidOnly) {
+        this.invalidOnly = invalidOnly;
+    }
+
+    /**
+     * @param chunkSize the number of bytes of the input file to map at a time
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Verify all domain names in a file. Blank lines are skipped, surrounding
+     * white space and a trailing carriage return are ignored.
+     *
+     * @param input  the file of newline separated domain names
+     * @param output the stream to write the results to, it is flushed but not closed
+     * @return the counts and timing of the run
+     * @throws TLDVerifyException
+     */
+    public Summary verify(File input, OutputStream output) throws TLDVerifyException {
+        long start = System.nanoTime();
+        Summary summary = new Summary();
+        LineBuffer line = new LineBuffer();
+        OutputStream out = new BufferedOutputStream(output, 64 * 1024);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(input, "r");
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            for (long position = 0; position < size; position += chunkSize) {
+                int length = (int) Math.min(chunkSize, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                for (int i = 0; i < length; i++) {
+                    byte b = buffer.get(i);
+                    if (b == '\n') {
+                        verifyLine(line, out, summary);
+                    } else {
+                        line.append(b);
+                    }
+                }
+            }
+            verifyLine(line, out, summary);
+            out.flush();
+            summary.bytes = size;
+        } catch (IOException e) {
+            throw new TLDVerifyException(e);
+        } finally {
+            IOUtils.closeQuietly(file);
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    private void verifyLine(LineBuffer line, OutputStream out, Summary summary) throws IOException, TLDVerifyException {
+        int start = 0;
+        int end = line.length;
+        while (start < end && (line.bytes[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (line.bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            line.clear();
+            return;
+        }
+        boolean valid;
+        if (line.ascii) {
+            valid = verify.verifyTldOffline(line.chars, start, end - start);
+        } else {
+            char[] decoded = new String(line.bytes, start, end - start, UTF_8).toCharArray();
+            valid = verify.verifyTldOffline(decoded, 0, decoded.length);
+        }
+        if (valid) {
+            summary.valid++;
+        } else {
+            summary.invalid++;
+        }
+        if (!valid || !invalidOnly) {
+            out.write(line.bytes, start, end - start);
+            if (invalidOnly) {
+                out.write('\n');
+            } else {
+                out.write(valid ? VALID : INVALID);
+            }
+        }
+        line.clear();
+    }
+
+    /**
+     * The bytes of the current line and the same line widened to characters.
+     * Lines that are not ASCII are decoded as UTF-8 instead.
+     */
+    private static class LineBuffer {
+
+        private byte[] bytes = new byte[256];
+        private char[] chars = new char[256];
+        private int length;
+        private boolean ascii = true;
+
+        void append(byte b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+                chars = Arrays.copyOf(chars, length * 2);
+            }
+            bytes[length] = b;
+            chars[length] = (char) (b & 0xFF);
+            length++;
+            ascii &= b >= 0;
+        }
+
+        void clear() {
+            length = 0;
+            ascii = true;
+        }
+    }
+
+    /**
+     * Counts and timing of a verification run
+     */
+    public static class Summary {
+
+        private long valid;
+        private long invalid;
+        private long bytes;
+        private long elapsedNanos;
+
+        /**
+         * @return the number of domain names checked
+         */
+        public long getTotal() {
+            return valid + invalid;
+        }
+
+        /**
+         * @return the number of domain names with an existing top level domain
+         */
+        public long getValid() {
+            return valid;
+        }
+
+        /**
+         * @return the number of domain names without an existing top level domain
+         */
+        public long getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * @return the size of the input file in bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the time the run took in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public String toString() {
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            return String.format("%d domains (%d valid, %d invalid) in %.3f s, %.0f domains/s, %.1f MB/s",
+                    getTotal(), valid, invalid, seconds, getTotal() / seconds, bytes / seconds / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+/**
+ * The result of {@link TldVerify#verifyDomainOffline(String)}: whether the top-level domain of a
+ * name is in the fixed database, together with the public suffix and registrable domain of the
+ * name according to the public suffix list in use.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class DomainInfo {
+
+    private final String domainName;
+    private final boolean validTld;
+    private final String publicSuffix;
+    private final String registrableDomain;
+
+    DomainInfo(String domainName, boolean validTld, String publicSuffix, String registrableDomain) {
+        this.domainName = domainName;
+        this.validTld = validTld;
+        this.publicSuffix = publicSuffix;
+        this.registrableDomain = registrableDomain;
+    }
+
+    /**
+     * @return the domain name that was verified
+     */
+    public String getDomainName() {
+        return domainName;
+    }
+
+    /**
+     * @return <code>true</code> if the top-level domain of the name exists
+     */
+    public boolean isValidTld() {
+        return validTld;
+    }
+
+    /**
+     * @return the public suffix of the name, e.g. <code>co.uk</code> for <code>www.icann.co.uk</code>
+     */
+    public String getPublicSuffix() {
+        return publicSuffix;
+    }
+
+    /**
+     * @return the registrable domain of the name, e.g. <code>icann.co.uk</code> for <code>www.icann.co.uk</code>,
+     *         or <code>null</code> if the name is itself a public suffix
+     */
+    public String getRegistrableDomain() {
+        return registrableDomain;
+    }
+
+    public String toString() {
+        return domainName + " [validTld=" + validTld + ", publicSuffix=" + publicSuffix
+                + ", registrableDomain=" + registrableDomain + "]";
+    }
+}
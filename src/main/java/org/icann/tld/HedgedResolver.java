@@ -0,0 +1,252 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.xbill.DNS.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends SOA queries to several DNS servers, one {@link SoaResolver} each, and hedges slow queries.
+ * <p/>
+ * A query goes to the preferred server first: the one with the lowest expected time to answer,
+ * from its recent latency and error rate, see {@link ResolverStats}. If it has not answered
+ * after the given percentile of its recent latency, the query is also sent to the next server,
+ * which in turn is given the same percentile of its own latency before the query goes to the
+ * server after it, and so on, and the first answer wins. A server that fails is replaced by the
+ * next one right away. The query fails only when every server failed.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class HedgedResolver implements Closeable {
+
+    /**
+     * Time to wait before hedging while the preferred server has too few samples, in milliseconds
+     */
+    static final long INITIAL_HEDGE_DELAY_MILLIS = 100;
+
+    private final List<SoaResolver> resolvers;
+    private final ResolverStats[] stats;
+    private final double hedgePercentile;
+    private final long timeoutMillis;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param resolvers       one resolver per DNS server, in the order of preference before any statistics exist
+     * @param hedgePercentile the percentile of the preferred server's latency after which a query is hedged
+     * @param timeoutMillis   the time each resolver waits for an answer
+     */
+    HedgedResolver(List<SoaResolver> resolvers, double hedgePercentile, long timeoutMillis) {
+        this.resolvers = new ArrayList<SoaResolver>(resolvers);
+        this.stats = new ResolverStats[resolvers.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new ResolverStats();
+        }
+        this.hedgePercentile = hedgePercentile;
+        this.timeoutMillis = timeoutMillis;
+        this.timer = resolvers.size() > 1 ? Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "tld-dns-hedge");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * Query the SOA record of a top level domain.
+     *
+     * @param tld the top level domain, without a trailing dot
+     * @return a future that completes with the first answer
+     */
+    CompletableFuture<SoaResolver.Answer> query(String tld) {
+        if (resolvers.size() == 1) {
+            return attempt(tld, 0);
+        }
+        final Hedge hedge = new Hedge(tld, order());
+        hedge.result.whenComplete(new BiConsumer<SoaResolver.Answer, Throwable>() {
+            public void accept(SoaResolver.Answer answer, Throwable error) {
+                hedge.disarm();
+            }
+        });
+        hedge.next();
+        return hedge.result;
+    }
+
+    /**
+     * @return the index of the server queries are sent to first
+     */
+    int preferred() {
+        return order()[0];
+    }
+
+    ResolverStats stats(int resolver) {
+        return stats[resolver];
+    }
+
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        for (SoaResolver resolver : resolvers) {
+            resolver.close();
+        }
+    }
+
+    private CompletableFuture<SoaResolver.Answer> attempt(String tld, final int resolver) {
+        final long start = System.nanoTime();
+        CompletableFuture<SoaResolver.Answer> answer = resolvers.get(resolver).query(tld);
+        answer.whenComplete(new BiConsumer<SoaResolver.Answer, Throwable>() {
+            public void accept(SoaResolver.Answer answer, Throwable error) {
+                if (error == null) {
+                    stats[resolver].success(System.nanoTime() - start);
+                } else if (!(error instanceof TextParseException)) {
+                    stats[resolver].failure();
+                }
+            }
+        });
+        return answer;
+    }
+
+    /**
+     * Order the servers by expected time to answer, keeping the configured order on ties.
+     */
+    private int[] order() {
+        final long failureNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Integer[] order = new Integer[stats.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(stats[a].expectedNanos(failureNanos), stats[b].expectedNanos(failureNanos));
+            }
+        });
+        int[] indexes = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            indexes[i] = order[i];
+        }
+        return indexes;
+    }
+
+    private long hedgeDelayNanos(int resolver) {
+        long percentile = stats[resolver].percentile(hedgePercentile);
+        long max = TimeUnit.MILLISECONDS.toNanos(timeoutMillis) / 2;
+        if (percentile < 0) {
+            return Math.min(TimeUnit.MILLISECONDS.toNanos(INITIAL_HEDGE_DELAY_MILLIS), max);
+        }
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(1), Math.min(percentile, max));
+    }
+
+    /**
+     * The attempts of one query, each sent to the next server in order.
+     */
+    private class Hedge {
+
+        private final String tld;
+        private final int[] order;
+        private final CompletableFuture<SoaResolver.Answer> result = new CompletableFuture<SoaResolver.Answer>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicReference<ScheduledFuture<?>> pending = new AtomicReference<ScheduledFuture<?>>();
+
+        Hedge(String tld, int[] order) {
+            this.tld = tld;
+            this.order = order;
+        }
+
+        /**
+         * Send the query to the next server and, while servers remain, hedge it after the
+         * percentile of that server's latency.
+         *
+         * @return <code>false</code> if every server was already queried
+         */
+        boolean next() {
+            int i = next.getAndIncrement();
+            if (i >= order.length) {
+                return false;
+            }
+            if (i + 1 < order.length) {
+                arm(hedgeDelayNanos(order[i]));
+            } else {
+                disarm();
+            }
+            attempt(tld, order[i]).whenComplete(new BiConsumer<SoaResolver.Answer, Throwable>() {
+                public void accept(SoaResolver.Answer answer, Throwable error) {
+                    if (error == null) {
+                        result.complete(answer);
+                    } else if (error instanceof TextParseException) {
+                        result.completeExceptionally(error);
+                    } else if (failures.incrementAndGet() == order.length) {
+                        result.completeExceptionally(error);
+                    } else if (!result.isDone()) {
+                        next();
+                    }
+                }
+            });
+            return true;
+        }
+
+        /**
+         * Replace the pending hedge, if any, by one that queries the next server after a delay.
+         */
+        private void arm(long delayNanos) {
+            ScheduledFuture<?> hedge;
+            try {
+                hedge = timer.schedule(new Runnable() {
+                    public void run() {
+                        if (!result.isDone()) {
+                            next();
+                        }
+                    }
+                }, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(new IOException("Resolver closed"));
+                return;
+            }
+            cancel(pending.getAndSet(hedge));
+            if (result.isDone()) {
+                disarm();
+            }
+        }
+
+        /**
+         * Cancel the pending hedge, once the query completed or every server was queried.
+         */
+        void disarm() {
+            cancel(pending.getAndSet(null));
+        }
+
+        private void cancel(ScheduledFuture<?> hedge) {
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+        }
+    }
+}
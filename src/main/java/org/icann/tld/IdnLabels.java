@@ -0,0 +1,138 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.net.*;
+import java.util.concurrent.*;
+
+/**
+ * Converts internationalized top level domains (U-labels such as <code>&#x440;&#x444;</code>) to
+ * the ASCII form the IANA list uses (A-labels such as <code>XN--P1AI</code>).
+ * <p/>
+ * Only the last label of a name is converted, and recent conversions are remembered,
+ * so checking names under the same internationalized TLD again costs a hash lookup.
+ * The memo is bounded: it is cleared when it holds more than its maximum size.
+ * Besides the full stop, the ideographic, fullwidth and halfwidth ideographic full
+ * stops separate labels, as IDNA specifies.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class IdnLabels {
+
+    /**
+     * Default number of converted labels remembered
+     */
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final ConcurrentMap<String, String> labels = new ConcurrentHashMap<String, String>();
+    private final int maxSize;
+
+    IdnLabels(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return <code>true</code> if the characters between <code>start</code> (inclusive) and
+     *         <code>end</code> (exclusive) are all ASCII
+     */
+    static boolean isAscii(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the characters between <code>start</code> (inclusive) and
+     *         <code>end</code> (exclusive) are all ASCII
+     */
+    static boolean isAscii(char[] s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s[i] >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the bytes between <code>start</code> (inclusive) and
+     *         <code>end</code> (exclusive) are all ASCII
+     */
+    static boolean isAscii(byte[] s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convert the last label of the characters between <code>start</code> (inclusive) and
+     * <code>end</code> (exclusive), ignoring one trailing label separator.
+     *
+     * @return the A-label, or an empty string if the label is empty or not a valid internationalized label
+     */
+    String toAscii(CharSequence s, int start, int end) {
+        if (end > start && isDot(s.charAt(end - 1))) {
+            end--;
+        }
+        int labelStart = end;
+        while (labelStart > start && !isDot(s.charAt(labelStart - 1))) {
+            labelStart--;
+        }
+        if (labelStart == end) {
+            return "";
+        }
+        String label = s.subSequence(labelStart, end).toString();
+        String ascii = labels.get(label);
+        if (ascii == null) {
+            try {
+                ascii = IDN.toASCII(label);
+            } catch (IllegalArgumentException e) {
+                ascii = "";
+            }
+            if (labels.size() >= maxSize) {
+                labels.clear();
+            }
+            labels.put(label, ascii);
+        }
+        return ascii;
+    }
+
+    /**
+     * @return the number of labels remembered
+     */
+    int size() {
+        return labels.size();
+    }
+
+    private static boolean isDot(char c) {
+        return c == '.' || c == '\u3002' || c == '\uFF0E' || c == '\uFF61';
+    }
+}
@@ -0,0 +1,279 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import javax.management.*;
+import java.lang.management.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Collects the measurements of a {@link TldVerify} and publishes them, together with the
+ * state of its caches, as a JMX MBean named <code>org.icann.tld:type=TldVerify,name=&lt;name&gt;</code>.
+ * <pre>
+ * TldVerify verify = new TldVerify();
+ * JmxTldVerifyMetrics metrics = JmxTldVerifyMetrics.register(verify, "default");
+ * ...
+ * metrics.unregister();
+ * </pre>
+ * Counters are {@link LongAdder}s, so recording a check costs a few nanoseconds and
+ * does not contend between threads.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class JmxTldVerifyMetrics implements TldVerifyMetrics, JmxTldVerifyMetricsMBean {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final TldVerify tldVerify;
+    private final LongAdder offlineValid = new LongAdder();
+    private final LongAdder offlineInvalid = new LongAdder();
+    private final LongAdder onlineValid = new LongAdder();
+    private final LongAdder onlineInvalid = new LongAdder();
+    private final LongAdder onlineFailed = new LongAdder();
+    private final LongAdder onlineCached = new LongAdder();
+    private final LongAdder fallbackValid = new LongAdder();
+    private final LongAdder fallbackInvalid = new LongAdder();
+    private final LongAdder rootZoneValid = new LongAdder();
+    private final LongAdder rootZoneInvalid = new LongAdder();
+    private final LongAdder dnsLookupFailures = new LongAdder();
+    private final LatencyHistogram dnsLookups = new LatencyHistogram();
+    private final LongAdder refreshUpdates = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LatencyHistogram refreshes = new LatencyHistogram();
+    private final AtomicReference<String> lastRefreshError = new AtomicReference<String>();
+    private volatile ObjectName objectName;
+
+    /**
+     * @param tldVerify the instance whose caches are reported
+     */
+    public JmxTldVerifyMetrics(TldVerify tldVerify) {
+        this.tldVerify = tldVerify;
+    }
+
+    /**
+     * Create metrics for an instance, make the instance report to them and register them
+     * with the platform MBean server.
+     *
+     * @param tldVerify the instance to measure
+     * @param name      the name that tells the instance apart from others in the same JVM
+     * @return the registered metrics
+     * @throws JMException if the MBean can not be registered, e.g. the name is already used
+     */
+    public static JmxTldVerifyMetrics register(TldVerify tldVerify, String name) throws JMException {
+        JmxTldVerifyMetrics metrics = new JmxTldVerifyMetrics(tldVerify);
+        ObjectName objectName = new ObjectName("org.icann.tld:type=TldVerify,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+        metrics.objectName = objectName;
+        tldVerify.setMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * Stop the instance from reporting and remove the MBean registered by {@link #register(TldVerify, String)}.
+     *
+     * @throws JMException if the MBean can not be unregistered
+     */
+    public void unregister() throws JMException {
+        tldVerify.setMetrics(TldVerifyMetrics.NONE);
+        ObjectName name = objectName;
+        if (name != null) {
+            objectName = null;
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    /**
+     * @return the name the MBean is registered under, <code>null</code> if it is not registered
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public void offlineChecks(int valid, int invalid) {
+        if (valid != 0) {
+            offlineValid.add(valid);
+        }
+        if (invalid != 0) {
+            offlineInvalid.add(invalid);
+        }
+    }
+
+    public void onlineCheck(boolean valid, boolean cached) {
+        (valid ? onlineValid : onlineInvalid).increment();
+        if (cached) {
+            onlineCached.increment();
+        }
+    }
+
+    public void onlineCheckFailed(Throwable error) {
+        onlineFailed.increment();
+    }
+
+    public void fallbackCheck(boolean valid, String reason) {
+        (valid ? fallbackValid : fallbackInvalid).increment();
+    }
+
+    public void rootZoneCheck(boolean valid) {
+        (valid ? rootZoneValid : rootZoneInvalid).increment();
+    }
+
+    public void dnsLookup(long nanos, boolean succeeded) {
+        dnsLookups.record(nanos);
+        if (!succeeded) {
+            dnsLookupFailures.increment();
+        }
+    }
+
+    public void refreshed(long nanos, boolean updated) {
+        refreshes.record(nanos);
+        if (updated) {
+            refreshUpdates.increment();
+        }
+    }
+
+    public void refreshFailed(long nanos, Throwable error) {
+        refreshes.record(nanos);
+        refreshFailures.increment();
+        lastRefreshError.set(String.valueOf(error.getMessage()));
+    }
+
+    public long getOfflineValid() {
+        return offlineValid.sum();
+    }
+
+    public long getOfflineInvalid() {
+        return offlineInvalid.sum();
+    }
+
+    public long getOnlineValid() {
+        return onlineValid.sum();
+    }
+
+    public long getOnlineInvalid() {
+        return onlineInvalid.sum();
+    }
+
+    public long getOnlineFailed() {
+        return onlineFailed.sum();
+    }
+
+    public long getOnlineCached() {
+        return onlineCached.sum();
+    }
+
+    public long getFallbackValid() {
+        return fallbackValid.sum();
+    }
+
+    public long getFallbackInvalid() {
+        return fallbackInvalid.sum();
+    }
+
+    public long getRootZoneValid() {
+        return rootZoneValid.sum();
+    }
+
+    public long getRootZoneInvalid() {
+        return rootZoneInvalid.sum();
+    }
+
+    public long getDnsLookups() {
+        return dnsLookups.count();
+    }
+
+    public long getDnsLookupFailures() {
+        return dnsLookupFailures.sum();
+    }
+
+    public double getDnsLookupMeanMillis() {
+        return dnsLookups.mean() / NANOS_PER_MILLI;
+    }
+
+    public double getDnsLookup99thPercentileMillis() {
+        return dnsLookups.percentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    public double getDnsLookupMaxMillis() {
+        return dnsLookups.max() / NANOS_PER_MILLI;
+    }
+
+    public long getRefreshes() {
+        return refreshes.count() - refreshFailures.sum();
+    }
+
+    public long getRefreshUpdates() {
+        return refreshUpdates.sum();
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures.sum();
+    }
+
+    public String getLastRefreshError() {
+        return lastRefreshError.get();
+    }
+
+    public double getRefreshMeanMillis() {
+        return refreshes.mean() / NANOS_PER_MILLI;
+    }
+
+    public double getRefresh99thPercentileMillis() {
+        return refreshes.percentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    public double getRefreshMaxMillis() {
+        return refreshes.max() / NANOS_PER_MILLI;
+    }
+
+    public long getTldListVersion() {
+        return tldVerify.getTldListVersion();
+    }
+
+    public long getTldListAgeSeconds() {
+        long loaded = tldVerify.getTldListLoadedMillis();
+        return loaded == 0 ? -1 : TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - loaded);
+    }
+
+    public int getTldCount() {
+        return tldVerify.getTldCount();
+    }
+
+    public int getDnsCacheEntries() {
+        return tldVerify.getDnsCacheEntries();
+    }
+
+    public long getDnsCacheHits() {
+        return tldVerify.getDnsCacheHits();
+    }
+
+    public long getDnsCacheMisses() {
+        return tldVerify.getDnsCacheMisses();
+    }
+
+    public int getCacheFiles() {
+        return tldVerify.cacheFileCount();
+    }
+}
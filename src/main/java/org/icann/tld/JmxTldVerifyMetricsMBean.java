@@ -0,0 +1,92 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+/**
+ * The JMX view of the measurements of a {@link TldVerify}, see {@link JmxTldVerifyMetrics}.
+ * Durations are in milliseconds, percentiles are upper bounds.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public interface JmxTldVerifyMetricsMBean {
+
+    long getOfflineValid();
+
+    long getOfflineInvalid();
+
+    long getOnlineValid();
+
+    long getOnlineInvalid();
+
+    long getOnlineFailed();
+
+    long getOnlineCached();
+
+    long getFallbackValid();
+
+    long getFallbackInvalid();
+
+    long getRootZoneValid();
+
+    long getRootZoneInvalid();
+
+    long getDnsLookups();
+
+    long getDnsLookupFailures();
+
+    double getDnsLookupMeanMillis();
+
+    double getDnsLookup99thPercentileMillis();
+
+    double getDnsLookupMaxMillis();
+
+    long getRefreshes();
+
+    long getRefreshUpdates();
+
+    long getRefreshFailures();
+
+    String getLastRefreshError();
+
+    double getRefreshMeanMillis();
+
+    double getRefresh99thPercentileMillis();
+
+    double getRefreshMaxMillis();
+
+    long getTldListVersion();
+
+    long getTldListAgeSeconds();
+
+    int getTldCount();
+
+    int getDnsCacheEntries();
+
+    long getDnsCacheHits();
+
+    long getDnsCacheMisses();
+
+    int getCacheFiles();
+}
@@ -23,14 +23,42 @@
 // either expressed or implied, of ICANN.
 package org.icann.tld;
 
+import org.apache.commons.io.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
 /**
- * An example class to demonstrate library usage
+ * An example class to demonstrate library usage.
+ * <p/>
+ * With a single domain name argument it verifies the name both with the DNS protocol
+ * and offline. With <code>-f</code> it verifies a file of newline separated domain
+ * names offline, and with <code>-s</code> it runs a {@link TldVerifyServer}, see {@link #USAGE}.
  */
 public class Main {
 
     public static String DEFAULT_DOMAIN = "icann.org";
 
+    static final String USAGE = "Usage: java -jar tld-verify.jar [domain]\n"
+            + "       java -jar tld-verify.jar -f <input file> [-o <output file>] [-i] [-c <cache file>]\n"
+            + "       java -jar tld-verify.jar -s [-l <line port>] [-p <http port>] [-c <cache file>] [-r <hours>]\n"
+            + "  -f, --file          file of newline separated domain names to verify offline\n"
+            + "  -o, --output        file to write the results to, standard output by default\n"
+            + "  -i, --invalid-only  write only the domain names that failed verification\n"
+            + "  -c, --cache         TLD cache file to verify against, downloaded from IANA by default\n"
+            + "  -s, --server        serve verifications over the line protocol and HTTP until killed\n"
+            + "  -l, --line-port     port of the line protocol, " + TldVerifyServer.DEFAULT_LINE_PORT + " by default, 0 to disable\n"
+            + "  -p, --http-port     port of the HTTP endpoint, " + TldVerifyServer.DEFAULT_HTTP_PORT + " by default, 0 to disable\n"
+            + "  -r, --refresh       hours between refreshes of the cache file, 24 by default";
+
     public static void main(String[] args) {
+        if (args.length > 0 && (args[0].equals("-s") || args[0].equals("--server"))) {
+            System.exit(serve(args));
+        }
+        if (args.length > 0 && args[0].startsWith("-")) {
+            System.exit(verifyFile(args));
+        }
         String domainName = args.length > 0 ? args[0] : DEFAULT_DOMAIN;
         System.out.println("Verifying domain " + domainName + " using DNS protocol ");
         TldVerify verify = new TldVerify();
@@ -44,4 +72,128 @@ public class Main {
             System.out.println("Exception " + e.getMessage());
         }
     }
+
+    /**
+     * Run a server until the process is killed.
+     *
+     * @param args the command line options
+     * @return the process exit code
+     */
+    static int serve(String[] args) {
+        String cacheFile = TldVerify.TLD_CACHE_FILE;
+        int linePort = TldVerifyServer.DEFAULT_LINE_PORT;
+        int httpPort = TldVerifyServer.DEFAULT_HTTP_PORT;
+        long refreshHours = 24;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 < args.length && (arg.equals("-c") || arg.equals("--cache"))) {
+                    cacheFile = args[++i];
+                } else if (i + 1 < args.length && (arg.equals("-l") || arg.equals("--line-port"))) {
+                    linePort = Integer.parseInt(args[++i]);
+                } else if (i + 1 < args.length && (arg.equals("-p") || arg.equals("--http-port"))) {
+                    httpPort = Integer.parseInt(args[++i]);
+                } else if (i + 1 < args.length && (arg.equals("-r") || arg.equals("--refresh"))) {
+                    refreshHours = Long.parseLong(args[++i]);
+                } else {
+                    System.err.println(USAGE);
+                    return 2;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (refreshHours <= 0) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        TldVerify verify = new TldVerify();
+        final TldVerifyServer server = new TldVerifyServer(verify);
+        try {
+            if (new File(cacheFile).isFile()) {
+                verify.loadTldDB(cacheFile);
+            }
+            server.setRefreshScheduler(new TldRefreshScheduler(verify, cacheFile, refreshHours, TimeUnit.HOURS));
+            server.start(linePort > 0 ? new InetSocketAddress(linePort) : null,
+                    httpPort > 0 ? new InetSocketAddress(httpPort) : null);
+        } catch (TLDVerifyException e) {
+            System.err.println("Exception " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Exception " + e.getMessage());
+            return 1;
+        }
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                server.close();
+                stopped.countDown();
+            }
+        });
+        System.err.println("Serving line protocol on " + server.getLineAddress() + ", HTTP on " + server.getHttpAddress());
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    /**
+     * Verify a file of domain names and print a summary to standard error.
+     *
+     * @param args the command line options
+     * @return the process exit code
+     */
+    static int verifyFile(String[] args) {
+        String input = null;
+        String output = null;
+        String cacheFile = null;
+        boolean invalidOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-i") || arg.equals("--invalid-only")) {
+                invalidOnly = true;
+            } else if (i + 1 < args.length && (arg.equals("-f") || arg.equals("--file"))) {
+                input = args[++i];
+            } else if (i + 1 < args.length && (arg.equals("-o") || arg.equals("--output"))) {
+                output = args[++i];
+            } else if (i + 1 < args.length && (arg.equals("-c") || arg.equals("--cache"))) {
+                cacheFile = args[++i];
+            } else {
+                System.err.println(USAGE);
+                return 2;
+            }
+        }
+        if (input == null) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        OutputStream out = null;
+        try {
+            TldVerify verify = new TldVerify();
+            if (cacheFile != null) {
+                verify.loadTldDB(cacheFile);
+            }
+            DomainFileVerifier fileVerifier = new DomainFileVerifier(verify);
+            fileVerifier.setInvalidOnly(invalidOnly);
+            out = output != null ? new FileOutputStream(output) : System.out;
+            DomainFileVerifier.Summary summary = fileVerifier.verify(new File(input), out);
+            System.err.println(summary);
+            return 0;
+        } catch (TLDVerifyException e) {
+            System.err.println("Exception " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Exception " + e.getMessage());
+            return 1;
+        } finally {
+            if (out != System.out) {
+                IOUtils.closeQuietly(out);
+            }
+        }
+    }
 }
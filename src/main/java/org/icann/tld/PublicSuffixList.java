@@ -0,0 +1,385 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.apache.commons.io.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * The rules of a public suffix list, in the format published at https://publicsuffix.org/list/,
+ * for finding the public suffix (e.g. <code>co.uk</code>) and the registrable domain
+ * (e.g. <code>icann.co.uk</code>) of a domain name.
+ * <p/>
+ * Rules are held in a trie of reversed labels: the children of a node are the labels that
+ * can precede it, found through one hash table keyed by the parent node and the label.
+ * A lookup walks the name once from right to left, hashing and comparing each label in
+ * place, so it does not create any strings. Wildcard (<code>*.ck</code>) and exception
+ * (<code>!www.ck</code>) rules are supported, and a name no rule matches has its last
+ * label as public suffix. Labels are compared ignoring ASCII case. Rules with
+ * internationalized labels match both their Unicode and their <code>XN--</code> form;
+ * rules with a label that can not be converted to ASCII are skipped.
+ * <p/>
+ * A list is immutable once loaded and can be shared between threads.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class PublicSuffixList {
+
+    /**
+     * A list without rules, where the public suffix of every name is its last label
+     */
+    public static final PublicSuffixList EMPTY = new PublicSuffixList();
+
+    private static final String PRIVATE_DOMAINS = "===BEGIN PRIVATE DOMAINS===";
+    private static final int EMPTY_SLOT = -1;
+    private static final int ROOT = 0;
+    private static final int RULE = 1;
+    private static final int WILDCARD = 2;
+    private static final int EXCEPTION = 4;
+
+    private int[] slots = new int[16];
+    private int[] parents = new int[8];
+    private int[] hashes = new int[8];
+    private int[] labelStarts = new int[8];
+    private int[] labelEnds = new int[8];
+    private int[] flags = new int[8];
+    private char[] chars = new char[64];
+    private int nodes = 1;
+    private int length;
+    private int rules;
+
+    private PublicSuffixList() {
+        Arrays.fill(slots, EMPTY_SLOT);
+    }
+
+    /**
+     * Load all the rules of a public suffix list file, including the private domains section.
+     *
+     * @param file a file in the public suffix list format, encoded in UTF-8
+     * @return the rules of the file
+     * @throws TLDVerifyException if the file can not be read
+     */
+    public static PublicSuffixList load(File file) throws TLDVerifyException {
+        return load(file, true);
+    }
+
+    /**
+     * Load the rules of a public suffix list file.
+     *
+     * @param file                  a file in the public suffix list format, encoded in UTF-8
+     * @param includePrivateDomains <code>false</code> to only load the rules before the private domains section
+     * @return the rules of the file
+     * @throws TLDVerifyException if the file can not be read
+     */
+    public static PublicSuffixList load(File file, boolean includePrivateDomains) throws TLDVerifyException {
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            return read(reader, includePrivateDomains);
+        } catch (IOException e) {
+            throw new TLDVerifyException(e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Read the rules of a public suffix list.
+     *
+     * @param reader                the list, it is not closed
+     * @param includePrivateDomains <code>false</code> to only read the rules before the private domains section
+     * @return the rules read
+     * @throws IOException if the list can not be read
+     */
+    public static PublicSuffixList read(Reader reader, boolean includePrivateDomains) throws IOException {
+        PublicSuffixList list = new PublicSuffixList();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("//")) {
+                if (!includePrivateDomains && line.contains(PRIVATE_DOMAINS)) {
+                    break;
+                }
+                continue;
+            }
+            int space = indexOfWhitespace(line);
+            String rule = space < 0 ? line : line.substring(0, space);
+            if (rule.length() > 0) {
+                list.addRule(rule);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the number of rules in the list
+     */
+    public int size() {
+        return rules;
+    }
+
+    /**
+     * @param domainName a domain name, optionally with a trailing dot
+     * @return the public suffix of the name, or an empty string if the name is empty
+     */
+    public String getPublicSuffix(String domainName) {
+        long bounds = getBounds(domainName, 0, domainName.length());
+        return domainName.substring(publicSuffixStart(bounds), end(domainName, 0, domainName.length()));
+    }
+
+    /**
+     * @param domainName a domain name, optionally with a trailing dot
+     * @return the public suffix with the label before it, or <code>null</code> if the name is itself a public suffix
+     */
+    public String getRegistrableDomain(String domainName) {
+        long bounds = getBounds(domainName, 0, domainName.length());
+        int start = registrableDomainStart(bounds);
+        return start < 0 ? null : domainName.substring(start, end(domainName, 0, domainName.length()));
+    }
+
+    /**
+     * Find the public suffix and registrable domain of the characters between <code>start</code>
+     * (inclusive) and <code>end</code> (exclusive) without creating any objects. Read the result
+     * with {@link #publicSuffixStart(long)} and {@link #registrableDomainStart(long)}, both end
+     * where the name ends, before its trailing dot if it has one.
+     *
+     * @return the packed start positions of the public suffix and the registrable domain
+     */
+    public long getBounds(CharSequence s, int start, int end) {
+        if (end - start > 1 && s.charAt(start) == '.') {
+            start++;
+        }
+        end = end(s, start, end);
+        if (start == end) {
+            return pack(end, -1);
+        }
+        int suffixStart = -1;
+        int node = ROOT;
+        int labelEnd = end;
+        while (true) {
+            int labelStart = labelEnd;
+            int hash = 0;
+            while (labelStart > start && s.charAt(labelStart - 1) != '.') {
+                labelStart--;
+            }
+            for (int i = labelStart; i < labelEnd; i++) {
+                hash = 31 * hash + TldIndex.fold(s.charAt(i));
+            }
+            if ((flags[node] & WILDCARD) != 0 && labelStart < labelEnd) {
+                suffixStart = labelStart;
+            }
+            int child = find(node, hash, s, labelStart, labelEnd);
+            if (child == EMPTY_SLOT) {
+                break;
+            }
+            if ((flags[child] & EXCEPTION) != 0) {
+                suffixStart = Math.min(labelEnd + 1, end);
+                break;
+            }
+            if ((flags[child] & RULE) != 0) {
+                suffixStart = labelStart;
+            }
+            if (labelStart == start) {
+                break;
+            }
+            node = child;
+            labelEnd = labelStart - 1;
+        }
+        if (suffixStart < 0) {
+            suffixStart = end;
+            while (suffixStart > start && s.charAt(suffixStart - 1) != '.') {
+                suffixStart--;
+            }
+        }
+        if (suffixStart - start < 2) {
+            return pack(suffixStart, -1);
+        }
+        int registrableStart = suffixStart - 1;
+        while (registrableStart > start && s.charAt(registrableStart - 1) != '.') {
+            registrableStart--;
+        }
+        return pack(suffixStart, registrableStart < suffixStart - 1 ? registrableStart : -1);
+    }
+
+    /**
+     * @param bounds the value returned by {@link #getBounds(CharSequence, int, int)}
+     * @return the position of the first character of the public suffix
+     */
+    public static int publicSuffixStart(long bounds) {
+        return (int) (bounds >>> 32);
+    }
+
+    /**
+     * @param bounds the value returned by {@link #getBounds(CharSequence, int, int)}
+     * @return the position of the first character of the registrable domain, -1 if the name is itself a public suffix
+     */
+    public static int registrableDomainStart(long bounds) {
+        return (int) bounds;
+    }
+
+    private static long pack(int suffixStart, int registrableStart) {
+        return ((long) suffixStart << 32) | (registrableStart & 0xFFFFFFFFL);
+    }
+
+    private static int end(CharSequence s, int start, int end) {
+        return end > start && s.charAt(end - 1) == '.' ? end - 1 : end;
+    }
+
+    private static int indexOfWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addRule(String rule) {
+        boolean exception = rule.startsWith("!");
+        if (exception) {
+            rule = rule.substring(1);
+        }
+        String[] labels = rule.split("\\.");
+        String[] ascii = new String[labels.length];
+        boolean international = false;
+        for (int i = 0; i < labels.length; i++) {
+            ascii[i] = labels[i];
+            if (!IdnLabels.isAscii(labels[i], 0, labels[i].length())) {
+                try {
+                    ascii[i] = IDN.toASCII(labels[i]);
+                    international = true;
+                } catch (IllegalArgumentException e) {
+                    return;
+                }
+            }
+        }
+        addRule(labels, exception);
+        if (international) {
+            addRule(ascii, exception);
+        }
+        rules++;
+    }
+
+    private void addRule(String[] labels, boolean exception) {
+        int node = ROOT;
+        int leftmost = 0;
+        boolean wildcard = labels[0].equals("*");
+        if (wildcard) {
+            leftmost = 1;
+        }
+        for (int i = labels.length - 1; i >= leftmost; i--) {
+            node = child(node, labels[i]);
+        }
+        flags[node] |= wildcard ? WILDCARD : exception ? EXCEPTION : RULE;
+    }
+
+    private int child(int parent, String label) {
+        int hash = 0;
+        for (int i = 0; i < label.length(); i++) {
+            hash = 31 * hash + TldIndex.fold(label.charAt(i));
+        }
+        int existing = find(parent, hash, label, 0, label.length());
+        if (existing != EMPTY_SLOT) {
+            return existing;
+        }
+        if (nodes == parents.length) {
+            int capacity = nodes * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            labelStarts = Arrays.copyOf(labelStarts, capacity);
+            labelEnds = Arrays.copyOf(labelEnds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        if (length + label.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + label.length()));
+        }
+        int node = nodes++;
+        parents[node] = parent;
+        hashes[node] = hash;
+        labelStarts[node] = length;
+        for (int i = 0; i < label.length(); i++) {
+            chars[length++] = TldIndex.fold(label.charAt(i));
+        }
+        labelEnds[node] = length;
+        if (nodes * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(node);
+        }
+        return node;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY_SLOT);
+        for (int node = 1; node < nodes; node++) {
+            insert(node);
+        }
+    }
+
+    private void insert(int node) {
+        int mask = slots.length - 1;
+        int slot = slot(parents[node], hashes[node]) & mask;
+        while (slots[slot] != EMPTY_SLOT) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = node;
+    }
+
+    private int find(int parent, int hash, CharSequence s, int start, int end) {
+        int mask = slots.length - 1;
+        for (int slot = slot(parent, hash) & mask; ; slot = (slot + 1) & mask) {
+            int node = slots[slot];
+            if (node == EMPTY_SLOT) {
+                return EMPTY_SLOT;
+            }
+            if (parents[node] == parent && hashes[node] == hash && matches(node, s, start, end)) {
+                return node;
+            }
+        }
+    }
+
+    private boolean matches(int node, CharSequence s, int start, int end) {
+        int offset = labelStarts[node];
+        if (labelEnds[node] - offset != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++, offset++) {
+            if (chars[offset] != TldIndex.fold(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int slot(int parent, int hash) {
+        int h = (hash ^ (parent * 0x85EBCA6B)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,138 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Recent latency and error rate of one DNS server, used by {@link HedgedResolver} to prefer
+ * the fastest and most reliable server and to decide when to hedge a query.
+ * <p/>
+ * Latency and error rate are exponentially weighted moving averages, so the statistics
+ * follow a server that becomes slow or lossy and recovers. Percentiles are computed over a
+ * window of the most recent successful queries. Updates are not synchronized, concurrent
+ * updates may lose a sample, which is fine for choosing a server.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class ResolverStats {
+
+    /**
+     * Number of recent latencies percentiles are computed over
+     */
+    static final int WINDOW = 128;
+
+    /**
+     * Number of latencies needed before percentiles are reported
+     */
+    static final int MIN_SAMPLES = 8;
+
+    private static final double ALPHA = 0.1;
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final AtomicLongArray window = new AtomicLongArray(WINDOW);
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile double latencyNanos;
+    private volatile double errorRate;
+    private volatile long percentileSamples = -1;
+    private volatile double percentileFraction;
+    private volatile long percentileNanos;
+
+    /**
+     * @param nanos the time a successful query took
+     */
+    void success(long nanos) {
+        long n = successes.getAndIncrement();
+        window.set((int) (n % WINDOW), nanos);
+        latencyNanos = n == 0 ? nanos : latencyNanos + ALPHA * (nanos - latencyNanos);
+        errorRate -= ALPHA * errorRate;
+    }
+
+    /**
+     * A query failed or timed out.
+     */
+    void failure() {
+        failures.incrementAndGet();
+        errorRate += ALPHA * (1 - errorRate);
+    }
+
+    long successes() {
+        return successes.get();
+    }
+
+    long failures() {
+        return failures.get();
+    }
+
+    /**
+     * @return the average recent latency in nanoseconds, 0 if no query succeeded yet
+     */
+    double latencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the recent fraction of failed queries
+     */
+    double errorRate() {
+        return errorRate;
+    }
+
+    /**
+     * The expected time to get an answer, counting a failure as costing <code>failureNanos</code>.
+     * A server that was never used scores 0, so it is tried early.
+     */
+    double expectedNanos(long failureNanos) {
+        double errors = errorRate;
+        return (1 - errors) * latencyNanos + errors * failureNanos;
+    }
+
+    /**
+     * @param fraction the fraction of recent queries, e.g. 0.95
+     * @return the latency in nanoseconds that the fraction of recent successful queries did not exceed,
+     *         -1 if there are fewer than {@link #MIN_SAMPLES} of them
+     */
+    long percentile(double fraction) {
+        long n = successes.get();
+        if (n < MIN_SAMPLES) {
+            return -1;
+        }
+        if (fraction == percentileFraction && n - percentileSamples < RECOMPUTE_EVERY && percentileSamples >= 0) {
+            return percentileNanos;
+        }
+        long[] latencies = new long[(int) Math.min(n, WINDOW)];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = window.get(i);
+        }
+        Arrays.sort(latencies);
+        long value = latencies[Math.min(latencies.length - 1, (int) Math.ceil(fraction * latencies.length) - 1)];
+        percentileFraction = fraction;
+        percentileNanos = value;
+        percentileSamples = n;
+        return value;
+    }
+}
@@ -0,0 +1,318 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.apache.commons.io.*;
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The top-level domains delegated in a copy of the IANA root zone, e.g. the
+ * <code>root.zone</code> file published at https://www.internic.net/domain/root.zone,
+ * for authoritative verification without DNS access.
+ * <p/>
+ * The zone is read once as a stream of records, only the NS and DS records of top-level
+ * domains are kept. Records of other types are dropped before they are parsed, so a zone may
+ * hold types the DNS library does not know, such as the ZONEMD record of the root zone. A
+ * top-level domain exists if the root zone delegates it with NS records, and it is DNSSEC
+ * signed if the root zone also has a DS record for it. Names are held in a {@link TldIndex}
+ * with one byte of flags per name, so a lookup does not create any strings.
+ * <p/>
+ * A zone is immutable once read and can be shared between threads.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class RootZone {
+
+    static final int DELEGATED = 1;
+    static final int SIGNED = 2;
+
+    private final long serial;
+    private final TldIndex index;
+    private final byte[] flags;
+    private final int signed;
+
+    private RootZone(long serial, TldIndex index, byte[] flags, int signed) {
+        this.serial = serial;
+        this.index = index;
+        this.flags = flags;
+        this.signed = signed;
+    }
+
+    /**
+     * Read a root zone master file.
+     *
+     * @param file the zone file
+     * @return the delegations in the zone
+     * @throws TLDVerifyException if the file can not be read or parsed
+     */
+    public static RootZone load(File file) throws TLDVerifyException {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            return read(in);
+        } catch (IOException e) {
+            throw new TLDVerifyException("Could not read root zone " + file + ": " + e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Read a root zone in master file format. The stream is not closed.
+     *
+     * @param in the zone
+     * @return the delegations in the zone
+     * @throws TLDVerifyException if the zone can not be read or parsed
+     */
+    public static RootZone read(InputStream in) throws TLDVerifyException {
+        Map<String, Integer> tlds = new LinkedHashMap<String, Integer>();
+        long serial = -1;
+        try {
+            Master master = new Master(new RecordFilter(in), Name.root);
+            Record record;
+            while ((record = master.nextRecord()) != null) {
+                Name name = record.getName();
+                int type = record.getType();
+                if (type == Type.SOA && name.equals(Name.root)) {
+                    serial = ((SOARecord) record).getSerial();
+                } else if (name.labels() == 2 && (type == Type.NS || type == Type.DS)) {
+                    String tld = name.getLabelString(0).toUpperCase(Locale.ENGLISH);
+                    Integer flags = tlds.get(tld);
+                    tlds.put(tld, (flags == null ? 0 : flags) | (type == Type.NS ? DELEGATED : SIGNED));
+                }
+            }
+        } catch (IOException e) {
+            throw new TLDVerifyException("Could not parse root zone: " + e.getMessage(), e);
+        }
+        if (serial < 0) {
+            throw new TLDVerifyException("Root zone has no SOA record");
+        }
+        List<String> names = new ArrayList<String>(tlds.size());
+        for (Map.Entry<String, Integer> tld : tlds.entrySet()) {
+            if ((tld.getValue() & DELEGATED) != 0) {
+                names.add(tld.getKey());
+            }
+        }
+        byte[] flags = new byte[names.size()];
+        int signed = 0;
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = tlds.get(names.get(i)).byteValue();
+            if ((flags[i] & SIGNED) != 0) {
+                signed++;
+            }
+        }
+        return new RootZone(serial, new TldIndex(names), flags, signed);
+    }
+
+    /**
+     * Read the serial of a root zone file without reading the delegations, for finding out
+     * cheaply whether the file holds another version of the zone.
+     *
+     * @param file the zone file
+     * @return the serial in the SOA record, which is the first record of a zone file
+     * @throws TLDVerifyException if the file can not be read or does not start with the root SOA record
+     */
+    static long readSerial(File file) throws TLDVerifyException {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            Record record = new Master(new RecordFilter(in), Name.root).nextRecord();
+            if (record == null || record.getType() != Type.SOA || !record.getName().equals(Name.root)) {
+                throw new TLDVerifyException("Root zone " + file + " does not start with the root SOA record");
+            }
+            return ((SOARecord) record).getSerial();
+        } catch (IOException e) {
+            throw new TLDVerifyException("Could not read root zone " + file + ": " + e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param tld a top-level domain in ASCII, without dots, in any case
+     * @return <code>true</code> if the root zone delegates the top-level domain
+     */
+    public boolean isDelegated(CharSequence tld) {
+        return (flags(tld, 0, tld.length()) & DELEGATED) != 0;
+    }
+
+    /**
+     * @param tld a top-level domain in ASCII, without dots, in any case
+     * @return <code>true</code> if the root zone delegates the top-level domain and has a DS record for it
+     */
+    public boolean isSigned(CharSequence tld) {
+        return (flags(tld, 0, tld.length()) & SIGNED) != 0;
+    }
+
+    /**
+     * Return the flags of the top-level domain between <code>start</code> (inclusive) and
+     * <code>end</code> (exclusive), ignoring ASCII case.
+     *
+     * @return {@link #DELEGATED}, possibly with {@link #SIGNED}, or 0 if the top-level domain is not delegated
+     */
+    int flags(CharSequence s, int start, int end) {
+        int entry = index.indexOf(s, start, end);
+        return entry < 0 ? 0 : flags[entry];
+    }
+
+    /**
+     * @return the serial of the zone
+     */
+    public long getSerial() {
+        return serial;
+    }
+
+    /**
+     * @return the number of delegated top-level domains
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of delegated top-level domains with a DS record
+     */
+    public int getSignedCount() {
+        return signed;
+    }
+
+    /**
+     * A master file with only the SOA, NS and DS records and the directives of a zone. A record
+     * is kept or dropped whole, including the lines it continues on within parentheses.
+     */
+    private static class RecordFilter extends InputStream {
+
+        private final BufferedReader reader;
+        private byte[] line = new byte[0];
+        private int position;
+        private boolean keep;
+        private int depth;
+        private String owner;
+
+        RecordFilter(InputStream in) throws IOException {
+            reader = new BufferedReader(new InputStreamReader(in, "ISO-8859-1"));
+        }
+
+        public int read() throws IOException {
+            while (position == line.length) {
+                String next = reader.readLine();
+                if (next == null) {
+                    return -1;
+                }
+                if (depth == 0) {
+                    keep = isWanted(next);
+                    next = withOwner(next);
+                }
+                depth = Math.max(0, depth + parentheses(next));
+                if (keep) {
+                    line = (next + "\n").getBytes("ISO-8859-1");
+                    position = 0;
+                }
+            }
+            return line[position++] & 0xFF;
+        }
+
+        /**
+         * A record without an owner has the owner of the record before it, which may be a
+         * dropped one. Give it that owner explicitly, so it does not take the owner of an
+         * earlier record that was kept.
+         *
+         * @return the first line of a record, starting with its owner
+         */
+        private String withOwner(String line) {
+            if (line.startsWith("$") || !new StringTokenizer(stripComment(line)).hasMoreTokens()) {
+                return line;
+            }
+            if (Character.isWhitespace(line.charAt(0))) {
+                return owner == null ? line : owner + line;
+            }
+            owner = new StringTokenizer(line).nextToken();
+            return line;
+        }
+
+        /**
+         * @return <code>true</code> for a directive, a blank line or a record of a wanted type
+         */
+        private static boolean isWanted(String line) {
+            StringTokenizer tokens = new StringTokenizer(stripComment(line));
+            if (!tokens.hasMoreTokens()) {
+                return true;
+            }
+            if (line.startsWith("$")) {
+                return true;
+            }
+            if (!Character.isWhitespace(line.charAt(0))) {
+                tokens.nextToken();
+            }
+            while (tokens.hasMoreTokens()) {
+                String token = tokens.nextToken();
+                if (Character.isDigit(token.charAt(0)) || DClass.value(token) >= 0) {
+                    continue;
+                }
+                int type = Type.value(token);
+                return type == Type.SOA || type == Type.NS || type == Type.DS;
+            }
+            return true;
+        }
+
+        private static String stripComment(String line) {
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == '\\') {
+                    i++;
+                } else if (c == ';' && !quoted) {
+                    return line.substring(0, i);
+                }
+            }
+            return line;
+        }
+
+        private static int parentheses(String line) {
+            String record = stripComment(line);
+            int depth = 0;
+            boolean quoted = false;
+            for (int i = 0; i < record.length(); i++) {
+                char c = record.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == '\\') {
+                    i++;
+                } else if (!quoted && c == '(') {
+                    depth++;
+                } else if (!quoted && c == ')') {
+                    depth--;
+                }
+            }
+            return depth;
+        }
+    }
+}
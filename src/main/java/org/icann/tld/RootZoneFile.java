@@ -0,0 +1,119 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Keeps the {@link RootZone} read from a file, and reads it again when it changes.
+ * <p/>
+ * The file is checked at most once per check interval, so lookups do not stat it every
+ * time. It is only parsed again when its modification time or size changed and the serial
+ * in its SOA record differs from the loaded zone. While one thread reads the new zone, the
+ * others keep answering from the loaded one. If the new file can not be read the loaded
+ * zone is kept, as a secondary server keeps serving its zone when a transfer fails.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class RootZoneFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(RootZoneFile.class);
+
+    private final File file;
+    private final long checkIntervalNanos;
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private volatile State state;
+    private volatile long checkedNanos;
+
+    /**
+     * Read the zone in a file.
+     *
+     * @param file               the zone file
+     * @param checkIntervalNanos the time between checks of the file for changes
+     * @throws TLDVerifyException if the file can not be read
+     */
+    RootZoneFile(File file, long checkIntervalNanos) throws TLDVerifyException {
+        this.file = file;
+        this.checkIntervalNanos = checkIntervalNanos;
+        long lastModified = file.lastModified();
+        long length = file.length();
+        state = new State(lastModified, length, RootZone.load(file));
+        checkedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the zone, read again first if the file changed and the check interval has elapsed
+     */
+    RootZone get() {
+        State current = state;
+        long now = System.nanoTime();
+        if (now - checkedNanos < checkIntervalNanos || !checking.compareAndSet(false, true)) {
+            return current.zone;
+        }
+        try {
+            checkedNanos = now;
+            long lastModified = file.lastModified();
+            long length = file.length();
+            if (lastModified == current.lastModified && length == current.length) {
+                return current.zone;
+            }
+            RootZone zone = current.zone;
+            if (RootZone.readSerial(file) != zone.getSerial()) {
+                zone = RootZone.load(file);
+                logger.info("Loaded root zone " + file + " serial " + zone.getSerial());
+            }
+            state = new State(lastModified, length, zone);
+            return zone;
+        } catch (TLDVerifyException e) {
+            logger.warn("Keeping root zone serial " + current.zone.getSerial() + ": " + e.getMessage());
+            return current.zone;
+        } finally {
+            checking.set(false);
+        }
+    }
+
+    /**
+     * @return the zone file
+     */
+    File getFile() {
+        return file;
+    }
+
+    private static class State {
+        final long lastModified;
+        final long length;
+        final RootZone zone;
+
+        State(long lastModified, long length, RootZone zone) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.zone = zone;
+        }
+    }
+}
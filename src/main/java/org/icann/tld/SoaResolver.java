@@ -0,0 +1,480 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Sends SOA queries for top level domains over a small pool of UDP sockets and keeps
+ * many of them in flight at once.
+ * <p/>
+ * Queries are matched to responses by message id, source address, the socket they were
+ * sent on and question. To make answers hard to spoof, message ids are drawn from a
+ * {@link SecureRandom}, each query goes out on a randomly chosen socket, and every socket
+ * is replaced by one bound to a new port after it has sent a number of queries. A replaced
+ * socket keeps receiving until the queries sent on it have timed out.
+ * At most <code>maxInFlight</code> queries are outstanding, further queries wait in
+ * a queue. A query that gets no answer within the timeout fails with a
+ * {@link SocketTimeoutException}. Futures are completed on the resolver's own
+ * thread, so callers should not block in dependent actions.
+ * <p/>
+ * A truncated UDP answer is asked again over TCP, within the same timeout.
+ * <p/>
+ * Answers carry the time they may be cached for: the SOA record TTL when the
+ * domain exists, and the SOA minimum from the authority section when it does
+ * not, as described by RFC 2308.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class SoaResolver implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoaResolver.class);
+
+    /**
+     * Receive buffer space reserved per query in flight. The kernel accounts a few hundred
+     * bytes of overhead for every datagram, far more than a SOA answer takes.
+     */
+    private static final int BUFFER_PER_ANSWER = 2048;
+    private static final int MAX_BUFFERED_ANSWERS = 2048;
+
+    private static final int SOCKETS = 4;
+    private static final int QUERIES_PER_SOCKET = 1000;
+
+    private final InetSocketAddress server;
+    private final long timeoutMillis;
+    private final int maxInFlight;
+    private final AtomicReferenceArray<Port> ports = new AtomicReferenceArray<Port>(SOCKETS);
+    private final Set<Port> open = Collections.newSetFromMap(new ConcurrentHashMap<Port, Boolean>());
+    private final SecureRandom random = new SecureRandom();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService tcp;
+    private final ConcurrentMap<Integer, Query> pending = new ConcurrentHashMap<Integer, Query>();
+    private final Queue<Query> waiting = new ConcurrentLinkedQueue<Query>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean closed;
+
+    SoaResolver(InetSocketAddress server, long timeoutMillis, int maxInFlight) throws IOException {
+        this.server = server;
+        this.timeoutMillis = timeoutMillis;
+        this.maxInFlight = maxInFlight;
+        timer = Executors.newSingleThreadScheduledExecutor(daemon("tld-dns-timer"));
+        tcp = Executors.newCachedThreadPool(daemon("tld-dns-tcp"));
+        try {
+            for (int i = 0; i < SOCKETS; i++) {
+                ports.set(i, open());
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Bind a socket to a port the system chooses and start receiving on it.
+     */
+    private Port open() throws IOException {
+        final Port port = new Port(DatagramChannel.open());
+        open.add(port);
+        try {
+            port.channel.setOption(StandardSocketOptions.SO_RCVBUF, Math.min(maxInFlight, MAX_BUFFERED_ANSWERS) * BUFFER_PER_ANSWER);
+            port.channel.bind(null);
+        } catch (IOException e) {
+            close(port);
+            throw e;
+        }
+        daemon("tld-dns-receiver").newThread(new Runnable() {
+            public void run() {
+                receive(port);
+            }
+        }).start();
+        if (closed) {
+            close(port);
+        }
+        return port;
+    }
+
+    /**
+     * Replace the socket at <code>index</code> by one bound to a new port. The old socket
+     * is closed after twice the timeout, so queries that picked it just before it was
+     * replaced have timed out too.
+     */
+    private void rebind(int index, final Port old) {
+        Port port;
+        try {
+            port = open();
+        } catch (IOException e) {
+            logger.warn("Could not bind a new DNS query socket: " + e.getMessage());
+            return;
+        }
+        ports.set(index, port);
+        try {
+            timer.schedule(new Runnable() {
+                public void run() {
+                    close(old);
+                }
+            }, 2 * timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            close(old);
+        }
+    }
+
+    private void close(Port port) {
+        open.remove(port);
+        try {
+            port.channel.close();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Query the SOA record of a top level domain.
+     *
+     * @param tld the top level domain, without a trailing dot
+     * @return a future that completes with the answer
+     */
+    CompletableFuture<Answer> query(String tld) {
+        CompletableFuture<Answer> result = new CompletableFuture<Answer>();
+        if (closed) {
+            result.completeExceptionally(new IOException("Resolver closed"));
+            return result;
+        }
+        try {
+            waiting.add(new Query(Name.fromString(tld + "."), result));
+        } catch (TextParseException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        drain();
+        return result;
+    }
+
+    public void close() {
+        closed = true;
+        timer.shutdownNow();
+        tcp.shutdownNow();
+        for (Port port : open) {
+            close(port);
+        }
+        IOException e = new IOException("Resolver closed");
+        for (Query query; (query = waiting.poll()) != null; ) {
+            query.result.completeExceptionally(e);
+        }
+        for (Query query : pending.values()) {
+            query.result.completeExceptionally(e);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Send waiting queries while fewer than <code>maxInFlight</code> are in flight. A query
+     * whose send fails frees its place for the next one at once, and is only failed once the
+     * loop ends, so neither the stack nor the wait for the failures grows with the queue.
+     */
+    private void drain() {
+        List<Query> failed = null;
+        List<Exception> errors = null;
+        while (true) {
+            int count = inFlight.get();
+            if (count >= maxInFlight) {
+                break;
+            }
+            if (!inFlight.compareAndSet(count, count + 1)) {
+                continue;
+            }
+            Query query = waiting.poll();
+            if (query == null) {
+                inFlight.decrementAndGet();
+                if (waiting.isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+            Exception error = send(query);
+            if (error != null && release(query)) {
+                if (failed == null) {
+                    failed = new ArrayList<Query>();
+                    errors = new ArrayList<Exception>();
+                }
+                failed.add(query);
+                errors.add(error);
+            }
+        }
+        for (int i = 0; failed != null && i < failed.size(); i++) {
+            failed.get(i).result.completeExceptionally(errors.get(i));
+        }
+    }
+
+    /**
+     * @return the error if the query could not be sent, <code>null</code> if it was sent
+     */
+    private Exception send(final Query query) {
+        int index = random.nextInt(SOCKETS);
+        Port port = ports.get(index);
+        if (port.queries.incrementAndGet() == QUERIES_PER_SOCKET) {
+            rebind(index, port);
+        }
+        query.port = port;
+        int id;
+        do {
+            id = random.nextInt(0x10000);
+        } while (pending.putIfAbsent(id, query) != null);
+        query.id = id;
+
+        Message message = Message.newQuery(Record.newRecord(query.name, Type.SOA, DClass.IN));
+        message.getHeader().setID(id);
+        query.wire = message.toWire();
+        try {
+            query.timeout = timer.schedule(new Runnable() {
+                public void run() {
+                    finish(query, null, new SocketTimeoutException("No answer for " + query.name + " from " + server));
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            send(port, query.wire);
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    /**
+     * Send a datagram on behalf of the calling thread. The socket is shared by all callers, so an
+     * interrupted caller must not close it: the interrupt is held back while sending.
+     */
+    private void send(Port port, byte[] wire) throws IOException {
+        boolean interrupted = Thread.interrupted();
+        try {
+            port.channel.send(ByteBuffer.wrap(wire), server);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void receive(Port port) {
+        ByteBuffer buffer = ByteBuffer.allocate(Message.MAXLENGTH);
+        while (!closed) {
+            try {
+                buffer.clear();
+                SocketAddress from = port.channel.receive(buffer);
+                if (!server.equals(from)) {
+                    continue;
+                }
+                byte[] data = new byte[buffer.position()];
+                buffer.flip();
+                buffer.get(data);
+                handle(port, new Message(data));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.debug("Ignoring malformed DNS response: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(Port port, Message response) {
+        Query query = pending.get(response.getHeader().getID());
+        if (query != null && query.port == port) {
+            handle(query, response, false);
+        }
+    }
+
+    private void handle(Query query, Message response, boolean overTcp) {
+        Record question = response.getQuestion();
+        if (response.getHeader().getID() != query.id || question == null || question.getType() != Type.SOA
+                || !query.name.equals(question.getName())) {
+            return;
+        }
+        if (!overTcp && response.getHeader().getFlag(Flags.TC)) {
+            if (!query.overTcp) {
+                query.overTcp = true;
+                queryOverTcp(query);
+            }
+            return;
+        }
+        int rcode = response.getRcode();
+        if (rcode == Rcode.NOERROR || rcode == Rcode.NXDOMAIN) {
+            finish(query, answer(query.name, response), null);
+        } else {
+            finish(query, null, new IOException("DNS query for " + query.name + " failed: " + Rcode.string(rcode)));
+        }
+    }
+
+    private void queryOverTcp(final Query query) {
+        try {
+            tcp.execute(new Runnable() {
+                public void run() {
+                    Socket socket = new Socket();
+                    try {
+                        socket.connect(server, (int) timeoutMillis);
+                        socket.setSoTimeout((int) timeoutMillis);
+                        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                        out.writeShort(query.wire.length);
+                        out.write(query.wire);
+                        out.flush();
+                        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                        byte[] data = new byte[in.readUnsignedShort()];
+                        in.readFully(data);
+                        handle(query, new Message(data), true);
+                    } catch (IOException e) {
+                        finish(query, null, e);
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            logger.debug("Closing DNS TCP connection failed: " + e.getMessage());
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finish(query, null, new IOException("Resolver closed"));
+        }
+    }
+
+    private static Answer answer(Name name, Message response) {
+        if (response.getRcode() == Rcode.NOERROR) {
+            for (Record record : response.getSectionArray(Section.ANSWER)) {
+                if (record.getType() == Type.SOA && record.getName().equals(name)) {
+                    return new Answer(true, record.getTTL());
+                }
+            }
+        }
+        for (Record record : response.getSectionArray(Section.AUTHORITY)) {
+            if (record.getType() == Type.SOA) {
+                return new Answer(false, Math.min(record.getTTL(), ((SOARecord) record).getMinimum()));
+            }
+        }
+        return new Answer(false, 0);
+    }
+
+    private void finish(Query query, Answer answer, Throwable error) {
+        if (!release(query)) {
+            return;
+        }
+        drain();
+        if (error != null) {
+            query.result.completeExceptionally(error);
+        } else {
+            query.result.complete(answer);
+        }
+    }
+
+    /**
+     * Stop waiting for an answer to the query and free its place in flight.
+     *
+     * @return <code>false</code> if the query was already finished
+     */
+    private boolean release(Query query) {
+        if (!pending.remove(query.id, query)) {
+            return false;
+        }
+        if (query.timeout != null) {
+            query.timeout.cancel(false);
+        }
+        inFlight.decrementAndGet();
+        return true;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static class Query {
+
+        private final Name name;
+        private final CompletableFuture<Answer> result;
+        private volatile int id;
+        private volatile Port port;
+        private volatile byte[] wire;
+        private volatile boolean overTcp;
+        private volatile ScheduledFuture<?> timeout;
+
+        Query(Name name, CompletableFuture<Answer> result) {
+            this.name = name;
+            this.result = result;
+        }
+    }
+
+    /**
+     * A socket bound to one port, and the number of queries sent on it
+     */
+    private static class Port {
+
+        private final DatagramChannel channel;
+        private final AtomicInteger queries = new AtomicInteger();
+
+        Port(DatagramChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * The outcome of a SOA query
+     */
+    static class Answer {
+
+        private final boolean exists;
+        private final long ttl;
+
+        Answer(boolean exists, long ttl) {
+            this.exists = exists;
+            this.ttl = ttl;
+        }
+
+        /**
+         * @return <code>true</code> if the SOA record exists
+         */
+        boolean exists() {
+            return exists;
+        }
+
+        /**
+         * @return the number of seconds the answer may be cached for
+         */
+        long getTtl() {
+            return ttl;
+        }
+    }
+}
@@ -25,6 +25,8 @@ package org.icann.tld;
 
 public class TLDVerifyException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
     public TLDVerifyException(String message) {
         super(message);
     }
@@ -25,24 +25,41 @@ package org.icann.tld;
 
 import java.util.*;
 import java.io.*;
+import java.nio.*;
 
 /**
  * In memory cache that holds all the TLDs that were fetch using
  * {@link TldVerify#refreshTldDB}
+ * <p/>
+ * A cache is immutable once constructed and can be shared between threads without locking.
  *
  * @author Simon Raveh
  * @version 1.0
  */
 class TldCache {
 
-    private List<String> tlds;
-    private String header;
-    private long version;
+    private volatile List<String> tlds;
+    private final TldIndex index;
+    private final String header;
+    private final long version;
+    private final long loadedMillis = System.currentTimeMillis();
+    private volatile TldSuggester suggester;
 
-    public TldCache(long version, String header) {
+    public TldCache(long version, String header, Collection<String> tlds) {
         this.version = version;
         this.header = header;
-        tlds = new ArrayList<String>();
+        this.tlds = Collections.unmodifiableList(new ArrayList<String>(tlds));
+        index = new TldIndex(this.tlds);
+    }
+
+    /**
+     * Create a cache around an index read from a binary snapshot. The list of
+     * TLDs is only built from the index when it is asked for.
+     */
+    TldCache(long version, String header, TldIndex index) {
+        this.version = version;
+        this.header = header;
+        this.index = index;
     }
 
     /**
@@ -51,12 +68,59 @@ class TldCache {
      * @return  <code>true</code> if the top level domain exist <code>false</code> otherwise
      */
     public boolean exist(String tld) {
-        for (String name : tlds) {
-            if(name.toUpperCase().equals(tld.toUpperCase())){
-                return true;
-            }
-        }
-        return false;
+        return index.contains(tld, 0, tld.length());
+    }
+
+    /**
+     * Return True if the characters between <code>start</code> (inclusive) and <code>end</code> (exclusive)
+     * are a TLD that exist in the cache. The comparison ignores ASCII case.
+     *
+     * @param s     the characters to check
+     * @param start the index of the first character of the top level domain
+     * @param end   the index after the last character of the top level domain
+     * @return  <code>true</code> if the top level domain exist <code>false</code> otherwise
+     */
+    public boolean exist(CharSequence s, int start, int end) {
+        return index.contains(s, start, end);
+    }
+
+    /**
+     * Return True if the characters between <code>start</code> (inclusive) and <code>end</code> (exclusive)
+     * are a TLD that exist in the cache. The comparison ignores ASCII case.
+     *
+     * @param s     the characters to check
+     * @param start the index of the first character of the top level domain
+     * @param end   the index after the last character of the top level domain
+     * @return  <code>true</code> if the top level domain exist <code>false</code> otherwise
+     */
+    public boolean exist(char[] s, int start, int end) {
+        return index.contains(s, start, end);
+    }
+
+    /**
+     * Return True if the ASCII bytes between <code>start</code> (inclusive) and <code>end</code> (exclusive)
+     * are a TLD that exist in the cache. The comparison ignores ASCII case.
+     *
+     * @param s     the bytes to check
+     * @param start the index of the first byte of the top level domain
+     * @param end   the index after the last byte of the top level domain
+     * @return  <code>true</code> if the top level domain exist <code>false</code> otherwise
+     */
+    public boolean exist(byte[] s, int start, int end) {
+        return index.contains(s, start, end);
+    }
+
+    /**
+     * Return True if the ASCII bytes of the buffer between the absolute indexes <code>start</code> (inclusive)
+     * and <code>end</code> (exclusive) are a TLD that exist in the cache. The comparison ignores ASCII case.
+     *
+     * @param s     the buffer to check, its position is not changed
+     * @param start the index of the first byte of the top level domain
+     * @param end   the index after the last byte of the top level domain
+     * @return  <code>true</code> if the top level domain exist <code>false</code> otherwise
+     */
+    public boolean exist(ByteBuffer s, int start, int end) {
+        return index.contains(s, start, end);
     }
 
     /**
@@ -64,7 +128,29 @@ class TldCache {
      * @return  a list of all TLDs
      */
     public List<String> tlds() {
-        return Collections.unmodifiableList(tlds);
+        List<String> names = tlds;
+        if (names == null) {
+            names = new ArrayList<String>(index.size());
+            for (int i = 0; i < index.size(); i++) {
+                names.add(index.name(i));
+            }
+            names = Collections.unmodifiableList(names);
+            tlds = names;
+        }
+        return names;
+    }
+
+    /**
+     * Return the index of the TLDs used for suggestions, built when it is first asked for
+     * @return the suggestion index
+     */
+    TldSuggester suggester() {
+        TldSuggester names = suggester;
+        if (names == null) {
+            names = new TldSuggester(index, TldVerify.MAX_SUGGESTION_DISTANCE);
+            suggester = names;
+        }
+        return names;
     }
 
     /**
@@ -76,22 +162,13 @@ class TldCache {
     public void print(Writer out) throws IOException {
         out.write(header);
         out.write("\n");
-        for (String tld : tlds) {
+        for (String tld : tlds()) {
             out.write(tld);
             out.write("\n");
         }
         out.flush();
     }
 
-    /**
-     * Add new TLD to the cache.
-     *
-     * @param tld The top level domain to add
-     */
-    public void addTld(String tld) {
-        tlds.add(tld);
-    }
-
 
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -101,14 +178,14 @@ class TldCache {
 
         if (version != tldCache.version) return false;
         if (header != null ? !header.equals(tldCache.header) : tldCache.header != null) return false;
-        if (tlds != null ? !tlds.equals(tldCache.tlds) : tldCache.tlds != null) return false;
+        if (!tlds().equals(tldCache.tlds())) return false;
 
         return true;
     }
 
     public int hashCode() {
         int result;
-        result = (tlds != null ? tlds.hashCode() : 0);
+        result = tlds().hashCode();
         result = 31 * result + (header != null ? header.hashCode() : 0);
         result = 31 * result + (int) (version ^ (version >>> 32));
         return result;
@@ -117,4 +194,26 @@ class TldCache {
     public long getVersion() {
         return version;
     }
+
+    /**
+     * @return the number of distinct TLDs in the cache
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the time the cache was built or read, in milliseconds since the epoch
+     */
+    public long getLoadedMillis() {
+        return loadedMillis;
+    }
+
+    String getHeader() {
+        return header;
+    }
+
+    TldIndex index() {
+        return index;
+    }
 }
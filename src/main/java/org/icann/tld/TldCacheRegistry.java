@@ -0,0 +1,134 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Keeps the caches loaded from a bounded number of cache files.
+ * <p/>
+ * A file is only read again when its modification time or size changes, and even
+ * then the loaded cache is kept when the version in the header is unchanged. When more
+ * files than the limit are in use, the least recently used one is forgotten.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class TldCacheRegistry {
+
+    /**
+     * Reads the cache stored in a file.
+     */
+    interface Loader {
+
+        /**
+         * @param file     the cache file
+         * @param previous the cache last loaded from the file, or <code>null</code>
+         * @return the cache in the file, or <code>previous</code> if the file holds the same version
+         */
+        TldCache load(File file, TldCache previous) throws TLDVerifyException;
+    }
+
+    private final Loader loader;
+    private final Map<String, Entry> entries;
+    private volatile int maxFiles;
+
+    /**
+     * @param loader   reads the cache files
+     * @param maxFiles the number of cache files to keep loaded
+     */
+    TldCacheRegistry(Loader loader, int maxFiles) {
+        this.loader = loader;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > TldCacheRegistry.this.maxFiles;
+            }
+        };
+        setMaxFiles(maxFiles);
+    }
+
+    /**
+     * Return the cache stored in a file, reading the file only if it changed since it was last read.
+     *
+     * @param file the cache file
+     * @return the cache in the file
+     * @throws TLDVerifyException if the file can not be read
+     */
+    TldCache get(File file) throws TLDVerifyException {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(path);
+        }
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            return entry.cache;
+        }
+        TldCache cache = loader.load(file, entry != null ? entry.cache : null);
+        synchronized (entries) {
+            entries.put(path, new Entry(lastModified, length, cache));
+        }
+        return cache;
+    }
+
+    /**
+     * @param maxFiles the number of cache files to keep loaded, at least 1
+     */
+    void setMaxFiles(int maxFiles) {
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException("The number of cache files must be at least 1");
+        }
+        synchronized (entries) {
+            this.maxFiles = maxFiles;
+            Iterator<String> paths = entries.keySet().iterator();
+            while (entries.size() > maxFiles && paths.hasNext()) {
+                paths.next();
+                paths.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cache files currently loaded
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        final long lastModified;
+        final long length;
+        final TldCache cache;
+
+        Entry(long lastModified, long length, TldCache cache) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.cache = cache;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A case insensitive hash index of top level domain names.
+ * <p/>
+ * Names are folded to upper case ASCII when the index is built and stored back to
+ * back in a single character buffer. Lookups hash and compare the query in place,
+ * so checking a name never creates a new string.
+ * <p/>
+ * The index is held in plain int and char buffers. They are heap buffers when the
+ * index is built from a list of names, and views of a memory mapped file when it is
+ * read from a binary snapshot, see {@link #writeTo(ByteBuffer)} and {@link #readFrom(ByteBuffer)}.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class TldIndex {
+
+    private static final int EMPTY = -1;
+
+    /**
+     * Reads a character of a name to look up from its source, so one lookup serves every
+     * source type without wrapping it. Bytes are read as ISO-8859-1.
+     */
+    private interface CharReader<S> {
+
+        char charAt(S s, int i);
+    }
+
+    private static final CharReader<CharSequence> CHAR_SEQUENCE = new CharReader<CharSequence>() {
+        public char charAt(CharSequence s, int i) {
+            return s.charAt(i);
+        }
+    };
+
+    private static final CharReader<char[]> CHAR_ARRAY = new CharReader<char[]>() {
+        public char charAt(char[] s, int i) {
+            return s[i];
+        }
+    };
+
+    private static final CharReader<byte[]> BYTE_ARRAY = new CharReader<byte[]>() {
+        public char charAt(byte[] s, int i) {
+            return (char) (s[i] & 0xFF);
+        }
+    };
+
+    private static final CharReader<ByteBuffer> BYTE_BUFFER = new CharReader<ByteBuffer>() {
+        public char charAt(ByteBuffer s, int i) {
+            return (char) (s.get(i) & 0xFF);
+        }
+    };
+
+    private final IntBuffer slots;
+    private final IntBuffer hashes;
+    private final IntBuffer offsets;
+    private final CharBuffer chars;
+    private final int size;
+
+    /**
+     * Build an index of the given names. Duplicate names are only indexed once.
+     *
+     * @param names the names to index
+     */
+    public TldIndex(Collection<? extends CharSequence> names) {
+        int[] slots = new int[tableSize(names.size())];
+        Arrays.fill(slots, EMPTY);
+        int[] hashes = new int[names.size()];
+        int[] offsets = new int[names.size() + 1];
+        int length = 0;
+        for (CharSequence name : names) {
+            length += name.length();
+        }
+        char[] chars = new char[length];
+
+        int size = 0;
+        int mask = slots.length - 1;
+        for (CharSequence name : names) {
+            int hash = hash(name, CHAR_SEQUENCE, 0, name.length());
+            int start = offsets[size];
+            for (int i = 0; i < name.length(); i++) {
+                chars[start + i] = fold(name.charAt(i));
+            }
+            int slot = hash & mask;
+            while (slots[slot] != EMPTY && !(hashes[slots[slot]] == hash
+                    && equal(chars, offsets[slots[slot]], offsets[slots[slot] + 1], start, start + name.length()))) {
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] != EMPTY) {
+                continue;
+            }
+            slots[slot] = size;
+            hashes[size] = hash;
+            offsets[size + 1] = start + name.length();
+            size++;
+        }
+        this.slots = IntBuffer.wrap(slots);
+        this.hashes = IntBuffer.wrap(hashes);
+        this.offsets = IntBuffer.wrap(offsets);
+        this.chars = CharBuffer.wrap(chars, 0, offsets[size]);
+        this.size = size;
+    }
+
+    private TldIndex(IntBuffer slots, IntBuffer hashes, IntBuffer offsets, CharBuffer chars, int size) {
+        this.slots = slots;
+        this.hashes = hashes;
+        this.offsets = offsets;
+        this.chars = chars;
+        this.size = size;
+    }
+
+    /**
+     * Return <code>true</code> if the characters between <code>start</code> (inclusive) and
+     * <code>end</code> (exclusive) match a name in the index, ignoring ASCII case.
+     */
+    public boolean contains(CharSequence s, int start, int end) {
+        return find(s, CHAR_SEQUENCE, start, end) != EMPTY;
+    }
+
+    /**
+     * Return the position of the name that the characters between <code>start</code> (inclusive)
+     * and <code>end</code> (exclusive) match, ignoring ASCII case.
+     *
+     * @return the position, as in {@link #name(int)}, or -1 if no name matches
+     */
+    int indexOf(CharSequence s, int start, int end) {
+        return find(s, CHAR_SEQUENCE, start, end);
+    }
+
+    /**
+     * Return <code>true</code> if the characters between <code>start</code> (inclusive) and
+     * <code>end</code> (exclusive) match a name in the index, ignoring ASCII case.
+     */
+    public boolean contains(char[] s, int start, int end) {
+        return find(s, CHAR_ARRAY, start, end) != EMPTY;
+    }
+
+    /**
+     * Return <code>true</code> if the ASCII bytes between <code>start</code> (inclusive) and
+     * <code>end</code> (exclusive) match a name in the index, ignoring ASCII case.
+     */
+    public boolean contains(byte[] s, int start, int end) {
+        return find(s, BYTE_ARRAY, start, end) != EMPTY;
+    }
+
+    /**
+     * Return <code>true</code> if the ASCII bytes of the buffer between the absolute indexes
+     * <code>start</code> (inclusive) and <code>end</code> (exclusive) match a name in the index,
+     * ignoring ASCII case. The buffer position is not used or changed.
+     */
+    public boolean contains(ByteBuffer s, int start, int end) {
+        return find(s, BYTE_BUFFER, start, end) != EMPTY;
+    }
+
+    /**
+     * @return the number of distinct names in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param entry the position of the name, from 0 to {@link #size()} - 1, in the order the names were indexed
+     * @return the folded name
+     */
+    public String name(int entry) {
+        int start = offsets.get(entry);
+        return chars.subSequence(start, offsets.get(entry + 1)).toString();
+    }
+
+    /**
+     * Count the slots visited while looking up a name. Used to check that the
+     * lookup cost does not grow with the number of names.
+     */
+    int probes(CharSequence s) {
+        int hash = hash(s, CHAR_SEQUENCE, 0, s.length());
+        int mask = slots.limit() - 1;
+        int entry = find(s, CHAR_SEQUENCE, 0, s.length());
+        int probes = 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask, probes++) {
+            if (slots.get(slot) == EMPTY || slots.get(slot) == entry) {
+                return probes;
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTo(ByteBuffer)} writes
+     */
+    int byteSize() {
+        return 16 + 4 * (slots.limit() + hashes.limit() + offsets.limit()) + 2 * chars.limit();
+    }
+
+    /**
+     * Write the index in a layout that {@link #readFrom(ByteBuffer)} can use without copying:
+     * the size, the number of slots, hashes and characters, followed by the slots,
+     * hashes, offsets and characters.
+     */
+    void writeTo(ByteBuffer out) {
+        out.putInt(size).putInt(slots.limit()).putInt(hashes.limit()).putInt(chars.limit());
+        for (int i = 0; i < slots.limit(); i++) {
+            out.putInt(slots.get(i));
+        }
+        for (int i = 0; i < hashes.limit(); i++) {
+            out.putInt(hashes.get(i));
+        }
+        for (int i = 0; i < offsets.limit(); i++) {
+            out.putInt(offsets.get(i));
+        }
+        for (int i = 0; i < chars.limit(); i++) {
+            out.putChar(chars.get(i));
+        }
+    }
+
+    /**
+     * Use an index written by {@link #writeTo(ByteBuffer)} in place. The buffer position is
+     * moved past the index.
+     */
+    static TldIndex readFrom(ByteBuffer in) {
+        int size = in.getInt();
+        int slotCount = in.getInt();
+        int hashCount = in.getInt();
+        int charCount = in.getInt();
+        if (size < 0 || size > hashCount || Integer.bitCount(slotCount) != 1 || charCount < 0) {
+            throw new IllegalArgumentException("Corrupt TLD index");
+        }
+        IntBuffer slots = slice(in, 4 * slotCount).asIntBuffer();
+        IntBuffer hashes = slice(in, 4 * hashCount).asIntBuffer();
+        IntBuffer offsets = slice(in, 4 * (hashCount + 1)).asIntBuffer();
+        CharBuffer chars = slice(in, 2 * charCount).asCharBuffer();
+        return new TldIndex(slots, hashes, offsets, chars, size);
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int length) {
+        ByteBuffer slice = in.slice();
+        slice.limit(length);
+        slice.order(in.order());
+        in.position(in.position() + length);
+        return slice;
+    }
+
+    /**
+     * Look up the characters of <code>s</code> between <code>start</code> (inclusive) and
+     * <code>end</code> (exclusive), read in place by <code>reader</code>.
+     *
+     * @return the position of the matching name, or -1 if no name matches
+     */
+    private <S> int find(S s, CharReader<S> reader, int start, int end) {
+        int hash = hash(s, reader, start, end);
+        for (int slot = probe(hash, end - start, hash); slot != EMPTY; slot = probe(hash, end - start, slot + 1)) {
+            int entry = slots.get(slot);
+            int offset = offsets.get(entry) - start;
+            int i = start;
+            while (i < end && chars.get(offset + i) == fold(reader.charAt(s, i))) {
+                i++;
+            }
+            if (i == end) {
+                return entry;
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Walk the slots from <code>slot</code> on, the way a lookup of a name with the given hash
+     * does, to the next one holding a name of the same hash and length. All lookups share
+     * this walk and only compare the characters of the names it stops at.
+     *
+     * @param slot the slot to start from, any int: it is reduced to the table size
+     * @return the slot, or -1 once an empty slot ends the walk
+     */
+    private int probe(int hash, int length, int slot) {
+        int mask = slots.limit() - 1;
+        for (slot &= mask; ; slot = (slot + 1) & mask) {
+            int entry = slots.get(slot);
+            if (entry == EMPTY) {
+                return EMPTY;
+            }
+            int offset = offsets.get(entry);
+            if (hashes.get(entry) == hash && offsets.get(entry + 1) - offset == length) {
+                return slot;
+            }
+        }
+    }
+
+    private static boolean equal(char[] chars, int start1, int end1, int start2, int end2) {
+        if (end1 - start1 != end2 - start2) {
+            return false;
+        }
+        for (int i = 0; i < end1 - start1; i++) {
+            if (chars[start1 + i] != chars[start2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Size the table to a power of two at most half full.
+     */
+    private static int tableSize(int names) {
+        int size = 16;
+        while (size < names * 2) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    private static <S> int hash(S s, CharReader<S> reader, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + fold(reader.charAt(s, i));
+        }
+        return spread(hash);
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Fold lower case ASCII letters to upper case, leave every other character alone.
+     */
+    static char fold(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+}
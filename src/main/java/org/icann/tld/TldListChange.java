@@ -0,0 +1,128 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.util.*;
+
+/**
+ * The difference between two versions of the TLD list, passed to {@link TldListListener}s.
+ * <p/>
+ * TLDs are compared in upper case ASCII. The added and removed TLDs are found with one merge
+ * of the two lists in sorted order, so the diff costs time linear in the size of the lists,
+ * which the IANA publishes sorted. Lists that are not sorted are sorted first.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class TldListChange {
+
+    private final long oldVersion;
+    private final long newVersion;
+    private final List<String> added;
+    private final List<String> removed;
+
+    TldListChange(long oldVersion, long newVersion, List<String> added, List<String> removed) {
+        this.oldVersion = oldVersion;
+        this.newVersion = newVersion;
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Compute the change between two TLD lists.
+     *
+     * @param oldVersion the version of the old list, -1 if there was none
+     * @param oldTlds    the TLDs of the old list
+     * @param newVersion the version of the new list
+     * @param newTlds    the TLDs of the new list
+     * @return the TLDs added and removed
+     */
+    static TldListChange diff(long oldVersion, List<String> oldTlds, long newVersion, List<String> newTlds) {
+        String[] before = sortedUpperCase(oldTlds);
+        String[] after = sortedUpperCase(newTlds);
+        List<String> added = new ArrayList<String>();
+        List<String> removed = new ArrayList<String>();
+        int i = 0;
+        int j = 0;
+        while (i < before.length || j < after.length) {
+            int comparison = i == before.length ? 1 : j == after.length ? -1 : before[i].compareTo(after[j]);
+            if (comparison < 0) {
+                removed.add(before[i++]);
+            } else if (comparison > 0) {
+                added.add(after[j++]);
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return new TldListChange(oldVersion, newVersion, added, removed);
+    }
+
+    private static String[] sortedUpperCase(List<String> tlds) {
+        String[] names = new String[tlds.size()];
+        boolean sorted = true;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = tlds.get(i).toUpperCase(Locale.ENGLISH);
+            if (i > 0 && names[i - 1].compareTo(names[i]) > 0) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(names);
+        }
+        return names;
+    }
+
+    /**
+     * @return the version of the list that was replaced, -1 if no list was loaded before
+     */
+    public long getOldVersion() {
+        return oldVersion;
+    }
+
+    /**
+     * @return the version of the list now in use
+     */
+    public long getNewVersion() {
+        return newVersion;
+    }
+
+    /**
+     * @return the TLDs in the new list but not in the old one, sorted, in upper case
+     */
+    public List<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the TLDs in the old list but not in the new one, sorted, in upper case
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public String toString() {
+        return "TLD list " + oldVersion + " -> " + newVersion + " added " + added + " removed " + removed;
+    }
+}
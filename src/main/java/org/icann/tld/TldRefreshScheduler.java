@@ -0,0 +1,185 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Refreshes the fixed database of a {@link TldVerify} in the background, so nobody
+ * has to call {@link TldVerify#refreshTldDB()} on a schedule.
+ * <p/>
+ * Refreshes run on a single daemon thread every interval, spread by a random jitter so
+ * that many instances do not hit the server at the same moment. A failed refresh is
+ * retried after a delay that doubles on every consecutive failure, up to a maximum.
+ * Downloads are conditional, see {@link TldVerify#refreshTldDB(String)}.
+ *
+ * <pre>
+ * TldRefreshScheduler scheduler = new TldRefreshScheduler(verify, TldVerify.TLD_CACHE_FILE, 1, TimeUnit.DAYS);
+ * scheduler.start();
+ * ...
+ * scheduler.stop();
+ * </pre>
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class TldRefreshScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TldRefreshScheduler.class);
+
+    /**
+     * Default fraction of the delay used as random jitter
+     */
+    public static final double DEFAULT_JITTER = 0.1;
+
+    /**
+     * Default delay before the first retry after a failure, in milliseconds
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TldVerify verify;
+    private final String cacheStoreFileName;
+    private final long intervalMillis;
+    private final Random random = new Random();
+
+    private volatile double jitter = DEFAULT_JITTER;
+    private volatile long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private volatile long maxBackoffMillis;
+    private volatile int consecutiveFailures;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param verify             the instance to refresh
+     * @param cacheStoreFileName the file to store the cache in, see {@link TldVerify#refreshTldDB(String)}
+     * @param interval           the time between two successful refreshes
+     * @param unit               the unit of the interval
+     */
+    public TldRefreshScheduler(TldVerify verify, String cacheStoreFileName, long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Refresh interval must be positive " + interval);
+        }
+        this.verify = verify;
+        this.cacheStoreFileName = cacheStoreFileName;
+        this.intervalMillis = unit.toMillis(interval);
+        this.maxBackoffMillis = intervalMillis;
+    }
+
+    /**
+     * @param jitter the fraction of every delay, between 0 and 1, by which it is randomly shortened or lengthened
+     */
+    public void setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1 " + jitter);
+        }
+        this.jitter = jitter;
+    }
+
+    /**
+     * Set the retry delays after a failed refresh. The first retry waits <code>initial</code>,
+     * every further consecutive failure doubles the delay up to <code>max</code>.
+     * The maximum defaults to the refresh interval.
+     */
+    public void setBackoff(long initial, long max, TimeUnit unit) {
+        if (initial <= 0 || max < initial) {
+            throw new IllegalArgumentException("Invalid backoff " + initial + ", " + max);
+        }
+        this.initialBackoffMillis = unit.toMillis(initial);
+        this.maxBackoffMillis = unit.toMillis(max);
+    }
+
+    /**
+     * Start refreshing. The first refresh runs immediately.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "tld-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        schedule(0);
+    }
+
+    /**
+     * Stop refreshing. A refresh that is in progress is interrupted.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the number of failed refreshes since the last successful one
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        if (executor == null) {
+            return;
+        }
+        executor.schedule(new Runnable() {
+            public void run() {
+                refresh();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        try {
+            verify.refreshTldDB(cacheStoreFileName);
+            consecutiveFailures = 0;
+            schedule(jittered(intervalMillis));
+        } catch (Exception e) {
+            int failures = ++consecutiveFailures;
+            long backoff = backoff(failures);
+            logger.warn("TLD refresh failed " + failures + " time(s), retrying in " + backoff + " ms", e);
+            schedule(jittered(backoff));
+        }
+    }
+
+    long backoff(int failures) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < failures && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoffMillis);
+    }
+
+    private long jittered(long delayMillis) {
+        double factor = 1 + jitter * (2 * random.nextDouble() - 1);
+        return Math.max(0, (long) (delayMillis * factor));
+    }
+}
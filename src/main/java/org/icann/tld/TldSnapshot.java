@@ -0,0 +1,143 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.zip.*;
+
+/**
+ * Reads and writes binary snapshots of a {@link TldCache}.
+ * <p/>
+ * A snapshot holds the version, the header and the prebuilt lookup table of a cache,
+ * laid out so that the file can be memory mapped and queried in place. Loading a
+ * snapshot is a single mapped read and a checksum, there is nothing to parse.
+ * <pre>
+ * int    magic "TLDS"
+ * int    snapshot format
+ * long   TLD list version
+ * long   CRC32 of everything that follows
+ * int    header length, followed by the header characters
+ *        the lookup table, see {@link TldIndex#writeTo(ByteBuffer)}
+ * </pre>
+ * All values are big endian.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class TldSnapshot {
+
+    /**
+     * Suffix added to the name of the cache file to name its snapshot
+     */
+    static final String SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x544C4453;
+    private static final int FORMAT = 1;
+    private static final int CHECKSUM_POSITION = 16;
+    private static final int FIXED_LENGTH = 24;
+
+    /**
+     * @param cacheFile the text cache file
+     * @return the snapshot file that goes with the cache file
+     */
+    static File snapshotFile(File cacheFile) {
+        return new File(cacheFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Write a snapshot of the cache. The snapshot is written to a temporary file
+     * next to the target and renamed, so readers never see a partial snapshot.
+     */
+    static void write(TldCache cache, File file) throws IOException {
+        String header = cache.getHeader();
+        TldIndex index = cache.index();
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + 4 + 2 * header.length() + index.byteSize());
+        buffer.putInt(MAGIC).putInt(FORMAT).putLong(cache.getVersion()).putLong(0);
+        buffer.putInt(header.length());
+        for (int i = 0; i < header.length(); i++) {
+            buffer.putChar(header.charAt(i));
+        }
+        index.writeTo(buffer);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), FIXED_LENGTH, buffer.position() - FIXED_LENGTH);
+        buffer.putLong(CHECKSUM_POSITION, crc.getValue());
+        buffer.flip();
+
+        AtomicFile.write(file, buffer);
+    }
+
+    /**
+     * Read only the version of a snapshot.
+     *
+     * @return the TLD list version, or -1 if the file is not a snapshot
+     */
+    static long readVersion(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), FIXED_LENGTH));
+        try {
+            if (file.length() < FIXED_LENGTH || in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return -1;
+            }
+            return in.readLong();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Map a snapshot into memory and use its lookup table in place.
+     *
+     * @throws IOException if the file can not be read or is not a valid snapshot
+     */
+    static TldCache read(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        ByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+        try {
+            if (buffer.remaining() < FIXED_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                throw new IOException("Not a TLD snapshot " + file);
+            }
+            long version = buffer.getLong();
+            long checksum = buffer.getLong();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch in TLD snapshot " + file);
+            }
+            char[] header = new char[buffer.getInt()];
+            buffer.asCharBuffer().get(header);
+            buffer.position(buffer.position() + 2 * header.length);
+            return new TldCache(version, new String(header), TldIndex.readFrom(buffer));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated TLD snapshot " + file, e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt TLD snapshot " + file, e);
+        }
+    }
+}
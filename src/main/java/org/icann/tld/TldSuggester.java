@@ -0,0 +1,286 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import java.util.*;
+
+/**
+ * Finds the top-level domains closest to a misspelled one, for "did you mean" suggestions.
+ * <p/>
+ * The distance between two names is the optimal string alignment distance: the number of
+ * letters to insert, delete or replace, or pairs of adjacent letters to swap
+ * (<code>CMO</code> for <code>COM</code>), to turn one into the other. Two names within
+ * <code>k</code> such edits become the same string once at most <code>k</code> letters are
+ * deleted from each, so the index holds the hash of every string obtained by deleting up to
+ * the maximum distance letters from each name. A lookup hashes the same deletions of the
+ * query, and only computes the distance to the names that share one of those hashes, with
+ * no more deletions than the distance asked for, so its cost does not grow with the number
+ * of names.
+ * <p/>
+ * The hashes are held in a sorted int array, and for each hash the positions of the names
+ * in their {@link TldIndex}, with the number of deletions in the top bits. Suggestions are
+ * ranked by sorting their distance and alphabetical rank packed in a long. The index is
+ * immutable once built and can be shared between threads. Names are compared ignoring ASCII
+ * case.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+class TldSuggester {
+
+    /**
+     * Receives the hash of each string obtained by deleting letters from a name.
+     */
+    private interface Deletions {
+
+        void deleted(int hash, int deletions);
+    }
+
+    private static final int ID_BITS = 24;
+    private static final int ID_MASK = (1 << ID_BITS) - 1;
+
+    private final char[][] names;
+    private final int[] ranks;
+    private final int[] byRank;
+    private final int maxDistance;
+    private final int longest;
+    private final int[] keys;
+    private final int[] offsets;
+    private final int[] ids;
+
+    /**
+     * Build the index of the names in a {@link TldIndex}.
+     *
+     * @param index       the names
+     * @param maxDistance the largest distance lookups can ask for
+     */
+    TldSuggester(TldIndex index, int maxDistance) {
+        this.maxDistance = maxDistance;
+        names = new char[index.size()][];
+        final long[][] pairs = {new long[Math.max(16, index.size() * 8)]};
+        final int[] count = {0};
+        int longest = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = index.name(i).toCharArray();
+            longest = Math.max(longest, names[i].length);
+            final long id = i;
+            delete(names[i], maxDistance, new Deletions() {
+                public void deleted(int hash, int deletions) {
+                    if (count[0] == pairs[0].length) {
+                        pairs[0] = Arrays.copyOf(pairs[0], count[0] * 2);
+                    }
+                    pairs[0][count[0]++] = (long) hash << 32 | (long) deletions << ID_BITS | id;
+                }
+            });
+        }
+        this.longest = longest;
+        long[] sorted = pairs[0];
+        Arrays.sort(sorted, 0, count[0]);
+        int distinct = 0;
+        int keyCount = 0;
+        for (int i = 0; i < count[0]; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                if (i == 0 || (int) (sorted[i] >> 32) != (int) (sorted[i - 1] >> 32)) {
+                    keyCount++;
+                }
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        keys = new int[keyCount];
+        offsets = new int[keyCount + 1];
+        ids = new int[distinct];
+        int key = -1;
+        for (int i = 0; i < distinct; i++) {
+            int hash = (int) (sorted[i] >> 32);
+            if (key < 0 || keys[key] != hash) {
+                keys[++key] = hash;
+                offsets[key] = i;
+            }
+            ids[i] = (int) sorted[i];
+        }
+        offsets[keyCount] = distinct;
+
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return compareNames(names[a], names[b]);
+            }
+        });
+        ranks = new int[names.length];
+        byRank = new int[names.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            ranks[order[rank]] = rank;
+            byRank[rank] = order[rank];
+        }
+    }
+
+    /**
+     * Return the names within a distance of the characters between <code>start</code>
+     * (inclusive) and <code>end</code> (exclusive), closest first, and in alphabetical order
+     * at the same distance. A name longer than any indexed name by more than the distance
+     * has no suggestions, and is rejected before its deletions are enumerated, which would
+     * take time cubic in its length at distance 2.
+     *
+     * @param s              the text holding the name to look for
+     * @param maxDistance    the maximum distance of a suggestion, at most the one the index was built for
+     * @param maxSuggestions the maximum number of suggestions
+     * @return the suggestions, folded to upper case
+     */
+    List<String> suggest(CharSequence s, int start, int end, final int maxDistance, int maxSuggestions) {
+        if (maxDistance > this.maxDistance) {
+            throw new IllegalArgumentException("Distance " + maxDistance + " is over the indexed " + this.maxDistance);
+        }
+        if (end - start > longest + maxDistance) {
+            return new ArrayList<String>(0);
+        }
+        final char[] query = new char[end - start];
+        for (int i = 0; i < query.length; i++) {
+            query[i] = TldIndex.fold(s.charAt(start + i));
+        }
+        final boolean[] seen = new boolean[names.length];
+        final int[][] rows = new int[3][query.length + 1];
+        final long[][] found = {new long[16]};
+        final int[] count = {0};
+        delete(query, maxDistance, new Deletions() {
+            public void deleted(int hash, int deletions) {
+                int key = Arrays.binarySearch(keys, hash);
+                if (key < 0) {
+                    return;
+                }
+                for (int i = offsets[key]; i < offsets[key + 1] && ids[i] >>> ID_BITS <= maxDistance; i++) {
+                    int id = ids[i] & ID_MASK;
+                    if (seen[id]) {
+                        continue;
+                    }
+                    seen[id] = true;
+                    if (Math.abs(names[id].length - query.length) <= maxDistance) {
+                        int distance = optimalStringAlignment(query, names[id], rows);
+                        if (distance <= maxDistance) {
+                            if (count[0] == found[0].length) {
+                                found[0] = Arrays.copyOf(found[0], count[0] * 2);
+                            }
+                            found[0][count[0]++] = (long) distance << 32 | ranks[id];
+                        }
+                    }
+                }
+            }
+        });
+        Arrays.sort(found[0], 0, count[0]);
+        List<String> suggestions = new ArrayList<String>(Math.min(count[0], maxSuggestions));
+        for (int i = 0; i < count[0] && i < maxSuggestions; i++) {
+            suggestions.add(new String(names[byRank[(int) found[0][i]]]));
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return the number of names in the index
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the number of distinct deletion hashes in the index
+     */
+    int keys() {
+        return keys.length;
+    }
+
+    /**
+     * Optimal string alignment distance: Levenshtein distance that also counts swapping two
+     * adjacent characters as one edit, keeping the last three rows of the table.
+     *
+     * @param rows three buffers of at least <code>a.length + 1</code> ints
+     */
+    static int optimalStringAlignment(char[] a, char[] b, int[][] rows) {
+        int[] previous2 = rows[0];
+        int[] previous = rows[1];
+        int[] current = rows[2];
+        for (int i = 0; i <= a.length; i++) {
+            previous[i] = i;
+        }
+        for (int j = 1; j <= b.length; j++) {
+            current[0] = j;
+            for (int i = 1; i <= a.length; i++) {
+                int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+                int distance = Math.min(Math.min(current[i - 1], previous[i]) + 1, previous[i - 1] + cost);
+                if (i > 1 && j > 1 && a[i - 1] == b[j - 2] && a[i - 2] == b[j - 1]) {
+                    distance = Math.min(distance, previous2[i - 2] + 1);
+                }
+                current[i] = distance;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[a.length];
+    }
+
+    /**
+     * Hash every string obtained by deleting up to <code>maxDeletions</code> characters from a name.
+     * The same string can be reported more than once.
+     */
+    private static void delete(char[] name, int maxDeletions, Deletions deletions) {
+        delete(name, 0, 0, Math.min(maxDeletions, name.length), new boolean[name.length], deletions);
+    }
+
+    private static void delete(char[] name, int from, int deletions, int maxDeletions, boolean[] deleted,
+                               Deletions visitor) {
+        visitor.deleted(hash(name, deleted), deletions);
+        if (deletions == maxDeletions) {
+            return;
+        }
+        for (int i = from; i < name.length; i++) {
+            deleted[i] = true;
+            delete(name, i + 1, deletions + 1, maxDeletions, deleted, visitor);
+            deleted[i] = false;
+        }
+    }
+
+    private static int hash(char[] name, boolean[] deleted) {
+        int hash = 0;
+        for (int i = 0; i < name.length; i++) {
+            if (!deleted[i]) {
+                hash = 31 * hash + name[i];
+            }
+        }
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        return hash ^ (hash >>> 7) ^ (hash >>> 4);
+    }
+
+    private static int compareNames(char[] a, char[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] - b[i];
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -23,7 +23,9 @@
 // either expressed or implied, of ICANN.
 package org.icann.tld;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.*;
+import org.apache.commons.lang.StringUtils;
 import org.icann.tld.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,18 +33,38 @@ import org.xbill.DNS.*;
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * A class that lets you verify the existence
  * of a domain
+ * <p/>
+ * Instances are thread safe and meant to be shared: one instance can serve any number
+ * of threads. The fixed database is held in an immutable {@link TldCache} that is
+ * fully built before it is published, so an offline check never blocks or takes a lock
+ * and always sees one complete version of the database, even while another thread
+ * refreshes it. Newer versions become visible to all threads as soon as they are published.
+ * <p/>
+ * At most one download of the TLD list runs at a time: threads that refresh while a download
+ * is in progress wait for its result instead of starting another one.
  *
  * @author Simon Raveh
  * @version 1.0
  */
-public class TldVerify {
+public class TldVerify implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(TldVerify.class);
 
+    private static final DomainNameUtil DOMAIN_NAME_UTIL = new DomainNameUtil();
+
+    private static final IdnLabels IDN_LABELS = new IdnLabels(IdnLabels.DEFAULT_MAX_SIZE);
+
     /**
      * Default Cache file name
      */
@@ -50,9 +72,181 @@ public class TldVerify {
 
     private static final String TLDS_BY_DOMAIN_TXT = "http://data.iana.org/TLD/tlds-alpha-by-domain.txt";
 
-    private TldCache cache;
+    private final AtomicReference<TldCache> cache = new AtomicReference<TldCache>();
     private static final String MD5_URL = "http://data.iana.org/TLD/tlds-alpha-by-domain.txt.md5";
 
+    private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 60 * 1000;
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    /**
+     * The TLD list packaged in the jar, a resource next to this class
+     */
+    private static final String BUNDLED_TLD_LIST = "tlds-alpha-by-domain.txt";
+
+    private static volatile TldCache bundledTlds;
+
+    /**
+     * Name of the MD5 digest algorithm, the one IANA publish a digest for
+     */
+    public static final String DIGEST_MD5 = "MD5";
+
+    /**
+     * Name of the SHA-256 digest algorithm
+     */
+    public static final String DIGEST_SHA256 = "SHA-256";
+
+    private final URL tldListUrl;
+    private final URL digestUrl;
+    private final String digestAlgorithm;
+    private volatile String lastModified;
+    private volatile String etag;
+    private volatile boolean binarySnapshot;
+    private volatile boolean bundledTldList = true;
+
+    /**
+     * Default time a cold offline verification waits for a download started by another thread, in milliseconds
+     */
+    public static final long DEFAULT_REFRESH_WAIT_MILLIS = 30 * 1000;
+
+    private final AtomicReference<Refresh> refresh = new AtomicReference<Refresh>();
+    private volatile long refreshWaitMillis = DEFAULT_REFRESH_WAIT_MILLIS;
+    private volatile long staleAfterMillis;
+    private final AtomicLong revalidatedMillis = new AtomicLong();
+
+    /**
+     * Default batch size below which a batch verification runs on the caller's thread
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 8192;
+
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private volatile ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+
+    /**
+     * Default time to wait for the answer to a DNS query, in milliseconds
+     */
+    public static final long DEFAULT_DNS_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Default maximum number of DNS queries in flight at the same time
+     */
+    public static final int DEFAULT_MAX_DNS_QUERIES_IN_FLIGHT = 256;
+
+    /**
+     * Default percentile of the preferred DNS server's latency after which a query is also sent to the next server
+     */
+    public static final double DEFAULT_DNS_HEDGE_PERCENTILE = 0.95;
+
+    private List<InetSocketAddress> dnsServers;
+    private long dnsTimeoutMillis = DEFAULT_DNS_TIMEOUT_MILLIS;
+    private int maxDnsQueriesInFlight = DEFAULT_MAX_DNS_QUERIES_IN_FLIGHT;
+    private double dnsHedgePercentile = DEFAULT_DNS_HEDGE_PERCENTILE;
+    private volatile HedgedResolver resolver;
+
+    /**
+     * Default number of top-level domains whose DNS verification result is cached
+     */
+    public static final int DEFAULT_DNS_CACHE_SIZE = 4096;
+
+    private volatile DnsResultCache dnsCache = new DnsResultCache(DEFAULT_DNS_CACHE_SIZE);
+    private final ConcurrentMap<String, CompletableFuture<Boolean>> dnsQueries = new ConcurrentHashMap<String, CompletableFuture<Boolean>>();
+
+    /**
+     * Default time {@link #verifyTldHybrid(String)} waits for DNS, in milliseconds
+     */
+    public static final long DEFAULT_HYBRID_DNS_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Default number of consecutive failed or slow DNS checks that stop {@link #verifyTldHybrid(String)} calling DNS
+     */
+    public static final int DEFAULT_CIRCUIT_BREAKER_FAILURES = 5;
+
+    /**
+     * Default time {@link #verifyTldHybrid(String)} stops calling DNS for, in milliseconds
+     */
+    public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS = 30 * 1000;
+
+    private volatile long hybridDnsTimeoutMillis = DEFAULT_HYBRID_DNS_TIMEOUT_MILLIS;
+    private volatile FallbackPolicy fallbackPolicy = FallbackPolicy.FAIL_CLOSED;
+    private volatile CircuitBreaker circuitBreaker = new CircuitBreaker(DEFAULT_CIRCUIT_BREAKER_FAILURES,
+            TimeUnit.MILLISECONDS.toNanos(DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS));
+    private final Set<String> confirmedTlds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final List<TldListListener> listeners = new CopyOnWriteArrayList<TldListListener>();
+    private final Object notifyLock = new Object();
+    private TldCache notifiedCache;
+
+    /**
+     * Default number of cache files whose content is kept loaded
+     */
+    public static final int DEFAULT_MAX_CACHE_FILES = 16;
+
+    private volatile TldVerifyMetrics metrics = TldVerifyMetrics.NONE;
+
+    private volatile PublicSuffixList publicSuffixList = PublicSuffixList.EMPTY;
+
+    /**
+     * Default number of edits between a top-level domain and its suggestions
+     */
+    public static final int DEFAULT_SUGGESTION_DISTANCE = 1;
+
+    /**
+     * Largest number of edits between a top-level domain and its suggestions
+     */
+    public static final int MAX_SUGGESTION_DISTANCE = 2;
+
+    /**
+     * Default maximum number of suggested top-level domains
+     */
+    public static final int DEFAULT_MAX_SUGGESTIONS = 5;
+
+    /**
+     * Default time between checks of the root zone file for changes, in milliseconds
+     */
+    public static final long DEFAULT_ROOT_ZONE_CHECK_MILLIS = 1000;
+
+    private volatile RootZoneFile rootZoneFile;
+
+    private final TldCacheRegistry cacheFiles = new TldCacheRegistry(new TldCacheRegistry.Loader() {
+        public TldCache load(File file, TldCache previous) throws TLDVerifyException {
+            return readCache(file, previous, false);
+        }
+    }, DEFAULT_MAX_CACHE_FILES);
+
+    /**
+     * Create an instance that downloads the TLD list from the IANA web site.
+     */
+    public TldVerify() {
+        this(TLDS_BY_DOMAIN_TXT, MD5_URL);
+    }
+
+    /**
+     * Create an instance that downloads the TLD list and its MD5 digest from the given
+     * locations instead of the IANA web site, e.g. a mirror or a local server.
+     * The list must have the same format as the one IANA publish.
+     *
+     * @param tldListUrl the URL of the TLD list
+     * @param md5Url     the URL of the MD5 digest of the TLD list
+     */
+    public TldVerify(String tldListUrl, String md5Url) {
+        this(tldListUrl, md5Url, DIGEST_MD5);
+    }
+
+    /**
+     * Create an instance that downloads the TLD list and checks it against a digest made with
+     * another algorithm than MD5, e.g. {@link #DIGEST_SHA256}. The digest file must start with
+     * the digest in hexadecimal, like the MD5 digest IANA publish.
+     *
+     * @param tldListUrl      the URL of the TLD list
+     * @param digestUrl       the URL of the digest of the TLD list
+     * @param digestAlgorithm the name of a {@link MessageDigest} algorithm
+     */
+    public TldVerify(String tldListUrl, String digestUrl, String digestAlgorithm) {
+        this.tldListUrl = toURL(tldListUrl);
+        this.digestUrl = toURL(digestUrl);
+        this.digestAlgorithm = digestAlgorithm;
+        newMessageDigest();
+    }
+
     /**
      * Verifies a top-level domain exists.
      * This methods takes a single argument, which can either be a
@@ -64,24 +258,341 @@ public class TldVerify {
      */
     public boolean verifyTld(String domainName) {
         try {
-            domainName = new DomainNameUtil().getTopLevelDomain(domainName);
-            Lookup lookup = new Lookup(domainName + ".", Type.SOA);
-            Record[] records = lookup.run();
-            if (records == null) {
+            return verifyTldAsync(domainName).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TextParseException) {
+                logger.error(e.getCause().getMessage(), e.getCause());
+                throw new RuntimeException(e.getCause());
+            }
+            logger.debug("DNS verification of " + domainName + " failed: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Verifies a top-level domain exists using the DNS protocol without blocking the caller.
+     * Many queries can be in flight at the same time, up to {@link #setMaxDnsQueriesInFlight(int)};
+     * further queries are sent as earlier ones complete.
+     * <p/>
+     * Results are cached per top-level domain, see {@link #setDnsCacheSize(int)}, and concurrent
+     * verifications of the same top-level domain share one query.
+     * <p/>
+     * The future fails if the DNS server does not answer within the timeout, see
+     * {@link #setDnsTimeout(long, TimeUnit)}, or answers with an error. It is completed on
+     * the resolver's thread, so dependent actions that block should use the <code>*Async</code> variants.
+     *
+     * @param domainName a domain name or a TLD
+     * @return a future that completes with <code>true</code> if the top-level domain exist <code>false</code> otherwise
+     */
+    public CompletableFuture<Boolean> verifyTldAsync(String domainName) {
+        final TldVerifyMetrics metrics = this.metrics;
+        String topLevelDomain = DOMAIN_NAME_UTIL.getTopLevelDomain(domainName);
+        if (!IdnLabels.isAscii(topLevelDomain, 0, topLevelDomain.length())) {
+            topLevelDomain = IDN_LABELS.toAscii(topLevelDomain, 0, topLevelDomain.length());
+        }
+        if (topLevelDomain.length() == 0) {
+            metrics.onlineCheck(false, false);
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+        final String key = topLevelDomain.toUpperCase(Locale.ENGLISH);
+        final DnsResultCache results = dnsCache;
+        Boolean cached = results.get(key);
+        if (cached != null) {
+            metrics.onlineCheck(cached, true);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+        CompletableFuture<Boolean> query = dnsQueries.putIfAbsent(key, result);
+        if (query == null) {
+            query = result;
+            final long start = System.nanoTime();
+            try {
+                resolver().query(topLevelDomain).whenComplete(new BiConsumer<SoaResolver.Answer, Throwable>() {
+                    public void accept(SoaResolver.Answer answer, Throwable error) {
+                        dnsQueries.remove(key, result);
+                        metrics.dnsLookup(System.nanoTime() - start, error == null);
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else {
+                            results.put(key, answer.exists(), answer.getTtl());
+                            result.complete(answer.exists());
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                dnsQueries.remove(key, result);
+                result.completeExceptionally(e);
+            }
+        }
+        CompletableFuture<Boolean> call = query.thenApply(Function.<Boolean>identity());
+        if (metrics != TldVerifyMetrics.NONE) {
+            call.whenComplete(new BiConsumer<Boolean, Throwable>() {
+                public void accept(Boolean valid, Throwable error) {
+                    if (error != null) {
+                        metrics.onlineCheckFailed(error);
+                    } else {
+                        metrics.onlineCheck(valid, false);
+                    }
+                }
+            });
+        }
+        return call;
+    }
+
+    /**
+     * Verifies a top-level domain exists against the fixed database first, and against DNS
+     * only when it is not in the database, so that TLDs delegated since the last refresh are
+     * accepted. The database is loaded the same way as in {@link #verifyTldOffline(String)}.
+     * <p/>
+     * TLDs confirmed by DNS are remembered until a newer database is loaded, so they are only
+     * queried once. The DNS check waits at most {@link #setHybridDnsTimeout(long, TimeUnit)}.
+     * When DNS fails or is too slow several times in a row, it is not called for a while,
+     * see {@link #setCircuitBreaker(int, long, TimeUnit)}. Meanwhile, and whenever a DNS check
+     * fails, the result is given by {@link #setFallbackPolicy(FallbackPolicy)}.
+     *
+     * @param domainName the domain name or a TLD to validate
+     * @return <code>true</code> if the top-level domain exist <code>false</code>
+     * @throws TLDVerifyException
+     */
+    public boolean verifyTldHybrid(String domainName) throws TLDVerifyException {
+        if (StringUtils.isBlank(domainName)) {
+            throw new IllegalArgumentException("Domain name can not be null or empty ");
+        }
+        if (exist(loadedCache(), domainName)) {
+            return counted(true);
+        }
+        long bounds = DOMAIN_NAME_UTIL.getTopLevelDomainBounds(domainName);
+        int start = DomainNameUtil.topLevelDomainStart(bounds);
+        int end = DomainNameUtil.topLevelDomainEnd(bounds);
+        String tld = IdnLabels.isAscii(domainName, start, end)
+                ? domainName.substring(start, end) : IDN_LABELS.toAscii(domainName, start, end);
+        if (tld.length() == 0) {
+            return counted(false);
+        }
+        tld = tld.toUpperCase(Locale.ENGLISH);
+        if (confirmedTlds.contains(tld)) {
+            return counted(true);
+        }
+        CircuitBreaker breaker = circuitBreaker;
+        if (!breaker.allowRequest()) {
+            return fallback(tld, "circuit breaker is open");
+        }
+        boolean reported = false;
+        try {
+            boolean exists = verifyTldAsync(tld).get(hybridDnsTimeoutMillis, TimeUnit.MILLISECONDS);
+            breaker.onSuccess();
+            reported = true;
+            if (exists) {
+                confirmedTlds.add(tld);
+            }
+            return exists;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback(tld, "interrupted");
+        } catch (TimeoutException e) {
+            breaker.onFailure();
+            reported = true;
+            return fallback(tld, "timed out");
+        } catch (ExecutionException e) {
+            reported = true;
+            if (e.getCause() instanceof TextParseException) {
+                breaker.onSuccess();
                 return false;
             }
-        } catch (TextParseException e) {
-            logger.error(e.getMessage(), e);
-            throw new RuntimeException(e);
+            breaker.onFailure();
+            return fallback(tld, e.getCause().getMessage());
+        } finally {
+            if (!reported) {
+                breaker.onCancelled();
+            }
         }
-        return true;
+    }
+
+    /**
+     * Verifies many top-level domains exist using the DNS protocol without blocking the caller.
+     * Each distinct top-level domain is queried once, however many of the domain names share it.
+     *
+     * @param domainNames domain names or TLDs
+     * @return a future that completes with the result for every domain name, in iteration order,
+     *         or fails if any of the queries fails
+     * @see #verifyTldAsync(String)
+     */
+    public CompletableFuture<Map<String, Boolean>> verifyTldAsync(Collection<String> domainNames) {
+        final Map<String, CompletableFuture<Boolean>> byDomain = new LinkedHashMap<String, CompletableFuture<Boolean>>();
+        Map<String, CompletableFuture<Boolean>> byTld = new HashMap<String, CompletableFuture<Boolean>>();
+        for (String domainName : domainNames) {
+            String tld = DOMAIN_NAME_UTIL.getTopLevelDomain(domainName).toUpperCase(Locale.ENGLISH);
+            CompletableFuture<Boolean> result = byTld.get(tld);
+            if (result == null) {
+                result = verifyTldAsync(tld);
+                byTld.put(tld, result);
+            }
+            byDomain.put(domainName, result);
+        }
+        return CompletableFuture.allOf(byTld.values().toArray(new CompletableFuture<?>[byTld.size()]))
+                .thenApply(new Function<Void, Map<String, Boolean>>() {
+                    public Map<String, Boolean> apply(Void ignored) {
+                        Map<String, Boolean> results = new LinkedHashMap<String, Boolean>();
+                        for (Map.Entry<String, CompletableFuture<Boolean>> entry : byDomain.entrySet()) {
+                            results.put(entry.getKey(), entry.getValue().join());
+                        }
+                        return results;
+                    }
+                });
+    }
+
+    /**
+     * Resolve every top-level domain of the fixed database, so that later DNS verifications
+     * of listed top-level domains are answered from the cache. The database is loaded the same
+     * way as in {@link #verifyTldOffline(String)}.
+     *
+     * @return a future that completes when all queries have completed, failed queries are ignored
+     * @throws TLDVerifyException
+     */
+    public CompletableFuture<Void> warmUpDnsCache() throws TLDVerifyException {
+        List<String> tlds = loadedCache().tlds();
+        CompletableFuture<?>[] queries = new CompletableFuture<?>[tlds.size()];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = verifyTldAsync(tlds.get(i)).exceptionally(new Function<Throwable, Boolean>() {
+                public Boolean apply(Throwable error) {
+                    return null;
+                }
+            });
+        }
+        return CompletableFuture.allOf(queries);
+    }
+
+    /**
+     * Set how many top-level domains the DNS verification result is cached for.
+     * Zero disables the cache. Changing the size drops all cached results.
+     *
+     * @param dnsCacheSize the maximum number of cached results
+     */
+    public void setDnsCacheSize(int dnsCacheSize) {
+        if (dnsCacheSize < 0) {
+            throw new IllegalArgumentException("DNS cache size can not be negative " + dnsCacheSize);
+        }
+        dnsCache = new DnsResultCache(dnsCacheSize);
+    }
+
+    /**
+     * @return the number of DNS verifications answered from the cache
+     */
+    public long getDnsCacheHits() {
+        return dnsCache.getHits();
+    }
+
+    /**
+     * @return the number of DNS verifications that were not in the cache
+     */
+    public long getDnsCacheMisses() {
+        return dnsCache.getMisses();
+    }
+
+    /**
+     * @return the number of top-level domains whose DNS verification result is cached
+     */
+    public int getDnsCacheEntries() {
+        return dnsCache.size();
+    }
+
+    /**
+     * Set the DNS server used by {@link #verifyTld(String)} and {@link #verifyTldAsync(String)}.
+     * Defaults to the servers of the system resolver configuration. Changing the server
+     * drops all cached results.
+     *
+     * @param dnsServer the address of the DNS server
+     */
+    public void setDnsServer(InetSocketAddress dnsServer) {
+        setDnsServers(Collections.singletonList(dnsServer));
+    }
+
+    /**
+     * Set the DNS servers used by {@link #verifyTld(String)} and {@link #verifyTldAsync(String)}.
+     * Defaults to the servers of the system resolver configuration. Changing the servers
+     * drops all cached results.
+     * <p/>
+     * Each query goes to the server with the lowest expected time to answer, judged from its
+     * recent latency and error rate, so a slow or lossy server is avoided once it has been
+     * measured. Servers are first tried in the given order. A query that the preferred server
+     * has not answered within {@link #setDnsHedgePercentile(double) a percentile} of its recent
+     * latency is also sent to the next server, and the first answer wins.
+     *
+     * @param dnsServers the addresses of the DNS servers, in order of preference
+     */
+    public synchronized void setDnsServers(List<InetSocketAddress> dnsServers) {
+        if (dnsServers == null || dnsServers.isEmpty() || dnsServers.contains(null)) {
+            throw new IllegalArgumentException("DNS servers can not be null or empty " + dnsServers);
+        }
+        this.dnsServers = new ArrayList<InetSocketAddress>(dnsServers);
+        closeResolver();
+        dnsCache.clear();
+    }
+
+    /**
+     * Set when a DNS query is hedged, that is also sent to the next server. Lower percentiles
+     * cut tail latency further at the cost of more queries: with 0.95, about one query in
+     * twenty is sent twice. Hedging needs more than one DNS server, see {@link #setDnsServers(List)}.
+     *
+     * @param dnsHedgePercentile the percentile of the preferred server's recent latency, between 0 (exclusive) and 1
+     */
+    public synchronized void setDnsHedgePercentile(double dnsHedgePercentile) {
+        if (!(dnsHedgePercentile > 0 && dnsHedgePercentile <= 1)) {
+            throw new IllegalArgumentException("DNS hedge percentile must be between 0 and 1 " + dnsHedgePercentile);
+        }
+        this.dnsHedgePercentile = dnsHedgePercentile;
+        closeResolver();
+    }
+
+    /**
+     * Set how long to wait for the answer to a DNS query.
+     *
+     * @param timeout the time to wait
+     * @param unit    the unit of the timeout
+     */
+    public synchronized void setDnsTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("DNS timeout must be positive " + timeout);
+        }
+        this.dnsTimeoutMillis = unit.toMillis(timeout);
+        closeResolver();
+    }
+
+    /**
+     * Set the maximum number of DNS queries in flight at the same time.
+     *
+     * @param maxDnsQueriesInFlight the maximum number of outstanding queries
+     */
+    public synchronized void setMaxDnsQueriesInFlight(int maxDnsQueriesInFlight) {
+        if (maxDnsQueriesInFlight < 1) {
+            throw new IllegalArgumentException("Maximum DNS queries in flight must be positive " + maxDnsQueriesInFlight);
+        }
+        this.maxDnsQueriesInFlight = maxDnsQueriesInFlight;
+        closeResolver();
+    }
+
+    /**
+     * Release the DNS socket and threads. The instance can still be used afterwards,
+     * they are created again when needed.
+     */
+    public synchronized void close() {
+        closeResolver();
     }
 
     /**
      * Verifies a top-level domain exists against a fixed database.
      * This methods takes a single argument, which can either be a
      * domain name, or a TLD and verified for validity against a fixed database that
-     * has been previously obtained with the {@link #refreshTldDB()} method.
+     * has been previously obtained with the {@link #refreshTldDB()} method. Before that, the
+     * TLD list bundled in the jar is used, see {@link #setBundledTldList(boolean)}.
+     * <p/>
+     * Internationalized top-level domains can be given in Unicode, e.g. <code>example.&#x440;&#x444;</code>,
+     * and are converted to the ASCII form of the IANA list. Names whose top-level domain is
+     * ASCII are checked without any conversion.
      *
      * @param domainName the domain name or a TLD to validate
      * @return <code>true</code> if the top-leve domain exist <code>false</code>
@@ -89,13 +600,10 @@ public class TldVerify {
      */
 
     public boolean verifyTldOffline(String domainName) throws TLDVerifyException {
-        String topLevelDomain = new DomainNameUtil().getTopLevelDomain(domainName);
-        if (cache != null) {
-            return cache.exist(topLevelDomain);
-        } else {
-            refreshTldDB(TLD_CACHE_FILE);
-            return verifyTldOffline(topLevelDomain, TLD_CACHE_FILE);
+        if (StringUtils.isBlank(domainName)) {
+            throw new IllegalArgumentException("Domain name can not be null or empty ");
         }
+        return counted(exist(loadedCache(), domainName));
     }
 
     /**
@@ -105,7 +613,12 @@ public class TldVerify {
      * has been previously obtained with the {@link #refreshTldDB()} method.
      * The second argument is the filename where the cache is stored.
      * The file format should be the same as  the one IANA publish at (http://data.iana.org/TLD/tlds-alpha-by-domain.txt).
-     * The version in the first line will be check against the current cache version to prevent loading of old data.
+     * <p/>
+     * The domain name is checked against the cache stored in that file. Each file is read once
+     * and kept, and only read again when its modification time or size changes, so one instance
+     * can check names against several cache files. See {@link #setMaxCacheFiles(int)}.
+     * The version in the first line will be check against the current cache version, and the
+     * file becomes the database of {@link #verifyTldOffline(String)} only if it is newer.
      *
      * @param domainName    The domain name or a TLD to validate
      * @param cacheFilePath The full path to where the cache is stored.
@@ -113,112 +626,1208 @@ public class TldVerify {
      * @throws TLDVerifyException
      */
     public boolean verifyTldOffline(String domainName, String cacheFilePath) throws TLDVerifyException {
-        try {
-            String topLevelDomain = new DomainNameUtil().getTopLevelDomain(domainName);
-            readTld(new FileReader(new File(cacheFilePath)));
-            return cache.exist(topLevelDomain);
-        } catch (IOException e) {
-            throw new TLDVerifyException(e);
+        if (StringUtils.isBlank(domainName)) {
+            throw new IllegalArgumentException("Domain name can not be null or empty ");
         }
+        TldCache fileCache = cacheFiles.get(new File(cacheFilePath));
+        install(fileCache);
+        return counted(exist(fileCache, domainName));
     }
 
     /**
-     * Updates the copy of the fixed database of valid top-level
-     * domains.
-     * Downloads the official list of valid TLDs from the IANA website,
-     * and performs consistency checking to ensure it was downloaded
-     * correctly. Store the data in the default location.
+     * Verifies a top-level domain exists against the root zone file set with
+     * {@link #setRootZoneFile(String)}: it exists if the root zone delegates it, which is what
+     * a DNS query for its SOA record finds out, without any network access.
+     * <p/>
+     * Internationalized top-level domains can be given in Unicode and are converted to ASCII.
      *
-     * @throws TLDVerifyException
+     * @param domainName the domain name or a TLD to validate
+     * @return <code>true</code> if the root zone delegates the top-level domain
+     * @throws TLDVerifyException if no root zone file is set
      */
-    public void refreshTldDB() throws TLDVerifyException {
-        refreshTldDB(TLD_CACHE_FILE);
+    public boolean verifyTldRootZone(String domainName) throws TLDVerifyException {
+        if (StringUtils.isBlank(domainName)) {
+            throw new IllegalArgumentException("Domain name can not be null or empty ");
+        }
+        boolean valid = (rootZoneFlags(domainName) & RootZone.DELEGATED) != 0;
+        metrics.rootZoneCheck(valid);
+        return valid;
     }
 
     /**
-     * Updates the copy of the fixed database of valid top-level
-     * domains.
-     * Downloads the official list of valid TLDs from the IANA website,
-     * and performs consistency checking to ensure it was downloaded
-     * correctly. The parameter is the filename to store the cache in.
+     * Find out whether a top-level domain is DNSSEC signed, i.e. the root zone file set with
+     * {@link #setRootZoneFile(String)} delegates it with a DS record.
      *
-     * @param cacheStoreFileName The full path to the file to store the cache in.
-     * @throws TLDVerifyException
+     * @param domainName the domain name or a TLD
+     * @return <code>true</code> if the top-level domain is delegated and signed
+     * @throws TLDVerifyException if no root zone file is set
      */
-    public void refreshTldDB(String cacheStoreFileName) throws TLDVerifyException {
-        try {
-            String outputCacheName = TLD_CACHE_FILE;
-            URL url = new URL(TLDS_BY_DOMAIN_TXT);
-            File tempFile = new File("temp_md5 " + System.currentTimeMillis());
-            FileUtils.copyURLToFile(url, tempFile);
-            String digest = getDigestInfo(new URL(MD5_URL));
-            String digest1 = new FileBasedMD5Generator().createDigest(tempFile);
-
-            if (!digest.equals(digest1)) {
-                throw new TLDVerifyException("Could not download TLD data from IANA web site");
-            }
-
-            readTld(new FileReader(tempFile));
-
-            FileUtils.forceDeleteOnExit(tempFile);
-
-            if (cacheStoreFileName != null) {
-                outputCacheName = cacheStoreFileName;
-            }
-
-            writeTlds(outputCacheName);
-        } catch (MalformedURLException e) {
-            throw new TLDVerifyException("Malformed URL " + TLDS_BY_DOMAIN_TXT, e);
-        } catch (IOException e) {
-            throw new TLDVerifyException(e.getMessage(), e);
+    public boolean isTldSigned(String domainName) throws TLDVerifyException {
+        if (StringUtils.isBlank(domainName)) {
+            throw new IllegalArgumentException("Domain name can not be null or empty ");
         }
-
+        return (rootZoneFlags(domainName) & RootZone.SIGNED) != 0;
     }
 
-    private String getDigestInfo(URL url) throws IOException {
-        InputStream inputStream = url.openStream();
-        BufferedReader buff = new BufferedReader(new InputStreamReader(inputStream));
-        String header = buff.readLine();
-        return header.trim().substring(0, 32);
+    /**
+     * Set the root zone master file {@link #verifyTldRootZone(String)} and {@link #isTldSigned(String)}
+     * answer from, e.g. a copy of https://www.internic.net/domain/root.zone. The file is read
+     * now, and read again when it holds a new serial, checked at most every
+     * {@link #DEFAULT_ROOT_ZONE_CHECK_MILLIS} milliseconds.
+     *
+     * @param rootZoneFilePath the path of the root zone file
+     * @throws TLDVerifyException if the file can not be read
+     */
+    public void setRootZoneFile(String rootZoneFilePath) throws TLDVerifyException {
+        if (StringUtils.isBlank(rootZoneFilePath)) {
+            throw new IllegalArgumentException("Root zone file path can not be null or empty");
+        }
+        rootZoneFile = new RootZoneFile(new File(rootZoneFilePath),
+                TimeUnit.MILLISECONDS.toNanos(DEFAULT_ROOT_ZONE_CHECK_MILLIS));
     }
 
+    /**
+     * @return the serial of the root zone in use, -1 if no root zone file is set
+     */
+    public long getRootZoneSerial() {
+        RootZoneFile zoneFile = rootZoneFile;
+        return zoneFile == null ? -1 : zoneFile.get().getSerial();
+    }
 
-    private void readTld(Reader reader) throws TLDVerifyException {
-        try {
-            BufferedReader buff = new BufferedReader(reader);
-            String line;
-            String header = buff.readLine();
-            long version = parseVersion(header);
-            TldCache newCache = new TldCache(version, header);
-            if (cache != null && cache.getVersion() >= version) {
-                return;
-            }
-
-            while ((line = buff.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    continue;
-                }
-                newCache.addTld(line.trim());
-            }
-            cache = newCache;
-        } catch (Exception e) {
-            throw new TLDVerifyException(e);
-        }
+    /**
+     * Verifies a top-level domain exists against a fixed database, and splits the name into its
+     * public suffix and registrable domain with the list set by {@link #setPublicSuffixList(PublicSuffixList)}.
+     * The database is loaded the same way as in {@link #verifyTldOffline(String)}.
+     *
+     * @param domainName the domain name to verify
+     * @return the validity of the top-level domain, the public suffix and the registrable domain of the name
+     * @throws TLDVerifyException
+     */
+    public DomainInfo verifyDomainOffline(String domainName) throws TLDVerifyException {
+        boolean validTld = verifyTldOffline(domainName);
+        PublicSuffixList suffixes = publicSuffixList;
+        String name = domainName.trim();
+        long bounds = suffixes.getBounds(name, 0, name.length());
+        int end = name.endsWith(".") ? name.length() - 1 : name.length();
+        int registrableStart = PublicSuffixList.registrableDomainStart(bounds);
+        return new DomainInfo(domainName, validTld,
+                name.substring(PublicSuffixList.publicSuffixStart(bounds), end),
+                registrableStart < 0 ? null : name.substring(registrableStart, end));
     }
 
-    private long parseVersion(String line) {
-        return new VersionParser().parse(line);
+    /**
+     * Suggest the top-level domains of the fixed database closest to the one of a domain name,
+     * e.g. <code>COM</code> for <code>example.cmo</code>, with at most
+     * {@link #DEFAULT_SUGGESTION_DISTANCE} edit and {@link #DEFAULT_MAX_SUGGESTIONS} suggestions.
+     *
+     * @param domainName the domain name or a TLD
+     * @return the suggested top-level domains, see {@link #suggestTlds(String, int, int)}
+     * @throws TLDVerifyException
+     */
+    public List<String> suggestTlds(String domainName) throws TLDVerifyException {
+        return suggestTlds(domainName, DEFAULT_SUGGESTION_DISTANCE, DEFAULT_MAX_SUGGESTIONS);
     }
 
-    private void writeTlds(String filePath) throws TLDVerifyException {
-        PrintWriter writer;
-        try {
-            writer = new PrintWriter(new FileWriter(filePath));
-            cache.print(writer);
-        } catch (IOException e) {
-            throw new TLDVerifyException(e);
+    /**
+     * Suggest the top-level domains of the fixed database closest to the one of a domain name.
+     * An edit inserts, deletes or replaces a letter, or swaps two adjacent letters. The
+     * suggestions come from an index built once per version of the database.
+     * <p/>
+     * Suggestions are in upper case, as in the IANA list, closest first and in alphabetical
+     * order at the same distance. A top-level domain in the database is its own first
+     * suggestion. Internationalized top-level domains are compared in their ASCII form.
+     *
+     * @param domainName     the domain name or a TLD
+     * @param maxDistance    the maximum number of edits, from 0 to {@link #MAX_SUGGESTION_DISTANCE}
+     * @param maxSuggestions the maximum number of suggestions, at least 1
+     * @return the suggested top-level domains, empty if none is close enough
+     * @throws TLDVerifyException
+     */
+    public List<String> suggestTlds(String domainName, int maxDistance, int maxSuggestions) throws TLDVerifyException {
+        if (StringUtils.isBlank(domainName)) {
+            throw new IllegalArgumentException("Domain name can not be null or empty ");
+        }
+        if (maxDistance < 0 || maxDistance > MAX_SUGGESTION_DISTANCE) {
+            throw new IllegalArgumentException("Suggestion distance must be between 0 and "
+                    + MAX_SUGGESTION_DISTANCE + ": " + maxDistance);
+        }
+        if (maxSuggestions < 1) {
+            throw new IllegalArgumentException("Number of suggestions must be at least 1: " + maxSuggestions);
         }
+        TldSuggester suggester = loadedCache().suggester();
+        long bounds = DOMAIN_NAME_UTIL.getTopLevelDomainBounds(domainName);
+        int start = DomainNameUtil.topLevelDomainStart(bounds);
+        int end = DomainNameUtil.topLevelDomainEnd(bounds);
+        if (!IdnLabels.isAscii(domainName, start, end)) {
+            String tld = IDN_LABELS.toAscii(domainName, start, end);
+            return suggester.suggest(tld, 0, tld.length(), maxDistance, maxSuggestions);
+        }
+        return suggester.suggest(domainName, start, end, maxDistance, maxSuggestions);
     }
 
-
+    /**
+     * Verifies a top-level domain exists against a fixed database.
+     * The domain name is read from <code>length</code> characters of the array starting at
+     * <code>offset</code>, so callers that already hold the name in a buffer do not need
+     * to create a string for it. The database is loaded the same way as in {@link #verifyTldOffline(String)}.
+     *
+     * @param domainName the characters holding the domain name or TLD to validate
+     * @param offset     the index of the first character of the domain name
+     * @param length     the number of characters in the domain name
+     * @return <code>true</code> if the top-leve domain exist <code>false</code>
+     * @throws TLDVerifyException
+     */
+    public boolean verifyTldOffline(char[] domainName, int offset, int length) throws TLDVerifyException {
+        TldCache snapshot = loadedCache();
+        long bounds = DOMAIN_NAME_UTIL.getTopLevelDomainBounds(domainName, offset, length);
+        int start = DomainNameUtil.topLevelDomainStart(bounds);
+        int end = DomainNameUtil.topLevelDomainEnd(bounds);
+        if (!IdnLabels.isAscii(domainName, start, end)) {
+            return counted(snapshot.exist(IDN_LABELS.toAscii(CharBuffer.wrap(domainName), start, end)));
+        }
+        return counted(snapshot.exist(domainName, start, end));
+    }
+
+    /**
+     * Verifies a top-level domain exists against a fixed database.
+     * The domain name is read as ASCII from <code>length</code> bytes of the array starting at
+     * <code>offset</code>, and its last label is looked up on the bytes themselves, without
+     * decoding or copying them. Internationalized top-level domains must be in their
+     * <code>XN--</code> form. The database is loaded the same way as in {@link #verifyTldOffline(String)}.
+     *
+     * @param domainName the bytes holding the domain name or TLD to validate
+     * @param offset     the index of the first byte of the domain name
+     * @param length     the number of bytes in the domain name
+     * @return <code>true</code> if the top-leve domain exist <code>false</code>
+     * @throws TLDVerifyException
+     */
+    public boolean verifyTldOffline(byte[] domainName, int offset, int length) throws TLDVerifyException {
+        TldCache snapshot = loadedCache();
+        long bounds = DOMAIN_NAME_UTIL.getTopLevelDomainBounds(domainName, offset, length);
+        return counted(snapshot.exist(domainName, DomainNameUtil.topLevelDomainStart(bounds), DomainNameUtil.topLevelDomainEnd(bounds)));
+    }
+
+    /**
+     * Verifies a top-level domain exists against a fixed database.
+     * The domain name is read as ASCII from the remaining bytes of the buffer, the same way as
+     * {@link #verifyTldOffline(byte[], int, int)}. The buffer position is not changed, and
+     * direct buffers are read in place.
+     *
+     * @param domainName the buffer holding the domain name or TLD to validate
+     * @return <code>true</code> if the top-leve domain exist <code>false</code>
+     * @throws TLDVerifyException
+     */
+    public boolean verifyTldOffline(ByteBuffer domainName) throws TLDVerifyException {
+        TldCache snapshot = loadedCache();
+        long bounds = DOMAIN_NAME_UTIL.getTopLevelDomainBounds(domainName);
+        return counted(snapshot.exist(domainName, DomainNameUtil.topLevelDomainStart(bounds), DomainNameUtil.topLevelDomainEnd(bounds)));
+    }
+
+    /**
+     * Verifies a top-level domain exists against a fixed database.
+     * The domain name is read in DNS wire format, length prefixed labels ended by the root
+     * label, from <code>length</code> bytes of the array starting at <code>offset</code>,
+     * e.g. the question name of a DNS message. Compressed names are not supported.
+     *
+     * @param domainName the bytes holding the domain name in wire format
+     * @param offset     the index of the length of the first label
+     * @param length     the number of bytes in the domain name
+     * @return <code>true</code> if the top-leve domain exist <code>false</code>
+     * @throws TLDVerifyException
+     * @see DomainNameUtil#getWireTopLevelDomainBounds(byte[], int, int)
+     */
+    public boolean verifyTldOfflineWireFormat(byte[] domainName, int offset, int length) throws TLDVerifyException {
+        TldCache snapshot = loadedCache();
+        long bounds = DOMAIN_NAME_UTIL.getWireTopLevelDomainBounds(domainName, offset, length);
+        return counted(snapshot.exist(domainName, DomainNameUtil.topLevelDomainStart(bounds), DomainNameUtil.topLevelDomainEnd(bounds)));
+    }
+
+    /**
+     * Verifies a top-level domain exists against a fixed database.
+     * The domain name is read in DNS wire format from the remaining bytes of the buffer, the same
+     * way as {@link #verifyTldOfflineWireFormat(byte[], int, int)}. The buffer position is not changed.
+     *
+     * @param domainName the buffer holding the domain name in wire format
+     * @return <code>true</code> if the top-leve domain exist <code>false</code>
+     * @throws TLDVerifyException
+     */
+    public boolean verifyTldOfflineWireFormat(ByteBuffer domainName) throws TLDVerifyException {
+        TldCache snapshot = loadedCache();
+        long bounds = DOMAIN_NAME_UTIL.getWireTopLevelDomainBounds(domainName);
+        return counted(snapshot.exist(domainName, DomainNameUtil.topLevelDomainStart(bounds), DomainNameUtil.topLevelDomainEnd(bounds)));
+    }
+
+    /**
+     * Verifies a batch of domain names against a fixed database.
+     * Every domain name is checked against the same snapshot of the database,
+     * as loaded by {@link #verifyTldOffline(String)}. Batches of at least
+     * {@link #getParallelThreshold()} names are split across the fork-join pool,
+     * smaller batches are verified on the caller's thread.
+     * Blank or <code>null</code> entries are reported as not existing.
+     *
+     * @param domainNames the domain names or TLDs to validate
+     * @return a bit set where bit <i>i</i> is set if the top-level domain of the <i>i</i>-th domain name exist
+     * @throws TLDVerifyException
+     */
+    public BitSet verifyTldOffline(Iterable<? extends CharSequence> domainNames) throws TLDVerifyException {
+        CharSequence[] names = toArray(domainNames);
+        long[] words = new long[(names.length + 63) >>> 6];
+        verifyTldOffline(names, null, words);
+        int valid = 0;
+        for (long word : words) {
+            valid += Long.bitCount(word);
+        }
+        metrics.offlineChecks(valid, names.length - valid);
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Verifies a batch of domain names against a fixed database.
+     *
+     * @param domainNames the domain names or TLDs to validate
+     * @return an array where element <i>i</i> is <code>true</code> if the top-level domain of the <i>i</i>-th domain name exist
+     * @throws TLDVerifyException
+     * @see #verifyTldOffline(Iterable)
+     */
+    public boolean[] verifyTldOffline(CharSequence[] domainNames) throws TLDVerifyException {
+        boolean[] results = new boolean[domainNames.length];
+        verifyTldOffline(domainNames, results, null);
+        int valid = 0;
+        for (boolean result : results) {
+            if (result) {
+                valid++;
+            }
+        }
+        metrics.offlineChecks(valid, results.length - valid);
+        return results;
+    }
+
+    /**
+     * @return the batch size from which batch verifications are split across the fork-join pool
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Set the batch size from which batch verifications are split across the fork-join pool.
+     * Smaller batches are verified on the caller's thread.
+     *
+     * @param parallelThreshold the minimum batch size to verify in parallel
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be positive " + parallelThreshold);
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Set the pool used for batch verifications. Defaults to {@link ForkJoinPool#commonPool()}.
+     *
+     * @param forkJoinPool the pool to run batch verifications in
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        if (forkJoinPool == null) {
+            throw new IllegalArgumentException("Fork join pool can not be null");
+        }
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Updates the copy of the fixed database of valid top-level
+     * domains.
+     * Downloads the official list of valid TLDs from the IANA website,
+     * and performs consistency checking to ensure it was downloaded
+     * correctly. Store the data in the default location.
+     *
+     * @throws TLDVerifyException
+     */
+    public void refreshTldDB() throws TLDVerifyException {
+        refreshTldDB(TLD_CACHE_FILE);
+    }
+
+    /**
+     * Updates the copy of the fixed database of valid top-level
+     * domains.
+     * Downloads the official list of valid TLDs from the IANA website,
+     * and performs consistency checking to ensure it was downloaded
+     * correctly. The parameter is the filename to store the cache in.
+     * <p/>
+     * Once a list has been loaded, the download is conditional: nothing is parsed when the
+     * server reports the list as not modified, or when the version in its header is not
+     * newer than the current cache.
+     * <p/>
+     * The list is parsed and its digest computed while it is downloaded, nothing is written
+     * to disk before the digest is checked. The cache file is then replaced atomically.
+     * <p/>
+     * If a refresh of the same file is already in progress, this method waits for it and
+     * returns or throws its result instead of downloading the list again. A refresh of another
+     * file is waited for before this one starts.
+     *
+     * @param cacheStoreFileName The full path to the file to store the cache in.
+     * @throws TLDVerifyException
+     */
+    public void refreshTldDB(String cacheStoreFileName) throws TLDVerifyException {
+        refresh(cacheStoreFileName, 0);
+    }
+
+    /**
+     * Run a refresh, or join the one in progress, see {@link #refreshTldDB(String)}.
+     *
+     * @param waitMillis how long to wait for a refresh started by another thread, 0 to wait until it ends
+     * @return <code>true</code> if a newer list was installed
+     */
+    private boolean refresh(String cacheStoreFileName, long waitMillis) throws TLDVerifyException {
+        String outputCacheName = cacheStoreFileName != null ? cacheStoreFileName : TLD_CACHE_FILE;
+        while (true) {
+            Refresh current = refresh.get();
+            if (current == null) {
+                Refresh mine = new Refresh(outputCacheName);
+                if (refresh.compareAndSet(null, mine)) {
+                    return run(mine);
+                }
+            } else if (current.cacheStoreFileName.equals(outputCacheName)) {
+                return current.await(waitMillis);
+            } else {
+                try {
+                    current.await(waitMillis);
+                } catch (TLDVerifyException e) {
+                    if (!current.result.isDone()) {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean run(Refresh mine) throws TLDVerifyException {
+        TldVerifyMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        try {
+            boolean updated = download(mine.cacheStoreFileName);
+            metrics.refreshed(System.nanoTime() - start, updated);
+            mine.result.complete(updated);
+            return updated;
+        } catch (TLDVerifyException e) {
+            metrics.refreshFailed(System.nanoTime() - start, e);
+            mine.result.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.refreshFailed(System.nanoTime() - start, e);
+            mine.result.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            refresh.compareAndSet(mine, null);
+        }
+    }
+
+    /**
+     * Set how long a cold offline verification waits for the TLD list another thread is
+     * downloading, when the bundled TLD list is disabled. A verification that waits longer
+     * fails with a {@link TLDVerifyException}; the download itself goes on.
+     *
+     * @param timeout the time to wait, must be positive
+     * @param unit    the unit of the timeout
+     */
+    public void setRefreshWaitTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Refresh wait timeout must be positive: " + timeout);
+        }
+        this.refreshWaitMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Refresh the TLD list in the background once it is older than the given age
+     * (stale-while-revalidate). An offline verification that finds the list stale starts a
+     * refresh of the default cache file on a background thread, unless one is in progress,
+     * and answers from the list it has. The age counts from the start of the last
+     * revalidation, or from the first verification, so a bundled list is revalidated on first use.
+     *
+     * @param maxAge the age after which the list is refreshed, 0 to never refresh in the background
+     * @param unit   the unit of the age
+     */
+    public void setStaleAfter(long maxAge, TimeUnit unit) {
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("Max age must not be negative: " + maxAge);
+        }
+        this.staleAfterMillis = unit.toMillis(maxAge);
+    }
+
+    /**
+     * @return <code>true</code> while a download of the TLD list is in progress
+     */
+    public boolean isRefreshing() {
+        return refresh.get() != null;
+    }
+
+    /**
+     * Download the list unless it is unchanged, see {@link #refreshTldDB(String)}.
+     *
+     * @return <code>true</code> if a newer list was installed
+     */
+    private boolean download(String cacheStoreFileName) throws TLDVerifyException {
+        String outputCacheName = TLD_CACHE_FILE;
+        if (cacheStoreFileName != null) {
+            outputCacheName = cacheStoreFileName;
+        }
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(tldListUrl, cache.get() != null);
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                logger.debug("TLD list at " + tldListUrl + " not modified");
+                writeTldsIfMissing(outputCacheName);
+                return false;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new TLDVerifyException("Could not download TLD data from " + tldListUrl + ", HTTP status " + status);
+            }
+
+            InputStream input = new BufferedInputStream(connection.getInputStream());
+            if (!isNewer(peekVersion(input))) {
+                logger.debug("TLD list at " + tldListUrl + " is not newer than the cache");
+                rememberValidators(connection);
+                writeTldsIfMissing(outputCacheName);
+                return false;
+            }
+
+            MessageDigest messageDigest = newMessageDigest();
+            TldCache downloaded = readTlds(new BufferedReader(new InputStreamReader(
+                    new DigestInputStream(input, messageDigest), "US-ASCII")));
+            String digest = getDigestInfo(digestUrl);
+            if (!digest.equalsIgnoreCase(String.valueOf(Hex.encodeHex(messageDigest.digest())))) {
+                throw new TLDVerifyException("Could not download TLD data from IANA web site");
+            }
+
+            boolean updated = install(downloaded);
+            writeTlds(outputCacheName);
+            rememberValidators(connection);
+            return updated;
+        } catch (IOException e) {
+            throw new TLDVerifyException(e.getMessage(), e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+    }
+
+    /**
+     * Keep a binary snapshot next to the cache file. When enabled, {@link #refreshTldDB(String)}
+     * also writes <code>&lt;cache file&gt;.snapshot</code>, a prebuilt lookup table that is memory
+     * mapped instead of parsed whenever the cache file is loaded and the snapshot is not older
+     * than it. A cold {@link #verifyTldOffline(String)} then loads the snapshot of the default
+     * cache file, if there is one, instead of downloading the list.
+     *
+     * @param binarySnapshot <code>true</code> to write and use binary snapshots
+     */
+    public void setBinarySnapshot(boolean binarySnapshot) {
+        this.binarySnapshot = binarySnapshot;
+    }
+
+    /**
+     * Use the TLD list packaged in the jar as the baseline database. When enabled, which is the
+     * default, the first offline verification loads the default cache file if there is one,
+     * and the bundled list unless the file is newer, so it never waits on a download.
+     * {@link #refreshTldDB(String)} or a {@link TldRefreshScheduler} then replace the bundled
+     * list with newer versions. When disabled, the first offline verification downloads the list.
+     *
+     * @param bundledTldList <code>true</code> to start from the bundled TLD list
+     */
+    public void setBundledTldList(boolean bundledTldList) {
+        this.bundledTldList = bundledTldList;
+    }
+
+    /**
+     * Load the fixed database from a file. The current cache is kept if it
+     * is the same or a newer version.
+     *
+     * @param cacheFilePath The full path to where the cache is stored.
+     * @throws TLDVerifyException
+     */
+    void loadTldDB(String cacheFilePath) throws TLDVerifyException {
+        install(readCache(new File(cacheFilePath), cache.get(), true));
+    }
+
+    /**
+     * Set the number of cache files whose content {@link #verifyTldOffline(String, String)} keeps
+     * loaded. When more files are used, the least recently used one is read again on its next use.
+     *
+     * @param maxCacheFiles the number of cache files to keep loaded, at least 1
+     */
+    public void setMaxCacheFiles(int maxCacheFiles) {
+        cacheFiles.setMaxFiles(maxCacheFiles);
+    }
+
+    /**
+     * Set how long {@link #verifyTldHybrid(String)} waits for the DNS check of a top-level domain
+     * that is not in the fixed database. A check that takes longer counts as a failure.
+     *
+     * @param timeout the time to wait, must be positive
+     * @param unit    the unit of the timeout
+     */
+    public void setHybridDnsTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Hybrid DNS timeout must be positive " + timeout);
+        }
+        this.hybridDnsTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Set what {@link #verifyTldHybrid(String)} answers when DNS can not confirm a top-level
+     * domain that is not in the fixed database. The default is {@link FallbackPolicy#FAIL_CLOSED}.
+     *
+     * @param fallbackPolicy the answer to give when DNS is unavailable
+     */
+    public void setFallbackPolicy(FallbackPolicy fallbackPolicy) {
+        if (fallbackPolicy == null) {
+            throw new IllegalArgumentException("Fallback policy can not be null");
+        }
+        this.fallbackPolicy = fallbackPolicy;
+    }
+
+    /**
+     * Set when {@link #verifyTldHybrid(String)} stops calling DNS. After <code>failureThreshold</code>
+     * consecutive DNS checks failed or timed out, DNS is not called for <code>openTime</code>,
+     * then a single check is tried to find out whether it is available again.
+     *
+     * @param failureThreshold the number of consecutive failures, at least 1
+     * @param openTime         the time to stop calling DNS for, must be positive
+     * @param unit             the unit of the open time
+     */
+    public void setCircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be positive " + failureThreshold);
+        }
+        if (openTime <= 0) {
+            throw new IllegalArgumentException("Open time must be positive " + openTime);
+        }
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, unit.toNanos(openTime));
+    }
+
+    /**
+     * @return <code>true</code> if {@link #verifyTldHybrid(String)} currently does not call DNS
+     */
+    public boolean isCircuitBreakerOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * @return the top-level domains missing from the fixed database that DNS confirmed, in upper case ASCII
+     */
+    public Set<String> getConfirmedTlds() {
+        return Collections.unmodifiableSet(new TreeSet<String>(confirmedTlds));
+    }
+
+    /**
+     * Notify a listener whenever a newer version of the fixed database is installed, by
+     * {@link #refreshTldDB(String)}, by the refresh scheduler or when a cache file is loaded.
+     * The listener receives the TLDs added and removed, so derived structures can be updated
+     * instead of rebuilt. The first database loaded is reported with all its TLDs added.
+     *
+     * @param listener the listener to notify
+     */
+    public void addTldListListener(TldListListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can not be null");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Stop notifying a listener added with {@link #addTldListListener(TldListListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeTldListListener(TldListListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Report verifications, DNS lookups and refreshes to the given metrics, e.g. a
+     * {@link JmxTldVerifyMetrics}. By default nothing is measured.
+     *
+     * @param metrics the metrics to report to, {@link TldVerifyMetrics#NONE} to stop measuring
+     */
+    public void setMetrics(TldVerifyMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics can not be null, use TldVerifyMetrics.NONE");
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the public suffix list {@link #verifyDomainOffline(String)} uses, e.g. one loaded with
+     * {@link PublicSuffixList#load(File)}. By default the public suffix of a name is its top-level domain.
+     *
+     * @param publicSuffixList the public suffix list, {@link PublicSuffixList#EMPTY} to only use the top-level domain
+     */
+    public void setPublicSuffixList(PublicSuffixList publicSuffixList) {
+        if (publicSuffixList == null) {
+            throw new IllegalArgumentException("Public suffix list can not be null, use PublicSuffixList.EMPTY");
+        }
+        this.publicSuffixList = publicSuffixList;
+    }
+
+    /**
+     * Load the fixed database now if none is loaded yet, the way the first offline verification
+     * would, e.g. before serving verifications. With the bundled TLD list this needs no download.
+     *
+     * @throws TLDVerifyException if no TLD list could be loaded
+     */
+    public void ensureTldListLoaded() throws TLDVerifyException {
+        loadedCache();
+    }
+
+    /**
+     * @return the version of the fixed database in use, -1 if none is loaded yet
+     */
+    public long getTldListVersion() {
+        TldCache current = cache.get();
+        return current == null ? -1 : current.getVersion();
+    }
+
+    /**
+     * @return the time the fixed database in use was loaded, in milliseconds since the epoch, 0 if none is loaded yet
+     */
+    public long getTldListLoadedMillis() {
+        TldCache current = cache.get();
+        return current == null ? 0 : current.getLoadedMillis();
+    }
+
+    /**
+     * @return the number of TLDs in the fixed database in use, 0 if none is loaded yet
+     */
+    public int getTldCount() {
+        TldCache current = cache.get();
+        return current == null ? 0 : current.size();
+    }
+
+    int cacheFileCount() {
+        return cacheFiles.size();
+    }
+
+    /**
+     * Read the cache stored in a file, or in the binary snapshot of the file if snapshots are
+     * enabled and the snapshot is at least as recent as the file.
+     *
+     * @param cacheFile  the cache file
+     * @param current    the cache to keep if the file holds the same version, or <code>null</code>
+     * @param newerOnly  also keep <code>current</code> if the file holds an older version
+     * @return the cache in the file, or <code>current</code>
+     * @throws TLDVerifyException if the file can not be read
+     */
+    private TldCache readCache(File cacheFile, TldCache current, boolean newerOnly) throws TLDVerifyException {
+        if (binarySnapshot) {
+            File snapshotFile = TldSnapshot.snapshotFile(cacheFile);
+            if (snapshotFile.isFile() && snapshotFile.lastModified() >= cacheFile.lastModified()) {
+                try {
+                    long version = TldSnapshot.readVersion(snapshotFile);
+                    if (version >= 0) {
+                        return keep(current, version, newerOnly) ? current : TldSnapshot.read(snapshotFile);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Ignoring TLD snapshot " + snapshotFile + ": " + e.getMessage());
+                }
+            }
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(cacheFile));
+            reader.mark(MAX_HEADER_LENGTH);
+            if (keep(current, parseVersion(reader.readLine()), newerOnly)) {
+                return current;
+            }
+            reader.reset();
+            return readTlds(reader);
+        } catch (TLDVerifyException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TLDVerifyException(e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Parse a TLD list: the header line with the version, followed by one TLD per line.
+     */
+    private static TldCache readTlds(BufferedReader reader) throws IOException, TLDVerifyException {
+        String header = reader.readLine();
+        long version;
+        try {
+            version = parseVersion(header);
+        } catch (RuntimeException e) {
+            throw new TLDVerifyException("Invalid TLD list header " + header, e);
+        }
+        List<String> tlds = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            tlds.add(line.trim());
+        }
+        return new TldCache(version, header, tlds);
+    }
+
+    private static boolean keep(TldCache current, long version, boolean newerOnly) {
+        return current != null && (current.getVersion() == version || newerOnly && current.getVersion() > version);
+    }
+
+    private HedgedResolver resolver() throws IOException {
+        HedgedResolver current = resolver;
+        if (current == null) {
+            synchronized (this) {
+                current = resolver;
+                if (current == null) {
+                    List<InetSocketAddress> servers = dnsServers;
+                    if (servers == null) {
+                        servers = new ArrayList<InetSocketAddress>();
+                        String[] hosts = ResolverConfig.getCurrentConfig().servers();
+                        for (String host : hosts != null ? hosts : new String[]{"localhost"}) {
+                            servers.add(new InetSocketAddress(host, SimpleResolver.DEFAULT_PORT));
+                        }
+                    }
+                    List<SoaResolver> resolvers = new ArrayList<SoaResolver>();
+                    try {
+                        for (InetSocketAddress server : servers) {
+                            resolvers.add(new SoaResolver(server, dnsTimeoutMillis, maxDnsQueriesInFlight));
+                        }
+                    } catch (IOException e) {
+                        for (SoaResolver created : resolvers) {
+                            created.close();
+                        }
+                        throw e;
+                    }
+                    current = new HedgedResolver(resolvers, dnsHedgePercentile, dnsTimeoutMillis);
+                    resolver = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return the resolver sending DNS queries, created if needed
+     */
+    HedgedResolver dnsResolver() throws IOException {
+        return resolver();
+    }
+
+    private synchronized void closeResolver() {
+        if (resolver != null) {
+            resolver.close();
+            resolver = null;
+        }
+    }
+
+    /**
+     * Return the fixed database, loading it first if needed. With the bundled TLD list the
+     * default cache file is loaded if it exists, and the bundled list is used unless the file
+     * is newer, so no download happens. Otherwise the list is downloaded unless a binary
+     * snapshot of the default cache file exists.
+     */
+    private TldCache loadedCache() throws TLDVerifyException {
+        TldCache snapshot = cache.get();
+        if (snapshot != null) {
+            if (staleAfterMillis > 0) {
+                revalidateIfStale();
+            }
+        } else {
+            File cacheFile = new File(TLD_CACHE_FILE);
+            File snapshotFile = TldSnapshot.snapshotFile(cacheFile);
+            if (bundledTldList) {
+                if (cacheFile.isFile() || binarySnapshot && snapshotFile.isFile()) {
+                    try {
+                        loadTldDB(TLD_CACHE_FILE);
+                    } catch (TLDVerifyException e) {
+                        logger.warn("Ignoring unreadable TLD cache file " + cacheFile + ": " + e.getMessage());
+                    }
+                }
+                install(bundledTlds());
+            } else if (binarySnapshot && snapshotFile.isFile()) {
+                loadTldDB(TLD_CACHE_FILE);
+            } else {
+                refresh(TLD_CACHE_FILE, refreshWaitMillis);
+            }
+            snapshot = cache.get();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Start a background refresh of the default cache file if the list is stale and no
+     * refresh is in progress, see {@link #setStaleAfter(long, TimeUnit)}. Only the thread
+     * that moves the revalidation time forward starts it.
+     */
+    private void revalidateIfStale() {
+        long now = System.currentTimeMillis();
+        long revalidated = revalidatedMillis.get();
+        if (now - revalidated < staleAfterMillis || refresh.get() != null
+                || !revalidatedMillis.compareAndSet(revalidated, now)) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    refresh(TLD_CACHE_FILE, 0);
+                } catch (TLDVerifyException e) {
+                    logger.warn("Could not revalidate the TLD list: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    logger.warn("Could not revalidate the TLD list", e);
+                }
+            }
+        }, "tld-revalidate");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the TLD list packaged in the jar, read once and shared by all instances
+     */
+    static TldCache bundledTlds() throws TLDVerifyException {
+        TldCache bundled = bundledTlds;
+        if (bundled == null) {
+            synchronized (TldVerify.class) {
+                bundled = bundledTlds;
+                if (bundled == null) {
+                    InputStream in = TldVerify.class.getResourceAsStream(BUNDLED_TLD_LIST);
+                    if (in == null) {
+                        throw new TLDVerifyException("Bundled TLD list " + BUNDLED_TLD_LIST + " not found");
+                    }
+                    try {
+                        bundled = readTlds(new BufferedReader(new InputStreamReader(in, "US-ASCII")));
+                    } catch (IOException e) {
+                        throw new TLDVerifyException(e);
+                    } finally {
+                        IOUtils.closeQuietly(in);
+                    }
+                    bundledTlds = bundled;
+                }
+            }
+        }
+        return bundled;
+    }
+
+    private void verifyTldOffline(CharSequence[] names, boolean[] results, long[] words) throws TLDVerifyException {
+        TldCache snapshot = loadedCache();
+        int threshold = parallelThreshold;
+        BulkVerifyTask task = new BulkVerifyTask(snapshot, names, 0, names.length, threshold, results, words);
+        if (names.length < threshold) {
+            task.verify();
+        } else {
+            forkJoinPool.invoke(task);
+        }
+    }
+
+    private static CharSequence[] toArray(Iterable<? extends CharSequence> domainNames) {
+        if (domainNames instanceof Collection) {
+            return ((Collection<? extends CharSequence>) domainNames).toArray(new CharSequence[0]);
+        }
+        List<CharSequence> names = new ArrayList<CharSequence>();
+        for (CharSequence name : domainNames) {
+            names.add(name);
+        }
+        return names.toArray(new CharSequence[names.size()]);
+    }
+
+    private static boolean isBlank(CharSequence s) {
+        if (s == null) {
+            return true;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fallback(String tld, String reason) {
+        boolean valid = fallbackPolicy == FallbackPolicy.FAIL_OPEN;
+        logger.debug("DNS verification of " + tld + " unavailable (" + reason + "), answering " + valid);
+        metrics.fallbackCheck(valid, reason);
+        return valid;
+    }
+
+    private boolean counted(boolean valid) {
+        metrics.offlineChecks(valid ? 1 : 0, valid ? 0 : 1);
+        return valid;
+    }
+
+    private int rootZoneFlags(String domainName) throws TLDVerifyException {
+        RootZoneFile zoneFile = rootZoneFile;
+        if (zoneFile == null) {
+            throw new TLDVerifyException("No root zone file set");
+        }
+        RootZone zone = zoneFile.get();
+        long bounds = DOMAIN_NAME_UTIL.getTopLevelDomainBounds(domainName);
+        int start = DomainNameUtil.topLevelDomainStart(bounds);
+        int end = DomainNameUtil.topLevelDomainEnd(bounds);
+        if (!IdnLabels.isAscii(domainName, start, end)) {
+            String tld = IDN_LABELS.toAscii(domainName, start, end);
+            return zone.flags(tld, 0, tld.length());
+        }
+        return zone.flags(domainName, start, end);
+    }
+
+    private static boolean exist(TldCache cache, CharSequence domainName) {
+        long bounds = DOMAIN_NAME_UTIL.getTopLevelDomainBounds(domainName);
+        int start = DomainNameUtil.topLevelDomainStart(bounds);
+        int end = DomainNameUtil.topLevelDomainEnd(bounds);
+        if (!IdnLabels.isAscii(domainName, start, end)) {
+            return cache.exist(IDN_LABELS.toAscii(domainName, start, end));
+        }
+        return cache.exist(domainName, start, end);
+    }
+
+    /**
+     * Verifies a range of a batch against one cache snapshot, splitting it in halves
+     * until it is no larger than the threshold. Splits are aligned to 64 names so
+     * that every task owns whole words of the result bit set.
+     */
+    private static class BulkVerifyTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TldCache cache;
+        private final CharSequence[] names;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final boolean[] results;
+        private final long[] words;
+
+        BulkVerifyTask(TldCache cache, CharSequence[] names, int from, int to, int threshold,
+                       boolean[] results, long[] words) {
+            this.cache = cache;
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.threshold = Math.max(threshold, 64);
+            this.results = results;
+            this.words = words;
+        }
+
+        protected void compute() {
+            if (to - from <= threshold) {
+                verify();
+                return;
+            }
+            int middle = Math.max((from + (to - from) / 2) & ~63, from + 64);
+            invokeAll(new BulkVerifyTask(cache, names, from, middle, threshold, results, words),
+                    new BulkVerifyTask(cache, names, middle, to, threshold, results, words));
+        }
+
+        void verify() {
+            for (int i = from; i < to; i++) {
+                CharSequence name = names[i];
+                if (isBlank(name) || !exist(cache, name)) {
+                    continue;
+                }
+                if (results != null) {
+                    results[i] = true;
+                }
+                if (words != null) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+    }
+
+    private HttpURLConnection openConnection(URL url, boolean conditional) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (conditional) {
+            String since = lastModified;
+            String tag = etag;
+            if (since != null) {
+                connection.setRequestProperty("If-Modified-Since", since);
+            }
+            if (tag != null) {
+                connection.setRequestProperty("If-None-Match", tag);
+            }
+        }
+        return connection;
+    }
+
+    private void rememberValidators(HttpURLConnection connection) {
+        lastModified = connection.getHeaderField("Last-Modified");
+        etag = connection.getHeaderField("ETag");
+    }
+
+    /**
+     * Read the version from the header line of a TLD list and rewind the stream
+     * so the whole list can still be read.
+     */
+    private long peekVersion(InputStream input) throws IOException, TLDVerifyException {
+        input.mark(MAX_HEADER_LENGTH);
+        byte[] header = new byte[MAX_HEADER_LENGTH];
+        int length = 0;
+        int b;
+        while (length < header.length && (b = input.read()) != -1 && b != '\n') {
+            header[length++] = (byte) b;
+        }
+        input.reset();
+        try {
+            return parseVersion(new String(header, 0, length, "US-ASCII"));
+        } catch (RuntimeException e) {
+            throw new TLDVerifyException("Invalid TLD list header from " + tldListUrl, e);
+        }
+    }
+
+    private String getDigestInfo(URL url) throws IOException, TLDVerifyException {
+        HttpURLConnection connection = openConnection(url, false);
+        try {
+            BufferedReader buff = new BufferedReader(new InputStreamReader(connection.getInputStream(), "US-ASCII"));
+            String header = buff.readLine();
+            int length = 2 * newMessageDigest().getDigestLength();
+            if (header == null || header.trim().length() < length) {
+                throw new TLDVerifyException("Invalid " + digestAlgorithm + " digest from " + url);
+            }
+            return header.trim().substring(0, length);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown digest algorithm " + digestAlgorithm, e);
+        }
+    }
+
+
+    private boolean isNewer(long version) {
+        TldCache current = cache.get();
+        return current == null || current.getVersion() < version;
+    }
+
+    /**
+     * Publish a fully built cache unless a cache of the same or a newer version
+     * has been published in the meantime.
+     *
+     * @param newCache the cache to publish
+     * @return <code>true</code> if the cache was published
+     */
+    private boolean install(TldCache newCache) {
+        while (true) {
+            TldCache current = cache.get();
+            if (current != null && current.getVersion() >= newCache.getVersion()) {
+                return false;
+            }
+            if (cache.compareAndSet(current, newCache)) {
+                confirmedTlds.clear();
+                notifyListeners(newCache);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Report an installed cache to the listeners. Concurrent installs may get here in any
+     * order, so changes are delivered one at a time and always from the last version
+     * delivered: a cache older than that was replaced before it could be reported and is
+     * skipped, its changes are part of the newer one's.
+     */
+    private void notifyListeners(TldCache newCache) {
+        synchronized (notifyLock) {
+            TldCache oldCache = notifiedCache;
+            if (oldCache != null && oldCache.getVersion() >= newCache.getVersion()) {
+                return;
+            }
+            notifiedCache = newCache;
+            if (listeners.isEmpty()) {
+                return;
+            }
+            TldListChange change = oldCache == null
+                    ? TldListChange.diff(-1, Collections.<String>emptyList(), newCache.getVersion(), newCache.tlds())
+                    : TldListChange.diff(oldCache.getVersion(), oldCache.tlds(), newCache.getVersion(), newCache.tlds());
+            for (TldListListener listener : listeners) {
+                try {
+                    listener.tldListChanged(change);
+                } catch (RuntimeException e) {
+                    logger.error("TLD list listener failed on " + change, e);
+                }
+            }
+        }
+    }
+
+    private static long parseVersion(String line) {
+        return new VersionParser().parse(line);
+    }
+
+    private void writeTldsIfMissing(String filePath) throws TLDVerifyException {
+        File file = new File(filePath);
+        if (cache.get() != null && (!file.exists() || binarySnapshot && !TldSnapshot.snapshotFile(file).exists())) {
+            writeTlds(filePath);
+        }
+    }
+
+    private static URL toURL(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Malformed URL " + url, e);
+        }
+    }
+
+    /**
+     * Write the current cache to a file. The file is replaced atomically, so readers of the
+     * file never see a partially written cache.
+     */
+    private void writeTlds(String filePath) throws TLDVerifyException {
+        TldCache snapshot = cache.get();
+        try {
+            StringWriter writer = new StringWriter();
+            snapshot.print(writer);
+            AtomicFile.write(new File(filePath), ByteBuffer.wrap(writer.toString().getBytes("US-ASCII")));
+            if (binarySnapshot) {
+                TldSnapshot.write(snapshot, TldSnapshot.snapshotFile(new File(filePath)));
+            }
+        } catch (IOException e) {
+            throw new TLDVerifyException(e);
+        }
+    }
+
+    /**
+     * A refresh in progress, which threads refreshing the same file wait for.
+     */
+    private static final class Refresh {
+        final String cacheStoreFileName;
+        final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+        Refresh(String cacheStoreFileName) {
+            this.cacheStoreFileName = cacheStoreFileName;
+        }
+
+        boolean await(long waitMillis) throws TLDVerifyException {
+            try {
+                return waitMillis > 0 ? result.get(waitMillis, TimeUnit.MILLISECONDS) : result.get();
+            } catch (TimeoutException e) {
+                throw new TLDVerifyException("Timed out after " + waitMillis + " ms waiting for the TLD list download in progress");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TLDVerifyException("Interrupted waiting for the TLD list download in progress", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new TLDVerifyException(cause.getMessage(), cause);
+            }
+        }
+    }
 }
@@ -0,0 +1,130 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+/**
+ * Receives measurements from a {@link TldVerify}, see {@link TldVerify#setMetrics(TldVerifyMetrics)}.
+ * <p/>
+ * Methods are called on the thread doing the work, often on hot paths, so implementations
+ * must be thread safe and must not block. {@link JmxTldVerifyMetrics} publishes the
+ * measurements as a JMX MBean. By default measurements go to {@link #NONE}.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public interface TldVerifyMetrics {
+
+    /**
+     * Ignores all measurements
+     */
+    TldVerifyMetrics NONE = new TldVerifyMetrics() {
+        public void offlineChecks(int valid, int invalid) {
+        }
+
+        public void onlineCheck(boolean valid, boolean cached) {
+        }
+
+        public void onlineCheckFailed(Throwable error) {
+        }
+
+        public void fallbackCheck(boolean valid, String reason) {
+        }
+
+        public void rootZoneCheck(boolean valid) {
+        }
+
+        public void dnsLookup(long nanos, boolean succeeded) {
+        }
+
+        public void refreshed(long nanos, boolean updated) {
+        }
+
+        public void refreshFailed(long nanos, Throwable error) {
+        }
+    };
+
+    /**
+     * Domain names were verified against the fixed database. Called once per call, with the
+     * totals of a batch for the batch methods.
+     *
+     * @param valid   the number of domain names whose top level domain exists
+     * @param invalid the number of domain names whose top level domain does not exist
+     */
+    void offlineChecks(int valid, int invalid);
+
+    /**
+     * A domain name was verified using the DNS protocol.
+     *
+     * @param valid  <code>true</code> if the top level domain exists
+     * @param cached <code>true</code> if the result came from the DNS result cache
+     */
+    void onlineCheck(boolean valid, boolean cached);
+
+    /**
+     * A verification using the DNS protocol failed, e.g. timed out.
+     *
+     * @param error the reason
+     */
+    void onlineCheckFailed(Throwable error);
+
+    /**
+     * A hybrid verification could not ask the DNS, e.g. the circuit breaker was open or the
+     * query timed out, and answered with the fallback policy instead.
+     *
+     * @param valid  the answer of the fallback policy
+     * @param reason why the DNS was not asked
+     */
+    void fallbackCheck(boolean valid, String reason);
+
+    /**
+     * A domain name was verified against the root zone file.
+     *
+     * @param valid <code>true</code> if the root zone delegates the top level domain
+     */
+    void rootZoneCheck(boolean valid);
+
+    /**
+     * A DNS query completed or failed.
+     *
+     * @param nanos     the time from sending the query to its completion
+     * @param succeeded <code>false</code> if the query failed or timed out
+     */
+    void dnsLookup(long nanos, boolean succeeded);
+
+    /**
+     * A refresh of the fixed database completed.
+     *
+     * @param nanos   the time the refresh took
+     * @param updated <code>true</code> if a newer list was installed, <code>false</code> if the list had not changed
+     */
+    void refreshed(long nanos, boolean updated);
+
+    /**
+     * A refresh of the fixed database failed.
+     *
+     * @param nanos the time until the refresh failed
+     * @param error the reason
+     */
+    void refreshFailed(long nanos, Throwable error);
+}
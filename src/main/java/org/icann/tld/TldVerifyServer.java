@@ -0,0 +1,591 @@
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+package org.icann.tld;
+
+import com.sun.net.httpserver.*;
+import org.apache.commons.io.*;
+import org.apache.commons.io.input.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Serves offline verifications of one shared {@link TldVerify} to other processes, so that
+ * services written in any language can share a single cache and refresh schedule.
+ * <p/>
+ * The line protocol listens on a TCP port. Every line sent is a domain name and is answered
+ * by a line <code>true</code> or <code>false</code>, in order, so clients can pipeline as many
+ * names as they like without waiting for answers. Lines starting with <code>#</code> are
+ * commands: <code>#VERSION</code> answers the version of the TLD list, <code>#HEALTH</code>
+ * answers <code>UP</code> or <code>DOWN</code> and <code>#QUIT</code> closes the connection.
+ * Errors are answered by a line starting with <code>ERROR</code>. Connections are served by a
+ * few selector threads that read the names in place, see {@link TldVerify#verifyTldOffline(byte[], int, int)}.
+ * <p/>
+ * The HTTP endpoint answers JSON:
+ * <pre>
+ * GET  /verify?domain=icann.org&amp;domain=example.sss
+ * POST /verify                     newline separated domain names in the body
+ * GET  /health
+ * GET  /version
+ * </pre>
+ * A request with a body over {@link #MAX_BODY_LENGTH} bytes or more than {@link #MAX_DOMAIN_NAMES}
+ * names is refused with HTTP status 413.
+ * The server reports <code>DOWN</code>, with HTTP status 503, until a TLD list is loaded.
+ * A {@link TldRefreshScheduler} given to {@link #setRefreshScheduler(TldRefreshScheduler)}
+ * is started and stopped with the server.
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class TldVerifyServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TldVerifyServer.class);
+
+    /**
+     * Default port of the line protocol
+     */
+    public static final int DEFAULT_LINE_PORT = 4343;
+
+    /**
+     * Default port of the HTTP endpoint
+     */
+    public static final int DEFAULT_HTTP_PORT = 8080;
+
+    /**
+     * Default number of threads serving line protocol connections
+     */
+    public static final int DEFAULT_SELECTOR_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * Default number of threads serving HTTP requests
+     */
+    public static final int DEFAULT_HTTP_THREADS = 4;
+
+    /**
+     * Longest line accepted by the line protocol, in bytes
+     */
+    public static final int MAX_LINE_LENGTH = 1024;
+
+    /**
+     * Largest body accepted by <code>POST /verify</code>, in bytes
+     */
+    public static final int MAX_BODY_LENGTH = 1024 * 1024;
+
+    /**
+     * Largest number of domain names verified by one HTTP request
+     */
+    public static final int MAX_DOMAIN_NAMES = 10000;
+
+    private static final int MAX_RESPONSE_LENGTH = 64;
+    private static final byte[] TRUE = bytes("true\n");
+    private static final byte[] FALSE = bytes("false\n");
+
+    private final TldVerify verify;
+    private final LongAdder requests = new LongAdder();
+    private volatile TldRefreshScheduler refreshScheduler;
+    private int selectorThreads = DEFAULT_SELECTOR_THREADS;
+    private int httpThreads = DEFAULT_HTTP_THREADS;
+
+    private volatile boolean running;
+    private ServerSocketChannel lineChannel;
+    private Thread acceptor;
+    private Worker[] workers;
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+
+    /**
+     * @param verify the instance answering all verifications
+     */
+    public TldVerifyServer(TldVerify verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * @param refreshScheduler a scheduler refreshing the TLD list, started and stopped with the server
+     */
+    public void setRefreshScheduler(TldRefreshScheduler refreshScheduler) {
+        this.refreshScheduler = refreshScheduler;
+    }
+
+    /**
+     * @param selectorThreads the number of threads serving line protocol connections, set before {@link #start}
+     */
+    public void setSelectorThreads(int selectorThreads) {
+        if (selectorThreads < 1) {
+            throw new IllegalArgumentException("Selector threads must be positive " + selectorThreads);
+        }
+        this.selectorThreads = selectorThreads;
+    }
+
+    /**
+     * @param httpThreads the number of threads serving HTTP requests, set before {@link #start}
+     */
+    public void setHttpThreads(int httpThreads) {
+        if (httpThreads < 1) {
+            throw new IllegalArgumentException("HTTP threads must be positive " + httpThreads);
+        }
+        this.httpThreads = httpThreads;
+    }
+
+    /**
+     * Start listening. Use port 0 to listen on any free port, see {@link #getLineAddress()}
+     * and {@link #getHttpAddress()}. The TLD list is loaded first if none is loaded yet, see
+     * {@link TldVerify#ensureTldListLoaded()}; if that fails the server is down until the
+     * refresh scheduler loads one.
+     *
+     * @param lineAddress the address of the line protocol, <code>null</code> to not serve it
+     * @param httpAddress the address of the HTTP endpoint, <code>null</code> to not serve it
+     * @throws IOException if an address can not be bound
+     */
+    public synchronized void start(InetSocketAddress lineAddress, InetSocketAddress httpAddress) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server already started");
+        }
+        running = true;
+        try {
+            verify.ensureTldListLoaded();
+        } catch (TLDVerifyException e) {
+            logger.warn("Starting without a TLD list: " + e.getMessage());
+        }
+        try {
+            if (lineAddress != null) {
+                startLineProtocol(lineAddress);
+            }
+            if (httpAddress != null) {
+                startHttp(httpAddress);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        TldRefreshScheduler scheduler = refreshScheduler;
+        if (scheduler != null) {
+            scheduler.start();
+        }
+    }
+
+    /**
+     * @return the address the line protocol listens on, <code>null</code> if it is not served
+     */
+    public synchronized InetSocketAddress getLineAddress() {
+        return lineChannel == null ? null : (InetSocketAddress) lineChannel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * @return the address the HTTP endpoint listens on, <code>null</code> if it is not served
+     */
+    public synchronized InetSocketAddress getHttpAddress() {
+        return httpServer == null ? null : httpServer.getAddress();
+    }
+
+    /**
+     * @return the number of domain names and commands answered since the server started
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return <code>true</code> if a TLD list is loaded and verifications can be answered
+     */
+    public boolean isUp() {
+        return verify.getTldListVersion() >= 0;
+    }
+
+    /**
+     * Stop listening, close all connections and stop the refresh scheduler.
+     */
+    public synchronized void close() {
+        running = false;
+        TldRefreshScheduler scheduler = refreshScheduler;
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        if (lineChannel != null) {
+            IOUtils.closeQuietly(lineChannel);
+            lineChannel = null;
+        }
+        if (workers != null) {
+            for (Worker worker : workers) {
+                worker.selector.wakeup();
+            }
+            workers = null;
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpExecutor.shutdownNow();
+            httpServer = null;
+        }
+    }
+
+    private void startLineProtocol(InetSocketAddress address) throws IOException {
+        lineChannel = ServerSocketChannel.open();
+        lineChannel.socket().setReuseAddress(true);
+        lineChannel.socket().bind(address, 1024);
+        final Worker[] workers = new Worker[selectorThreads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(Selector.open());
+            daemon(workers[i], "tld-verify-selector-" + i).start();
+        }
+        this.workers = workers;
+        final ServerSocketChannel channel = lineChannel;
+        acceptor = daemon(new Runnable() {
+            public void run() {
+                accept(channel, workers);
+            }
+        }, "tld-verify-accept");
+        acceptor.start();
+    }
+
+    private void accept(ServerSocketChannel channel, Worker[] workers) {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel client = channel.accept();
+                client.configureBlocking(false);
+                client.socket().setTcpNoDelay(true);
+                workers[next].add(client);
+                next = (next + 1) % workers.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.warn("Accepting a connection failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void startHttp(InetSocketAddress address) throws IOException {
+        httpServer = HttpServer.create(address, 1024);
+        httpExecutor = Executors.newFixedThreadPool(httpThreads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                return daemon(r, "tld-verify-http-" + count.getAndIncrement());
+            }
+        });
+        httpServer.setExecutor(httpExecutor);
+        httpServer.createContext("/verify", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handleVerify(exchange);
+            }
+        });
+        httpServer.createContext("/health", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handleHealth(exchange);
+            }
+        });
+        httpServer.createContext("/version", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.increment();
+                respond(exchange, 200, "{\"version\":" + verify.getTldListVersion() + "}");
+            }
+        });
+        httpServer.start();
+    }
+
+    private void handleVerify(HttpExchange exchange) throws IOException {
+        List<String> domainNames = new ArrayList<String>();
+        if ("GET".equals(exchange.getRequestMethod())) {
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    if (parameter.startsWith("domain=")) {
+                        domainNames.add(URLDecoder.decode(parameter.substring(7), "UTF-8"));
+                    }
+                }
+            }
+        } else if ("POST".equals(exchange.getRequestMethod())) {
+            CountingInputStream body = new CountingInputStream(new BoundedInputStream(exchange.getRequestBody(), MAX_BODY_LENGTH + 1));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null && domainNames.size() <= MAX_DOMAIN_NAMES) {
+                if (line.trim().length() > 0) {
+                    domainNames.add(line.trim());
+                }
+            }
+            if (body.getByteCount() > MAX_BODY_LENGTH) {
+                respond(exchange, 413, "{\"error\":\"Request body over " + MAX_BODY_LENGTH + " bytes\"}");
+                return;
+            }
+        } else {
+            respond(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        if (domainNames.size() > MAX_DOMAIN_NAMES) {
+            respond(exchange, 413, "{\"error\":\"More than " + MAX_DOMAIN_NAMES + " domain names\"}");
+            return;
+        }
+        if (!isUp()) {
+            respond(exchange, 503, "{\"error\":\"No TLD list loaded\"}");
+            return;
+        }
+        requests.add(domainNames.size());
+        boolean[] results;
+        try {
+            results = verify.verifyTldOffline(domainNames.toArray(new CharSequence[domainNames.size()]));
+        } catch (TLDVerifyException e) {
+            respond(exchange, 503, "{\"error\":" + quote(e.getMessage()) + "}");
+            return;
+        }
+        StringBuilder json = new StringBuilder(32 + 40 * results.length);
+        json.append("{\"version\":").append(verify.getTldListVersion()).append(",\"results\":[");
+        for (int i = 0; i < results.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"domain\":").append(quote(domainNames.get(i))).append(",\"valid\":").append(results[i]).append('}');
+        }
+        respond(exchange, 200, json.append("]}").toString());
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        requests.increment();
+        boolean up = isUp();
+        TldRefreshScheduler scheduler = refreshScheduler;
+        StringBuilder json = new StringBuilder();
+        json.append("{\"status\":\"").append(up ? "UP" : "DOWN").append('"');
+        json.append(",\"version\":").append(verify.getTldListVersion());
+        json.append(",\"tlds\":").append(verify.getTldCount());
+        json.append(",\"loadedMillis\":").append(verify.getTldListLoadedMillis());
+        if (scheduler != null) {
+            json.append(",\"refreshFailures\":").append(scheduler.getConsecutiveFailures());
+        }
+        respond(exchange, up ? 200 : 503, json.append('}').toString());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+
+    static String quote(String s) {
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static byte[] bytes(String s) {
+        try {
+            return s.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Serves the line protocol connections assigned to it on one selector.
+     */
+    private final class Worker implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+
+        Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        void add(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = accepted.poll()) != null) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            connection.serve(key);
+                        } catch (IOException e) {
+                            connection.close(key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Line protocol selector failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    IOUtils.closeQuietly(key.channel());
+                }
+                SocketChannel channel;
+                while ((channel = accepted.poll()) != null) {
+                    IOUtils.closeQuietly(channel);
+                }
+                IOUtils.closeQuietly(selector);
+            }
+        }
+    }
+
+    /**
+     * The buffers of one line protocol connection. Names are answered straight from the
+     * input buffer, and answering stops while the output buffer is full, so a client that
+     * does not read its answers stops being read.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE_LENGTH + 1);
+        private final ByteBuffer out = ByteBuffer.allocate(16 * 1024);
+        private boolean closing;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void serve(SelectionKey key) throws IOException {
+            if (key.isReadable() && !closing && channel.read(in) < 0) {
+                close(key);
+                return;
+            }
+            while (true) {
+                in.flip();
+                boolean answered = answer();
+                in.compact();
+                if (answered && !closing && in.position() == in.capacity()) {
+                    out.put(bytes("ERROR line too long\n"));
+                    in.clear();
+                    closing = true;
+                }
+                out.flip();
+                channel.write(out);
+                boolean flushed = !out.hasRemaining();
+                out.compact();
+                if (!flushed) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (closing) {
+                    close(key);
+                    return;
+                }
+                if (answered) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return <code>true</code> if every complete line was answered, <code>false</code> if the output buffer is full
+         */
+        private boolean answer() {
+            byte[] bytes = in.array();
+            int start = in.position();
+            for (int i = start; i < in.limit() && !closing; i++) {
+                if (bytes[i] == '\n') {
+                    if (out.remaining() < MAX_RESPONSE_LENGTH) {
+                        in.position(start);
+                        return false;
+                    }
+                    answer(bytes, start, i);
+                    start = i + 1;
+                }
+            }
+            in.position(start);
+            return true;
+        }
+
+        private void answer(byte[] bytes, int start, int end) {
+            requests.increment();
+            while (start < end && (bytes[start] & 0xFF) <= ' ') {
+                start++;
+            }
+            while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                out.put(bytes("ERROR empty domain name\n"));
+            } else if (bytes[start] == '#') {
+                command(new String(bytes, start, end - start).toUpperCase(Locale.ENGLISH));
+            } else if (!isUp()) {
+                out.put(bytes("ERROR no TLD list loaded\n"));
+            } else {
+                try {
+                    boolean valid = IdnLabels.isAscii(bytes, start, end)
+                            ? verify.verifyTldOffline(bytes, start, end - start)
+                            : verify.verifyTldOffline(new String(bytes, start, end - start, "UTF-8"));
+                    out.put(valid ? TRUE : FALSE);
+                } catch (TLDVerifyException e) {
+                    out.put(bytes("ERROR verification failed\n"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private void command(String command) {
+            if (command.equals("#VERSION")) {
+                out.put(bytes(verify.getTldListVersion() + "\n"));
+            } else if (command.equals("#HEALTH")) {
+                out.put(bytes(isUp() ? "UP\n" : "DOWN\n"));
+            } else if (command.equals("#QUIT")) {
+                closing = true;
+            } else {
+                out.put(bytes("ERROR unknown command\n"));
+            }
+        }
+
+        void close(SelectionKey key) {
+            key.cancel();
+            IOUtils.closeQuietly(channel);
+        }
+    }
+}
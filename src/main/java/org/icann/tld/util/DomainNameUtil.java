@@ -25,6 +25,8 @@ package org.icann.tld.util;
 
 import org.apache.commons.lang.StringUtils;
 
+import java.nio.ByteBuffer;
+
 /**
  * A utility class to manipulate domain names
  *
@@ -45,11 +47,229 @@ public class DomainNameUtil {
             throw new IllegalArgumentException("Domain name can not be null or empty ");
         }
 
-        String[] labels = domainName.split("\\.");
-        if (labels.length > 1) {
-            return labels[labels.length - 1];
+        long bounds = getTopLevelDomainBounds(domainName);
+        return domainName.substring(topLevelDomainStart(bounds), topLevelDomainEnd(bounds));
+    }
+
+    /**
+     * <p>Find the bounds of the top level domain of a given domain name without creating
+     * any objects. A single leading and trailing "." is ignored the same way
+     * {@link #stripLeadingDot(String)} and {@link #stripTrailingDot(String)} do.</p>
+     * <pre>
+     * bounds = DomainNameUtil.getTopLevelDomainBounds("icann.org.")
+     * topLevelDomainStart(bounds) = 6
+     * topLevelDomainEnd(bounds)   = 9
+     * </pre>
+     * Use {@link #topLevelDomainStart(long)} and {@link #topLevelDomainEnd(long)} to read
+     * the result. The bounds are empty when the domain name has no top level domain, e.g. ".".
+     *
+     * @param domainName a fully qualified domain name
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     */
+    public long getTopLevelDomainBounds(CharSequence domainName) {
+        return getTopLevelDomainBounds(domainName, 0, domainName.length());
+    }
+
+    /**
+     * Find the bounds of the top level domain of the domain name stored in
+     * <code>length</code> characters starting at <code>offset</code>.
+     *
+     * @param domainName the characters holding a fully qualified domain name
+     * @param offset     the index of the first character of the domain name
+     * @param length     the number of characters in the domain name
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     * @see #getTopLevelDomainBounds(CharSequence)
+     */
+    public long getTopLevelDomainBounds(CharSequence domainName, int offset, int length) {
+        checkRange(offset, length, domainName.length());
+        return topLevelDomainBounds(domainName, CHAR_SEQUENCE, offset, offset + length);
+    }
+
+    /**
+     * Find the bounds of the top level domain of a given domain name.
+     *
+     * @param domainName the characters of a fully qualified domain name
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     * @see #getTopLevelDomainBounds(CharSequence)
+     */
+    public long getTopLevelDomainBounds(char[] domainName) {
+        return getTopLevelDomainBounds(domainName, 0, domainName.length);
+    }
+
+    /**
+     * Find the bounds of the top level domain of the domain name stored in
+     * <code>length</code> characters starting at <code>offset</code>.
+     *
+     * @param domainName the characters holding a fully qualified domain name
+     * @param offset     the index of the first character of the domain name
+     * @param length     the number of characters in the domain name
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     * @see #getTopLevelDomainBounds(CharSequence)
+     */
+    public long getTopLevelDomainBounds(char[] domainName, int offset, int length) {
+        checkRange(offset, length, domainName.length);
+        return topLevelDomainBounds(domainName, CHAR_ARRAY, offset, offset + length);
+    }
+
+    /**
+     * Find the bounds of the top level domain of the ASCII domain name stored in
+     * <code>length</code> bytes starting at <code>offset</code>.
+     *
+     * @param domainName the bytes holding a fully qualified domain name in ASCII
+     * @param offset     the index of the first byte of the domain name
+     * @param length     the number of bytes in the domain name
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     * @see #getTopLevelDomainBounds(CharSequence)
+     */
+    public long getTopLevelDomainBounds(byte[] domainName, int offset, int length) {
+        checkRange(offset, length, domainName.length);
+        return topLevelDomainBounds(domainName, BYTE_ARRAY, offset, offset + length);
+    }
+
+    /**
+     * Find the bounds of the top level domain of the ASCII domain name stored in the
+     * remaining bytes of a buffer. The bounds are absolute indexes in the buffer and
+     * the buffer position is not changed.
+     *
+     * @param domainName the buffer holding a fully qualified domain name in ASCII
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     * @see #getTopLevelDomainBounds(CharSequence)
+     */
+    public long getTopLevelDomainBounds(ByteBuffer domainName) {
+        return topLevelDomainBounds(domainName, BYTE_BUFFER, domainName.position(), domainName.limit());
+    }
+
+    /**
+     * <p>Find the bounds of the top level domain of a domain name in DNS wire format, a sequence
+     * of labels each preceded by its length and ended by the empty root label, stored in
+     * <code>length</code> bytes starting at <code>offset</code>.</p>
+     * <pre>
+     * bounds = DomainNameUtil.getWireTopLevelDomainBounds({5,'i','c','a','n','n',3,'o','r','g',0}, 0, 11)
+     * topLevelDomainStart(bounds) = 7
+     * topLevelDomainEnd(bounds)   = 10
+     * </pre>
+     * The name ends at the root label or at the end of the range, whichever comes first.
+     * The bounds are empty when the name only has the root label.
+     *
+     * @param domainName the bytes holding a domain name in wire format
+     * @param offset     the index of the length of the first label
+     * @param length     the number of bytes in the domain name
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     * @throws IllegalArgumentException if a label is longer than 63 bytes, is a compression pointer or overruns the range
+     */
+    public long getWireTopLevelDomainBounds(byte[] domainName, int offset, int length) {
+        checkRange(offset, length, domainName.length);
+        return wireTopLevelDomainBounds(domainName, BYTE_ARRAY, offset, offset + length);
+    }
+
+    /**
+     * Find the bounds of the top level domain of a domain name in DNS wire format stored in
+     * the remaining bytes of a buffer. The bounds are absolute indexes in the buffer and
+     * the buffer position is not changed.
+     *
+     * @param domainName the buffer holding a domain name in wire format
+     * @return the start and end index of the top level domain packed in a <code>long</code>
+     * @throws IllegalArgumentException if a label is longer than 63 bytes, is a compression pointer or overruns the buffer
+     * @see #getWireTopLevelDomainBounds(byte[], int, int)
+     */
+    public long getWireTopLevelDomainBounds(ByteBuffer domainName) {
+        return wireTopLevelDomainBounds(domainName, BYTE_BUFFER, domainName.position(), domainName.limit());
+    }
+
+    /**
+     * Reads the character at an index of a domain name, so the same scan serves every
+     * representation of the name. Bytes are read as unsigned ASCII.
+     */
+    private interface CharReader<S> {
+
+        char charAt(S s, int i);
+    }
+
+    private static final CharReader<CharSequence> CHAR_SEQUENCE = new CharReader<CharSequence>() {
+        public char charAt(CharSequence s, int i) {
+            return s.charAt(i);
+        }
+    };
+
+    private static final CharReader<char[]> CHAR_ARRAY = new CharReader<char[]>() {
+        public char charAt(char[] s, int i) {
+            return s[i];
+        }
+    };
+
+    private static final CharReader<byte[]> BYTE_ARRAY = new CharReader<byte[]>() {
+        public char charAt(byte[] s, int i) {
+            return (char) (s[i] & 0xFF);
+        }
+    };
+
+    private static final CharReader<ByteBuffer> BYTE_BUFFER = new CharReader<ByteBuffer>() {
+        public char charAt(ByteBuffer s, int i) {
+            return (char) (s.get(i) & 0xFF);
+        }
+    };
+
+    private static <S> long topLevelDomainBounds(S domainName, CharReader<S> reader, int start, int end) {
+        if (end - start > 1 && reader.charAt(domainName, start) == '.') {
+            start++;
+        }
+        if (end > start && reader.charAt(domainName, end - 1) == '.') {
+            end--;
+        }
+        int labelStart = end;
+        while (labelStart > start && reader.charAt(domainName, labelStart - 1) != '.') {
+            labelStart--;
+        }
+        return bounds(labelStart, end);
+    }
+
+    private static <S> long wireTopLevelDomainBounds(S domainName, CharReader<S> reader, int start, int end) {
+        int labelStart = start;
+        int labelEnd = start;
+        int i = start;
+        while (i < end && reader.charAt(domainName, i) != 0) {
+            int labelLength = wireLabelLength(reader.charAt(domainName, i), i, end);
+            labelStart = i + 1;
+            labelEnd = labelStart + labelLength;
+            i = labelEnd;
+        }
+        return bounds(labelStart, labelEnd);
+    }
+
+    private static int wireLabelLength(char length, int index, int end) {
+        if (length > 63) {
+            throw new IllegalArgumentException("Unsupported label length " + (int) length + " at " + index);
+        }
+        if (index + 1 + length > end) {
+            throw new IllegalArgumentException("Label at " + index + " overruns the name");
+        }
+        return length;
+    }
+
+    /**
+     * @param bounds the result of one of the <code>getTopLevelDomainBounds</code> methods
+     * @return the index of the first character of the top level domain
+     */
+    public static int topLevelDomainStart(long bounds) {
+        return (int) (bounds >>> 32);
+    }
+
+    /**
+     * @param bounds the result of one of the <code>getTopLevelDomainBounds</code> methods
+     * @return the index after the last character of the top level domain
+     */
+    public static int topLevelDomainEnd(long bounds) {
+        return (int) bounds;
+    }
+
+    private static long bounds(int start, int end) {
+        return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    private static void checkRange(int offset, int length, int size) {
+        if (offset < 0 || length < 0 || offset > size - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + size);
         }
-        return labels[0];
     }
 
     /**
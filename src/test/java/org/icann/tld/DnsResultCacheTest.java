@@ -0,0 +1,118 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DnsResultCacheTest {
+
+    @Test
+    public void testGetReturnsCachedResults() throws Exception {
+        DnsResultCache cache = new DnsResultCache(10);
+        cache.put("COM", true, 60);
+        cache.put("SSS", false, 60);
+        cache.put("ORG", true, 0);
+        assertThat(cache.get("COM")).isTrue();
+        assertThat(cache.get("SSS")).isFalse();
+        assertThat(cache.get("ORG")).isNull();
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        DnsResultCache cache = new DnsResultCache(10);
+        cache.put("COM", true, 1);
+        assertThat(cache.get("COM")).isTrue();
+        Thread.sleep(1100);
+        assertThat(cache.get("COM")).isNull();
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        DnsResultCache cache = new DnsResultCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("TLD" + i, true, 60);
+            assertThat(cache.size()).isLessThanOrEqualTo(100);
+        }
+        assertThat(cache.get("TLD999")).isTrue();
+
+        assertThat(cache.get("TLD899")).isNull();
+
+        DnsResultCache disabled = new DnsResultCache(0);
+        disabled.put("COM", true, 60);
+        assertThat(disabled.get("COM")).isNull();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        DnsResultCache cache = new DnsResultCache(100);
+        cache.put("COM", true, 60);
+        for (int i = 0; i < 10000; i++) {
+            cache.put("NX" + i, false, 60);
+            if (i % 50 == 0) {
+                assertThat(cache.get("COM")).isTrue();
+            }
+        }
+        assertThat(cache.get("COM")).isTrue();
+        assertThat(cache.get("NX9999")).isFalse();
+        assertThat(cache.get("NX9800")).isNull();
+        assertThat(cache.size()).isEqualTo(100);
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final DnsResultCache cache = new DnsResultCache(100);
+        cache.put("COM", true, 60);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> workers = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < 8; thread++) {
+                final int offset = thread * 100000;
+                workers.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (int i = 0; i < 20000; i++) {
+                            cache.put("NX" + (offset + i), false, 60);
+                            cache.put("COM", true, 60);
+                            assertThat(cache.get("COM")).isTrue();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.get("COM")).isTrue();
+    }
+}
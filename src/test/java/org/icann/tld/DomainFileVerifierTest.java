@@ -0,0 +1,82 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+
+import org.apache.commons.io.*;
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DomainFileVerifierTest {
+
+    private static final String INPUT = "icann.org\r\nexample.sss\n\n  www.aero.  \nnic.com\nlast.invalid";
+
+    @Test
+    public void testVerifyWritesResults() throws Exception {
+        DomainFileVerifier verifier = new DomainFileVerifier(TldVerifyTest.newOfflineTldVerify("AERO", "COM", "ORG"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DomainFileVerifier.Summary summary = verifier.verify(writeInput(), out);
+        assertThat(out.toString("US-ASCII")).isEqualTo(
+                "icann.org\ttrue\nexample.sss\tfalse\nwww.aero.\ttrue\nnic.com\ttrue\nlast.invalid\tfalse\n");
+        assertThat(summary.getTotal()).isEqualTo(5);
+        assertThat(summary.getValid()).isEqualTo(3);
+        assertThat(summary.getInvalid()).isEqualTo(2);
+        assertThat(summary.getBytes()).isEqualTo(INPUT.length());
+    }
+
+    @Test
+    public void testVerifyInvalidOnlyAcrossChunks() throws Exception {
+        DomainFileVerifier verifier = new DomainFileVerifier(TldVerifyTest.newOfflineTldVerify("AERO", "COM", "ORG"));
+        verifier.setInvalidOnly(true);
+        for (int chunkSize = 1; chunkSize <= INPUT.length(); chunkSize++) {
+            verifier.setChunkSize(chunkSize);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DomainFileVerifier.Summary summary = verifier.verify(writeInput(), out);
+            assertThat(out.toString("US-ASCII")).isEqualTo("example.sss\nlast.invalid\n");
+            assertThat(summary.getTotal()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void testVerifyDecodesUtf8Lines() throws Exception {
+        DomainFileVerifier verifier = new DomainFileVerifier(TldVerifyTest.newOfflineTldVerify("COM", "XN--P1AI"));
+        File file = File.createTempFile("domains", ".txt");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, "example.\u0440\u0444\n\u00e9xample.com\nexample.\u00e9\n", "UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DomainFileVerifier.Summary summary = verifier.verify(file, out);
+        assertThat(out.toString("UTF-8")).isEqualTo(
+                "example.\u0440\u0444\ttrue\n\u00e9xample.com\ttrue\nexample.\u00e9\tfalse\n");
+        assertThat(summary.getValid()).isEqualTo(2);
+    }
+
+    private static File writeInput() throws IOException {
+        File file = File.createTempFile("domains", ".txt");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, INPUT, "US-ASCII");
+        return file;
+    }
+}
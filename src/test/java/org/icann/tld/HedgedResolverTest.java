@@ -0,0 +1,187 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class HedgedResolverTest {
+
+    @Test
+    public void testHedgesSlowServer() throws Exception {
+        StubDnsServer slow = new StubDnsServer("com");
+        StubDnsServer fast = new StubDnsServer("com");
+        slow.setDelayMillis(400);
+        HedgedResolver resolver = newResolver(2000, slow, fast);
+        try {
+            long start = System.nanoTime();
+            assertThat(resolver.query("com").get().exists()).isTrue();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(350);
+            assertThat(slow.getQueries()).isEqualTo(1);
+            assertThat(fast.getQueries()).isEqualTo(1);
+
+            waitForAnswers(resolver, 0, 1);
+            assertThat(resolver.preferred()).isEqualTo(1);
+            for (int i = 0; i < 20; i++) {
+                assertThat(resolver.query("host" + i).get().exists()).isFalse();
+            }
+            assertThat(fast.getQueries()).isEqualTo(21);
+            assertThat(slow.getQueries()).isLessThan(6);
+        } finally {
+            resolver.close();
+            slow.stop();
+            fast.stop();
+        }
+    }
+
+    @Test
+    public void testHedgesEachSlowServerInTurn() throws Exception {
+        StubDnsServer first = new StubDnsServer("com");
+        StubDnsServer second = new StubDnsServer("com");
+        StubDnsServer third = new StubDnsServer("com");
+        first.setDelayMillis(600);
+        second.setDelayMillis(600);
+        HedgedResolver resolver = newResolver(2000, first, second, third);
+        try {
+            long start = System.nanoTime();
+            assertThat(resolver.query("com").get().exists()).isTrue();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(550);
+            assertThat(first.getQueries()).isEqualTo(1);
+            assertThat(second.getQueries()).isEqualTo(1);
+            assertThat(third.getQueries()).isEqualTo(1);
+        } finally {
+            resolver.close();
+            first.stop();
+            second.stop();
+            third.stop();
+        }
+    }
+
+    @Test
+    public void testAvoidsLossyServer() throws Exception {
+        StubDnsServer lossy = new StubDnsServer("com");
+        StubDnsServer good = new StubDnsServer("com");
+        lossy.setDropRate(1);
+        HedgedResolver resolver = newResolver(300, lossy, good);
+        try {
+            assertThat(resolver.query("com").get().exists()).isTrue();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (resolver.stats(0).failures() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(resolver.preferred()).isEqualTo(1);
+            int lost = lossy.getQueries();
+            for (int i = 0; i < 20; i++) {
+                assertThat(resolver.query("com").get().exists()).isTrue();
+            }
+            // a slow answer from the good server may still be hedged to the lossy one
+            assertThat(lossy.getQueries() - lost).isLessThan(5);
+            assertThat(good.getQueries()).isGreaterThanOrEqualTo(21);
+            assertThat(resolver.preferred()).isEqualTo(1);
+        } finally {
+            resolver.close();
+            lossy.stop();
+            good.stop();
+        }
+    }
+
+    @Test
+    public void testFailsWhenAllServersFail() throws Exception {
+        StubDnsServer first = new StubDnsServer("com");
+        StubDnsServer second = new StubDnsServer("com");
+        first.setDropRate(1);
+        second.setDropRate(1);
+        HedgedResolver resolver = newResolver(100, first, second);
+        try {
+            resolver.query("com").get();
+            fail("Expected the query to time out");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(SocketTimeoutException.class);
+            assertThat(first.getQueries()).isEqualTo(1);
+            assertThat(second.getQueries()).isEqualTo(1);
+        } finally {
+            resolver.close();
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    public void testQueriesNextServerWhenOneFails() throws Exception {
+        StubDnsServer first = new StubDnsServer("com");
+        StubDnsServer second = new StubDnsServer("com");
+        List<SoaResolver> resolvers = new ArrayList<SoaResolver>();
+        resolvers.add(new SoaResolver(first.getAddress(), 2000, 64));
+        resolvers.add(new SoaResolver(second.getAddress(), 2000, 64));
+        resolvers.get(0).close();
+        HedgedResolver resolver = new HedgedResolver(resolvers, 0.95, 2000);
+        try {
+            for (int i = 0; i < 50; i++) {
+                assertThat(resolver.query("com").get(1, TimeUnit.SECONDS).exists()).isTrue();
+            }
+            assertThat(first.getQueries()).isEqualTo(0);
+        } finally {
+            resolver.close();
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    public void testTruncatedAnswerRetriedOverTcp() throws Exception {
+        StubDnsServer server = new StubDnsServer("com");
+        server.setTruncate(true);
+        HedgedResolver resolver = newResolver(2000, server);
+        try {
+            assertThat(resolver.query("com").get().exists()).isTrue();
+            assertThat(resolver.query("sss").get().exists()).isFalse();
+            assertThat(server.getQueries()).isEqualTo(2);
+            assertThat(server.getTcpQueries()).isEqualTo(2);
+        } finally {
+            resolver.close();
+            server.stop();
+        }
+    }
+
+    private static HedgedResolver newResolver(long timeoutMillis, StubDnsServer... servers) throws Exception {
+        List<SoaResolver> resolvers = new ArrayList<SoaResolver>();
+        for (StubDnsServer server : servers) {
+            resolvers.add(new SoaResolver(server.getAddress(), timeoutMillis, 64));
+        }
+        return new HedgedResolver(resolvers, 0.95, timeoutMillis);
+    }
+
+    private static void waitForAnswers(HedgedResolver resolver, int server, int answers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (resolver.stats(server).successes() < answers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
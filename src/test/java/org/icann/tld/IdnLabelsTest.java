@@ -0,0 +1,72 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class IdnLabelsTest {
+
+    private static final String RF = "\u0440\u0444";
+
+    @Test
+    public void testConvertsLastLabel() throws Exception {
+        IdnLabels labels = new IdnLabels(16);
+        assertThat(labels.toAscii("example." + RF, 8, 10)).isEqualTo("xn--p1ai");
+        assertThat(labels.toAscii(RF, 0, 2)).isEqualTo("xn--p1ai");
+        assertThat(labels.toAscii("\u043f\u0440\u0438\u043c\u0435\u0440\u3002" + RF, 0, 9)).isEqualTo("xn--p1ai");
+        assertThat(labels.toAscii("example\uff0e" + RF + "\uff61", 0, 11)).isEqualTo("xn--p1ai");
+        assertThat(labels.toAscii("\u3002", 0, 1)).isEqualTo("");
+        assertThat(labels.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidLabel() throws Exception {
+        IdnLabels labels = new IdnLabels(16);
+        String tooLong = "\u00e9";
+        for (int i = 0; i < 7; i++) {
+            tooLong += tooLong;
+        }
+        assertThat(labels.toAscii(tooLong, 0, tooLong.length())).isEqualTo("");
+    }
+
+    @Test
+    public void testMemoIsBounded() throws Exception {
+        IdnLabels labels = new IdnLabels(4);
+        for (char c = '\u00e0'; c < '\u00f0'; c++) {
+            String label = "\u00e9" + c;
+            assertThat(labels.toAscii(label, 0, 2)).startsWith("xn--");
+            assertThat(labels.size()).isLessThanOrEqualTo(4);
+        }
+    }
+
+    @Test
+    public void testIsAscii() throws Exception {
+        assertThat(IdnLabels.isAscii("example.com", 0, 11)).isTrue();
+        assertThat(IdnLabels.isAscii("example." + RF, 0, 8)).isTrue();
+        assertThat(IdnLabels.isAscii("example." + RF, 0, 10)).isFalse();
+        assertThat(IdnLabels.isAscii(("example." + RF).toCharArray(), 8, 10)).isFalse();
+    }
+}
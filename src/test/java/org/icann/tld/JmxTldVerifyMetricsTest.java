@@ -0,0 +1,175 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class JmxTldVerifyMetricsTest {
+
+    @Test
+    public void testOfflineChecks() throws Exception {
+        TldVerify tldVerify = TldVerifyTest.newOfflineTldVerify("AERO", "COM", "ORG");
+        JmxTldVerifyMetrics metrics = new JmxTldVerifyMetrics(tldVerify);
+        tldVerify.setMetrics(metrics);
+
+        assertThat(tldVerify.verifyTldOffline("icann.org")).isTrue();
+        assertThat(tldVerify.verifyTldOffline("icann.sss")).isFalse();
+        assertThat(tldVerify.verifyTldOffline("www.aero".toCharArray(), 0, 8)).isTrue();
+        tldVerify.verifyTldOffline(new CharSequence[]{"a.com", "b.com", "c.sss", null});
+        tldVerify.verifyTldOffline(Arrays.asList("a.com", "b.sss"));
+
+        assertThat(metrics.getOfflineValid()).isEqualTo(5);
+        assertThat(metrics.getOfflineInvalid()).isEqualTo(4);
+        assertThat(metrics.getTldListVersion()).isEqualTo(2006120301L);
+        assertThat(metrics.getTldCount()).isEqualTo(3);
+        assertThat(metrics.getTldListAgeSeconds()).isGreaterThanOrEqualTo(0);
+        assertThat(metrics.getCacheFiles()).isEqualTo(1);
+
+        tldVerify.setMetrics(TldVerifyMetrics.NONE);
+        tldVerify.verifyTldOffline("icann.org");
+        assertThat(metrics.getOfflineValid()).isEqualTo(5);
+    }
+
+    @Test
+    public void testOnlineChecks() throws Exception {
+        StubDnsServer server = new StubDnsServer("com");
+        TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            JmxTldVerifyMetrics metrics = new JmxTldVerifyMetrics(tldVerify);
+            tldVerify.setMetrics(metrics);
+            assertThat(tldVerify.verifyTld("icann.com")).isTrue();
+            assertThat(tldVerify.verifyTld("www.icann.com")).isTrue();
+            assertThat(tldVerify.verifyTld("icann.sss")).isFalse();
+
+            tldVerify.setDnsServer(new java.net.InetSocketAddress("127.0.0.1", 9));
+            tldVerify.setDnsTimeout(100, TimeUnit.MILLISECONDS);
+            assertThat(tldVerify.verifyTld("icann.org")).isFalse();
+
+            assertThat(metrics.getOnlineValid()).isEqualTo(2);
+            assertThat(metrics.getOnlineInvalid()).isEqualTo(1);
+            assertThat(metrics.getOnlineCached()).isEqualTo(1);
+            assertThat(metrics.getOnlineFailed()).isEqualTo(1);
+            assertThat(metrics.getDnsLookups()).isEqualTo(3);
+            assertThat(metrics.getDnsLookupFailures()).isEqualTo(1);
+            assertThat(metrics.getDnsLookupMaxMillis()).isGreaterThanOrEqualTo(100.0);
+            assertThat(metrics.getDnsLookup99thPercentileMillis()).isGreaterThanOrEqualTo(metrics.getDnsLookupMeanMillis());
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFallbackAndRootZoneChecks() throws Exception {
+        StubDnsServer server = new StubDnsServer("com", "aero");
+        server.setDropRate(1);
+        TldVerify tldVerify = TldVerifyTest.newOfflineTldVerify("COM");
+        try {
+            JmxTldVerifyMetrics metrics = new JmxTldVerifyMetrics(tldVerify);
+            tldVerify.setMetrics(metrics);
+            tldVerify.setDnsServer(server.getAddress());
+            tldVerify.setHybridDnsTimeout(50, TimeUnit.MILLISECONDS);
+            tldVerify.setCircuitBreaker(1, 1, TimeUnit.HOURS);
+            tldVerify.setFallbackPolicy(FallbackPolicy.FAIL_OPEN);
+            assertThat(tldVerify.verifyTldHybrid("icann.com")).isTrue();
+            assertThat(tldVerify.verifyTldHybrid("icann.aero")).isTrue();
+            tldVerify.setFallbackPolicy(FallbackPolicy.FAIL_CLOSED);
+            assertThat(tldVerify.verifyTldHybrid("icann.aero")).isFalse();
+
+            java.io.File file = java.io.File.createTempFile("root", ".zone");
+            file.deleteOnExit();
+            FileUtils.writeStringToFile(file, RootZoneTest.ZONE, "US-ASCII");
+            tldVerify.setRootZoneFile(file.getPath());
+            assertThat(tldVerify.verifyTldRootZone("icann.org")).isTrue();
+            assertThat(tldVerify.verifyTldRootZone("icann.net")).isFalse();
+            assertThat(tldVerify.verifyTldRootZone("icann.undelegated")).isFalse();
+
+            assertThat(metrics.getOfflineValid()).isEqualTo(1);
+            assertThat(metrics.getOfflineInvalid()).isEqualTo(0);
+            assertThat(metrics.getFallbackValid()).isEqualTo(1);
+            assertThat(metrics.getFallbackInvalid()).isEqualTo(1);
+            assertThat(metrics.getRootZoneValid()).isEqualTo(1);
+            assertThat(metrics.getRootZoneInvalid()).isEqualTo(2);
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRefreshes() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            TldVerify tldVerify = server.newTldVerify();
+            JmxTldVerifyMetrics metrics = new JmxTldVerifyMetrics(tldVerify);
+            tldVerify.setMetrics(metrics);
+            java.io.File file = TldVerifyTest.writeCacheFile(1L, "AERO");
+            tldVerify.refreshTldDB(file.getPath());
+            tldVerify.refreshTldDB(file.getPath());
+            server.setStatus(500);
+            try {
+                tldVerify.refreshTldDB(file.getPath());
+                fail("Expected the refresh to fail");
+            } catch (TLDVerifyException e) {
+                assertThat(metrics.getLastRefreshError()).contains("500");
+            }
+            assertThat(metrics.getRefreshes()).isEqualTo(2);
+            assertThat(metrics.getRefreshUpdates()).isEqualTo(1);
+            assertThat(metrics.getRefreshFailures()).isEqualTo(1);
+            assertThat(metrics.getRefreshMaxMillis()).isGreaterThan(0.0);
+            assertThat(metrics.getTldListVersion()).isEqualTo(2006120301L);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        TldVerify tldVerify = TldVerifyTest.newOfflineTldVerify("AERO", "COM");
+        JmxTldVerifyMetrics metrics = JmxTldVerifyMetrics.register(tldVerify, "test-" + System.nanoTime());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            tldVerify.verifyTldOffline("icann.com");
+            assertThat(server.getAttribute(metrics.getObjectName(), "OfflineValid")).isEqualTo(1L);
+            assertThat(server.getAttribute(metrics.getObjectName(), "TldCount")).isEqualTo(2);
+        } finally {
+            ObjectName name = metrics.getObjectName();
+            metrics.unregister();
+            assertThat(server.isRegistered(name)).isFalse();
+        }
+        tldVerify.verifyTldOffline("icann.com");
+        assertThat(metrics.getOfflineValid()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,57 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.count()).isEqualTo(0);
+        assertThat(histogram.mean()).isEqualTo(0.0);
+        assertThat(histogram.percentile(0.99)).isEqualTo(0);
+    }
+
+    @Test
+    public void testPercentilesAreUpperBounds() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1000000);
+        assertThat(histogram.count()).isEqualTo(100);
+        assertThat(histogram.max()).isEqualTo(1000000);
+        assertThat(histogram.mean()).isEqualTo((99 * 1000 + 1000000) / 100.0);
+        assertThat(histogram.percentile(0.5)).isEqualTo(1023);
+        assertThat(histogram.percentile(0.99)).isEqualTo(1023);
+        assertThat(histogram.percentile(1.0)).isEqualTo(1000000);
+        histogram.record(0);
+        histogram.record(-5);
+        assertThat(histogram.percentile(0.01)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,135 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.StringReader;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PublicSuffixListTest {
+
+    static final String RULES = "// ===BEGIN ICANN DOMAINS===\n"
+            + "com\n"
+            + "uk\n"
+            + "co.uk\n"
+            + "\n"
+            + "// ck : https://en.wikipedia.org/wiki/.ck\n"
+            + "*.ck\n"
+            + "!www.ck\n"
+            + "jp\n"
+            + "kawasaki.jp\n"
+            + "*.kawasaki.jp\n"
+            + "!city.kawasaki.jp\n"
+            + "\u0440\u0444\n"
+            + "\u043f\u0440.\u0440\u0444 rule text after whitespace is ignored\n"
+            + "// ===END ICANN DOMAINS===\n"
+            + "// ===BEGIN PRIVATE DOMAINS===\n"
+            + "blogspot.com\n"
+            + "// ===END PRIVATE DOMAINS===\n";
+
+    @Test
+    public void testSkipsRulesWithInvalidInternationalizedLabels() throws Exception {
+        StringBuilder label = new StringBuilder();
+        for (int i = 0; i < 70; i++) {
+            label.append("\u00e9");
+        }
+        PublicSuffixList list = PublicSuffixList.read(new StringReader(RULES + label + ".com\n"), true);
+        assertThat(list.size()).isEqualTo(12);
+        assertThat(list.getPublicSuffix("icann." + label + ".com")).isEqualTo("com");
+    }
+
+    @Test
+    public void testRules() throws Exception {
+        PublicSuffixList list = PublicSuffixList.read(new StringReader(RULES), true);
+        assertThat(list.size()).isEqualTo(12);
+        assertThat(list.getPublicSuffix("www.icann.co.uk")).isEqualTo("co.uk");
+        assertThat(list.getRegistrableDomain("www.icann.co.uk")).isEqualTo("icann.co.uk");
+        assertThat(list.getRegistrableDomain("icann.uk")).isEqualTo("icann.uk");
+        assertThat(list.getRegistrableDomain("co.uk")).isNull();
+        assertThat(list.getRegistrableDomain("WWW.ICANN.CO.UK.")).isEqualTo("ICANN.CO.UK");
+        assertThat(list.getPublicSuffix("foo.blogspot.com")).isEqualTo("blogspot.com");
+    }
+
+    @Test
+    public void testWildcardAndException() throws Exception {
+        PublicSuffixList list = PublicSuffixList.read(new StringReader(RULES), true);
+        assertThat(list.getPublicSuffix("a.b.ck")).isEqualTo("b.ck");
+        assertThat(list.getRegistrableDomain("a.b.ck")).isEqualTo("a.b.ck");
+        assertThat(list.getRegistrableDomain("b.ck")).isNull();
+        assertThat(list.getPublicSuffix("www.ck")).isEqualTo("ck");
+        assertThat(list.getRegistrableDomain("www.www.ck")).isEqualTo("www.ck");
+        assertThat(list.getRegistrableDomain("a.b.kawasaki.jp")).isEqualTo("a.b.kawasaki.jp");
+        assertThat(list.getRegistrableDomain("a.city.kawasaki.jp")).isEqualTo("city.kawasaki.jp");
+        assertThat(list.getRegistrableDomain("kawasaki.jp")).isNull();
+    }
+
+    @Test
+    public void testDefaultRule() throws Exception {
+        PublicSuffixList list = PublicSuffixList.read(new StringReader(RULES), true);
+        assertThat(list.getPublicSuffix("www.example.org")).isEqualTo("org");
+        assertThat(list.getRegistrableDomain("www.example.org")).isEqualTo("example.org");
+        assertThat(list.getRegistrableDomain("org")).isNull();
+        assertThat(list.getRegistrableDomain("a..org")).isNull();
+        assertThat(list.getPublicSuffix("")).isEqualTo("");
+        assertThat(PublicSuffixList.EMPTY.getRegistrableDomain("www.icann.co.uk")).isEqualTo("co.uk");
+    }
+
+    @Test
+    public void testInternationalizedRules() throws Exception {
+        PublicSuffixList list = PublicSuffixList.read(new StringReader(RULES), true);
+        assertThat(list.getRegistrableDomain("a.b.\u043f\u0440.\u0440\u0444")).isEqualTo("b.\u043f\u0440.\u0440\u0444");
+        assertThat(list.getRegistrableDomain("a.b.xn--o1ac.XN--P1AI")).isEqualTo("b.xn--o1ac.XN--P1AI");
+        assertThat(list.getRegistrableDomain("a.b.xn--p1ai")).isEqualTo("b.xn--p1ai");
+    }
+
+    @Test
+    public void testBoundsInPlace() throws Exception {
+        PublicSuffixList list = PublicSuffixList.read(new StringReader(RULES), true);
+        String line = "  www.icann.co.uk  ";
+        long bounds = list.getBounds(line, 2, 17);
+        assertThat(PublicSuffixList.publicSuffixStart(bounds)).isEqualTo(12);
+        assertThat(PublicSuffixList.registrableDomainStart(bounds)).isEqualTo(6);
+    }
+
+    @Test
+    public void testLoadWithoutPrivateDomains() throws Exception {
+        File file = File.createTempFile("public_suffix_list", ".dat");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, RULES, "UTF-8");
+        assertThat(PublicSuffixList.load(file).size()).isEqualTo(12);
+        PublicSuffixList icann = PublicSuffixList.load(file, false);
+        assertThat(icann.size()).isEqualTo(11);
+        assertThat(icann.getRegistrableDomain("foo.blogspot.com")).isEqualTo("blogspot.com");
+    }
+
+    @Test(expectedExceptions = TLDVerifyException.class)
+    public void testLoadMissingFile() throws Exception {
+        PublicSuffixList.load(new File("does-not-exist.dat"));
+    }
+}
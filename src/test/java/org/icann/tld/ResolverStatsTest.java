@@ -0,0 +1,73 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ResolverStatsTest {
+
+    @Test
+    public void testPercentileOfRecentLatencies() throws Exception {
+        ResolverStats stats = new ResolverStats();
+        for (int i = 1; i < ResolverStats.MIN_SAMPLES; i++) {
+            stats.success(i);
+        }
+        assertThat(stats.percentile(0.95)).isEqualTo(-1);
+        for (int i = 1; i <= ResolverStats.WINDOW; i++) {
+            stats.success(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(stats.percentile(0.5)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(64));
+        assertThat(stats.percentile(0.95)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(122));
+        for (int i = 0; i < ResolverStats.WINDOW; i++) {
+            stats.success(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertThat(stats.percentile(0.95)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testErrorsRaiseExpectedTime() throws Exception {
+        long timeout = TimeUnit.SECONDS.toNanos(5);
+        ResolverStats healthy = new ResolverStats();
+        ResolverStats lossy = new ResolverStats();
+        assertThat(healthy.expectedNanos(timeout)).isEqualTo(0.0);
+        for (int i = 0; i < 20; i++) {
+            healthy.success(TimeUnit.MILLISECONDS.toNanos(50));
+            lossy.success(TimeUnit.MILLISECONDS.toNanos(10));
+            if (i % 4 == 0) {
+                lossy.failure();
+            }
+        }
+        assertThat(lossy.errorRate()).isGreaterThan(0.1);
+        assertThat(lossy.expectedNanos(timeout)).isGreaterThan(healthy.expectedNanos(timeout));
+        assertThat(lossy.failures()).isEqualTo(5);
+        for (int i = 0; i < 50; i++) {
+            lossy.success(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertThat(lossy.expectedNanos(timeout)).isLessThan(healthy.expectedNanos(timeout));
+    }
+}
@@ -0,0 +1,125 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.*;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class RootZoneTest {
+
+    static final String ZONE = zone(2024040200L)
+            + "com.\t172800\tIN\tNS\ta.gtld-servers.net.\n"
+            + "com.\t172800\tIN\tNS\tb.gtld-servers.net.\n"
+            + "com.\t86400\tIN\tDS\t19718 13 2 8ACBB0CD28F41250A80A491389424D341522D946B0DA0C0291F2D3D771D7805A\n"
+            + "com.\t86400\tIN\tRRSIG\tDS 8 1 86400 20240415050000 20240402040000 5613 . aGVsbG8gd29ybGQ=\n"
+            + "com.\t86400\tIN\tNSEC\tcommbank. NS DS RRSIG NSEC\n"
+            + "a.gtld-servers.net.\t172800\tIN\tA\t192.5.6.30\n"
+            + "org.\t172800\tIN\tNS\ta0.org.afilias-nst.info.\n"
+            + "foo.\t86400\tIN\tRRSIG\tNSEC 8 1 86400 20240415050000 20240402040000 5613 . aGVsbG8gd29ybGQ=\n"
+            + "\t86400\tIN\tDS\t2 8 2 F35CE7F4E0F8D1ACD9E9B2A4BD6BB4C5E0D5E8B0FDBE8C7F16B2C6C0A6E7A1B3\n"
+            + "xn--p1ai.\t172800\tIN\tNS\ta.dns.ripn.net.\n"
+            + "xn--p1ai.\t86400\tIN\tDS\t26680 8 2 F35CE7F4E0F8D1ACD9E9B2A4BD6BB4C5E0D5E8B0FDBE8C7F16B2C6C0A6E7A1B3\n"
+            + "undelegated.\t86400\tIN\tDS\t1 8 2 F35CE7F4E0F8D1ACD9E9B2A4BD6BB4C5E0D5E8B0FDBE8C7F16B2C6C0A6E7A1B3\n";
+
+    static String zone(long serial) {
+        return ".\t86400\tIN\tSOA\ta.root-servers.net. nstld.verisign-grs.com. " + serial + " 1800 900 604800 86400\n"
+                + ".\t86400\tIN\tRRSIG\tSOA 8 0 86400 20240415050000 20240402040000 5613 . aGVsbG8gd29ybGQ=\n"
+                + ".\t86400\tIN\tZONEMD\t" + serial + " 1 1 ( 7D6F6C7D9A4B1E7E6C6F2F0C8F5B3E2A1D0C9B8A7F6E5D4C3B2A1F0E9D8C7B6A5F4E3D2C1B0A9F8E7D6C5B4A3F2E1D0C9B8A7F6E5D4C3B2A1F0E9D8C7B6A5F\n"
+                + "\t\t)\n"
+                + ".\t86400\tIN\tNSEC\taaa. NS SOA RRSIG NSEC DNSKEY ZONEMD\n"
+                + ".\t518400\tIN\tNS\ta.root-servers.net.\n";
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        RootZone zone = RootZone.read(new ByteArrayInputStream(ZONE.getBytes("US-ASCII")));
+        assertThat(zone.getSerial()).isEqualTo(2024040200L);
+        assertThat(zone.size()).isEqualTo(3);
+        assertThat(zone.getSignedCount()).isEqualTo(2);
+        assertThat(zone.isDelegated("com")).isTrue();
+        assertThat(zone.isDelegated("ORG")).isTrue();
+        assertThat(zone.isDelegated("Xn--P1ai")).isTrue();
+        assertThat(zone.isDelegated("net")).isFalse();
+        assertThat(zone.isDelegated("undelegated")).isFalse();
+        assertThat(zone.isSigned("COM")).isTrue();
+        assertThat(zone.isSigned("org")).isFalse();
+        assertThat(zone.isSigned("undelegated")).isFalse();
+        assertThat(zone.isDelegated("foo")).isFalse();
+        assertThat(zone.flags("www.icann.org", 10, 13)).isEqualTo(RootZone.DELEGATED);
+    }
+
+    @Test
+    public void testReadRejectsZoneWithoutSoa() throws Exception {
+        try {
+            RootZone.read(new ByteArrayInputStream("com.\t172800\tIN\tNS\ta.gtld-servers.net.\n".getBytes("US-ASCII")));
+            fail("Expected a zone without SOA record to be rejected");
+        } catch (TLDVerifyException e) {
+            assertThat(e.getMessage()).contains("SOA");
+        }
+    }
+
+    @Test
+    public void testRootZoneFileReloadsNewSerial() throws Exception {
+        File file = File.createTempFile("root", ".zone");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, ZONE, "US-ASCII");
+        assertThat(RootZone.readSerial(file)).isEqualTo(2024040200L);
+        RootZoneFile zoneFile = new RootZoneFile(file, 0);
+        RootZone first = zoneFile.get();
+        assertThat(zoneFile.get()).isSameAs(first);
+
+        FileUtils.writeStringToFile(file, ZONE + "net.\t172800\tIN\tNS\ta.gtld-servers.net.\n", "US-ASCII");
+        file.setLastModified(file.lastModified() + 2000);
+        assertThat(zoneFile.get()).isSameAs(first);
+
+        FileUtils.writeStringToFile(file, zone(2024040300L) + "net.\t172800\tIN\tNS\ta.gtld-servers.net.\n", "US-ASCII");
+        file.setLastModified(file.lastModified() + 4000);
+        RootZone second = zoneFile.get();
+        assertThat(second.getSerial()).isEqualTo(2024040300L);
+        assertThat(second.isDelegated("net")).isTrue();
+        assertThat(second.isDelegated("com")).isFalse();
+
+        FileUtils.writeStringToFile(file, "not a zone\n", "US-ASCII");
+        file.setLastModified(file.lastModified() + 6000);
+        assertThat(zoneFile.get()).isSameAs(second);
+    }
+
+    @Test
+    public void testRootZoneFileChecksAtMostOncePerInterval() throws Exception {
+        File file = File.createTempFile("root", ".zone");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, ZONE, "US-ASCII");
+        RootZoneFile zoneFile = new RootZoneFile(file, Long.MAX_VALUE);
+        RootZone first = zoneFile.get();
+        FileUtils.writeStringToFile(file, zone(2024040300L), "US-ASCII");
+        file.setLastModified(file.lastModified() + 2000);
+        assertThat(zoneFile.get()).isSameAs(first);
+    }
+}
@@ -0,0 +1,266 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+/**
+ * An in-process DNS server answering SOA queries for a configurable set of top level
+ * domains. Other names get NXDOMAIN with the root SOA in the authority section.
+ * Answers can be delayed and queries dropped to simulate a slow or lossy resolver.
+ * The same port also answers over TCP, and UDP answers can be truncated to force clients to TCP.
+ */
+public class StubDnsServer {
+
+    private final DatagramSocket socket;
+    private final ServerSocket tcpSocket;
+    private final Set<String> tlds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+    private final Random random = new Random(42);
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger tcpQueries = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger maxOutstanding = new AtomicInteger();
+    private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final List<Integer> queryIds = Collections.synchronizedList(new ArrayList<Integer>());
+    private volatile long delayMillis;
+    private volatile long jitterMillis;
+    private volatile double dropRate;
+    private volatile boolean truncate;
+    private volatile long positiveTtl = 86400;
+    private volatile long negativeTtl = 86400;
+
+    public StubDnsServer(String... tlds) throws IOException {
+        DatagramSocket udp = null;
+        ServerSocket tcp = null;
+        while (tcp == null) {
+            udp = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            try {
+                tcp = new ServerSocket(udp.getLocalPort(), 50, InetAddress.getLoopbackAddress());
+            } catch (BindException e) {
+                udp.close();
+            }
+        }
+        socket = udp;
+        tcpSocket = tcp;
+        socket.setReceiveBufferSize(1 << 20);
+        for (String tld : tlds) {
+            addTld(tld);
+        }
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        }, "stub-dns");
+        thread.setDaemon(true);
+        thread.start();
+        Thread tcpThread = new Thread(new Runnable() {
+            public void run() {
+                serveTcp();
+            }
+        }, "stub-dns-tcp");
+        tcpThread.setDaemon(true);
+        tcpThread.start();
+    }
+
+    public void addTld(String tld) {
+        tlds.add(tld.toLowerCase());
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Add a random delay of up to the given time to each UDP answer, on top of the fixed delay.
+     */
+    public void setJitterMillis(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+    }
+
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+
+    public void setTruncate(boolean truncate) {
+        this.truncate = truncate;
+    }
+
+    public void setTtl(long positiveTtl, long negativeTtl) {
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(socket.getLocalAddress(), socket.getLocalPort());
+    }
+
+    public int getQueries() {
+        return queries.get();
+    }
+
+    public int getTcpQueries() {
+        return tcpQueries.get();
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding.get();
+    }
+
+    /**
+     * @return the source ports UDP queries came from
+     */
+    public Set<Integer> getClientPorts() {
+        return clientPorts;
+    }
+
+    /**
+     * @return the message ids of the UDP queries, in the order they arrived
+     */
+    public List<Integer> getQueryIds() {
+        synchronized (queryIds) {
+            return new ArrayList<Integer>(queryIds);
+        }
+    }
+
+    public void stop() {
+        socket.close();
+        try {
+            tcpSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        executor.shutdownNow();
+    }
+
+    private void serve() {
+        byte[] buffer = new byte[512];
+        while (!socket.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                queries.incrementAndGet();
+                long delay = delayMillis;
+                synchronized (random) {
+                    if (random.nextDouble() < dropRate) {
+                        continue;
+                    }
+                    if (jitterMillis > 0) {
+                        delay += (long) (random.nextDouble() * jitterMillis);
+                    }
+                }
+                final Message query = new Message(Arrays.copyOf(packet.getData(), packet.getLength()));
+                final SocketAddress client = packet.getSocketAddress();
+                clientPorts.add(packet.getPort());
+                queryIds.add(query.getHeader().getID());
+                int count = outstanding.incrementAndGet();
+                int max;
+                while (count > (max = maxOutstanding.get()) && !maxOutstanding.compareAndSet(max, count)) {
+                    continue;
+                }
+                executor.schedule(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        byte[] answer = (truncate ? truncated(query) : answer(query)).toWire();
+                        outstanding.decrementAndGet();
+                        socket.send(new DatagramPacket(answer, answer.length, client));
+                        return null;
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                if (socket.isClosed()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void serveTcp() {
+        while (!tcpSocket.isClosed()) {
+            try {
+                final Socket connection = tcpSocket.accept();
+                executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        try {
+                            DataInputStream in = new DataInputStream(connection.getInputStream());
+                            DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+                            byte[] query = new byte[in.readUnsignedShort()];
+                            in.readFully(query);
+                            tcpQueries.incrementAndGet();
+                            byte[] answer = answer(new Message(query)).toWire();
+                            out.writeShort(answer.length);
+                            out.write(answer);
+                            out.flush();
+                        } finally {
+                            connection.close();
+                        }
+                        return null;
+                    }
+                });
+            } catch (IOException e) {
+                if (tcpSocket.isClosed()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static Message truncated(Message query) {
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setFlag(Flags.TC);
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        return response;
+    }
+
+    Message answer(Message query) throws IOException {
+        Record question = query.getQuestion();
+        Name name = question.getName();
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setFlag(Flags.RA);
+        response.addRecord(question, Section.QUESTION);
+        String tld = name.toString().toLowerCase();
+        tld = tld.substring(0, tld.length() - 1);
+        if (name.labels() == 2 && tlds.contains(tld)) {
+            response.addRecord(soa(name, positiveTtl), Section.ANSWER);
+        } else {
+            response.getHeader().setRcode(Rcode.NXDOMAIN);
+            response.addRecord(soa(Name.root, negativeTtl), Section.AUTHORITY);
+        }
+        return response;
+    }
+
+    private static SOARecord soa(Name name, long ttl) throws TextParseException {
+        return new SOARecord(name, DClass.IN, ttl, Name.fromString("ns.stub."), Name.fromString("hostmaster.stub."),
+                2006120301L, 1800, 900, 604800, ttl);
+    }
+}
@@ -0,0 +1,192 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.concurrent.atomic.*;
+
+import com.sun.net.httpserver.*;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A local stand-in for the IANA web site serving a TLD list and its MD5 digest.
+ * Supports conditional requests and can be told to fail.
+ */
+public class StubHttpServer {
+
+    public static final String LIST_PATH = "/TLD/tlds-alpha-by-domain.txt";
+    public static final String MD5_PATH = LIST_PATH + ".md5";
+    public static final String SHA256_PATH = LIST_PATH + ".sha256";
+
+    private final HttpServer server;
+    private volatile byte[] list;
+    private volatile String md5;
+    private volatile String sha256;
+    private volatile String etag;
+    private volatile String lastModified;
+    private volatile int status = 200;
+    private volatile long delayMillis;
+    private final AtomicInteger listRequests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger md5Requests = new AtomicInteger();
+
+    public StubHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(LIST_PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                listRequests.incrementAndGet();
+                delay();
+                if (status != 200) {
+                    send(exchange, status, new byte[0]);
+                    return;
+                }
+                String tag = etag;
+                String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+                String match = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if ((match != null && match.equals(tag)) || (match == null && since != null && since.equals(lastModified))) {
+                    notModified.incrementAndGet();
+                    exchange.getResponseHeaders().set("ETag", tag);
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", tag);
+                exchange.getResponseHeaders().set("Last-Modified", lastModified);
+                send(exchange, 200, list);
+            }
+        });
+        server.createContext(MD5_PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                md5Requests.incrementAndGet();
+                send(exchange, status, (md5 + "  tlds-alpha-by-domain.txt\n").getBytes("US-ASCII"));
+            }
+        });
+        server.createContext(SHA256_PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, status, (sha256 + "  tlds-alpha-by-domain.txt\n").getBytes("US-ASCII"));
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Serve a new version of the TLD list.
+     */
+    public void setList(long version, String... tlds) {
+        StringBuilder content = new StringBuilder("# Version " + version + ", Last Updated Mon Dec  4 09:07:02 2006 UTC\n");
+        for (String tld : tlds) {
+            content.append(tld).append('\n');
+        }
+        setList(content.toString(), "\"" + version + "\"");
+    }
+
+    /**
+     * Serve arbitrary list content with the given ETag.
+     */
+    public void setList(String content, String etag) {
+        try {
+            byte[] bytes = content.getBytes("US-ASCII");
+            md5 = DigestUtils.md5Hex(bytes);
+            sha256 = String.valueOf(Hex.encodeHex(MessageDigest.getInstance("SHA-256").digest(bytes)));
+            list = bytes;
+            this.etag = etag;
+            lastModified = "Mon, 04 Dec 2006 09:07:" + String.format("%02d", Math.abs(etag.hashCode()) % 60) + " GMT";
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Serve a digest that does not match the list.
+     */
+    public void corruptDigest() {
+        md5 = "00000000000000000000000000000000";
+        sha256 = md5 + md5;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public String getListUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + LIST_PATH;
+    }
+
+    public String getMd5Url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + MD5_PATH;
+    }
+
+    public String getSha256Url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + SHA256_PATH;
+    }
+
+    public TldVerify newTldVerify() {
+        return new TldVerify(getListUrl(), getMd5Url());
+    }
+
+    public int getListRequests() {
+        return listRequests.get();
+    }
+
+    public int getNotModified() {
+        return notModified.get();
+    }
+
+    public int getMd5Requests() {
+        return md5Requests.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void delay() {
+        long delay = delayMillis;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,101 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TldCacheRegistryTest {
+
+    @Test
+    public void testReadsOnlyChangedFiles() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        TldCacheRegistry registry = new TldCacheRegistry(loader, 4);
+        File file = TldVerifyTest.writeCacheFile(1L, "AERO");
+
+        TldCache first = registry.get(file);
+        assertThat(registry.get(file)).isSameAs(first);
+        assertThat(registry.get(new File(file.getAbsolutePath()))).isSameAs(first);
+        assertThat(loader.loads.get()).isEqualTo(1);
+
+        FileUtils.writeStringToFile(file, "# Version 2\nAERO\nCOM\n", "US-ASCII");
+        file.setLastModified(file.lastModified() + 2000);
+        TldCache second = registry.get(file);
+        assertThat(loader.loads.get()).isEqualTo(2);
+        assertThat(loader.previous).isSameAs(first);
+        assertThat(second.exist("com")).isTrue();
+        assertThat(registry.get(file)).isSameAs(second);
+        assertThat(loader.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testForgetsLeastRecentlyUsedFile() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        TldCacheRegistry registry = new TldCacheRegistry(loader, 2);
+        File a = TldVerifyTest.writeCacheFile(1L, "AERO");
+        File b = TldVerifyTest.writeCacheFile(1L, "COM");
+        File c = TldVerifyTest.writeCacheFile(1L, "NET");
+
+        registry.get(a);
+        registry.get(b);
+        registry.get(a);
+        registry.get(c);
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(loader.loads.get()).isEqualTo(3);
+        registry.get(a);
+        assertThat(loader.loads.get()).isEqualTo(3);
+        registry.get(b);
+        assertThat(loader.loads.get()).isEqualTo(4);
+
+        registry.setMaxFiles(1);
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+    @Test(expectedExceptions = TLDVerifyException.class)
+    public void testMissingFile() throws Exception {
+        new TldCacheRegistry(new CountingLoader(), 2).get(new File("does-not-exist.txt"));
+    }
+
+    private static class CountingLoader implements TldCacheRegistry.Loader {
+        final AtomicInteger loads = new AtomicInteger();
+        volatile TldCache previous;
+
+        public TldCache load(File file, TldCache previous) throws TLDVerifyException {
+            loads.incrementAndGet();
+            this.previous = previous;
+            try {
+                List<String> lines = FileUtils.readLines(file, "US-ASCII");
+                return new TldCache(lines.size(), lines.get(0), lines.subList(1, lines.size()));
+            } catch (IOException e) {
+                throw new TLDVerifyException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.util.*;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TldCacheTest {
+
+    @Test
+    public void testExistIgnoresCase() throws Exception {
+        TldCache cache = new TldCache(2006120301L, "# Version 2006120301, Last Updated Mon Dec  4 09:07:02 2006 UTC",
+                Arrays.asList("AERO", "XN--P1AI"));
+        assertThat(cache.exist("AERO")).isTrue();
+        assertThat(cache.exist("aero")).isTrue();
+        assertThat(cache.exist("Aero")).isTrue();
+        assertThat(cache.exist("xn--p1ai")).isTrue();
+        assertThat(cache.exist("aer")).isFalse();
+        assertThat(cache.exist("aeros")).isFalse();
+        assertThat(cache.exist("")).isFalse();
+        assertThat(cache.exist("www.aero.", 4, 8)).isTrue();
+        assertThat(cache.exist("www.aero.", 0, 3)).isFalse();
+    }
+
+    @Test
+    public void testPrintKeepsOriginalNames() throws Exception {
+        TldCache cache = new TldCache(1L, "# Version 1, Last Updated", Arrays.asList("AERO", "com"));
+        StringWriter out = new StringWriter();
+        cache.print(out);
+        assertThat(out.toString()).isEqualTo("# Version 1, Last Updated\nAERO\ncom\n");
+        assertThat(cache.tlds()).containsExactly("AERO", "com");
+    }
+
+    @Test
+    public void testLookupCostIsFlat() throws Exception {
+        double small = averageProbes(1000);
+        double large = averageProbes(100000);
+        assertThat(small).isLessThan(3.0);
+        assertThat(large).isLessThan(3.0);
+        assertThat(Math.abs(large - small)).isLessThan(1.0);
+    }
+
+    private double averageProbes(int count) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            names.add(name(i));
+        }
+        TldIndex index = new TldIndex(names);
+        assertThat(index.size()).isEqualTo(count);
+        long probes = 0;
+        for (int i = 0; i < count; i++) {
+            String hit = name(i).toLowerCase();
+            assertThat(index.contains(hit, 0, hit.length())).isTrue();
+            probes += index.probes(hit);
+            String miss = name(count + i);
+            assertThat(index.contains(miss, 0, miss.length())).isFalse();
+            probes += index.probes(miss);
+        }
+        return probes / (2.0 * count);
+    }
+
+    private static String name(int i) {
+        return "XN--" + Integer.toString(i, 36).toUpperCase();
+    }
+}
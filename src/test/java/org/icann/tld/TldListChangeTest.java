@@ -0,0 +1,58 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.util.*;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TldListChangeTest {
+
+    @Test
+    public void testDiff() throws Exception {
+        TldListChange change = TldListChange.diff(1L, Arrays.asList("AERO", "BIZ", "COM", "MUSEUM"),
+                2L, Arrays.asList("AERO", "CAT", "COM", "XN--P1AI"));
+        assertThat(change.getOldVersion()).isEqualTo(1L);
+        assertThat(change.getNewVersion()).isEqualTo(2L);
+        assertThat(change.getAdded()).containsExactly("CAT", "XN--P1AI");
+        assertThat(change.getRemoved()).containsExactly("BIZ", "MUSEUM");
+    }
+
+    @Test
+    public void testDiffIgnoresCaseAndOrder() throws Exception {
+        TldListChange change = TldListChange.diff(1L, Arrays.asList("com", "aero"),
+                2L, Arrays.asList("COM", "AERO", "ASIA"));
+        assertThat(change.getAdded()).containsExactly("ASIA");
+        assertThat(change.getRemoved()).isEmpty();
+    }
+
+    @Test
+    public void testDiffFromNothing() throws Exception {
+        TldListChange change = TldListChange.diff(-1L, Collections.<String>emptyList(), 1L, Arrays.asList("AERO"));
+        assertThat(change.getAdded()).containsExactly("AERO");
+        assertThat(change.getRemoved()).isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TldRefreshSchedulerTest {
+
+    @Test
+    public void testBackoffDoublesUpToMaximum() throws Exception {
+        TldRefreshScheduler scheduler = new TldRefreshScheduler(new TldVerify(), null, 1, TimeUnit.HOURS);
+        scheduler.setBackoff(1, 10, TimeUnit.SECONDS);
+        assertThat(scheduler.backoff(1)).isEqualTo(1000);
+        assertThat(scheduler.backoff(2)).isEqualTo(2000);
+        assertThat(scheduler.backoff(4)).isEqualTo(8000);
+        assertThat(scheduler.backoff(5)).isEqualTo(10000);
+        assertThat(scheduler.backoff(100)).isEqualTo(10000);
+    }
+
+    @Test
+    public void testRefreshesInBackgroundAndRecoversFromFailures() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        TldRefreshScheduler scheduler = null;
+        try {
+            server.setList(2006120301L, "AERO");
+            server.setStatus(503);
+            File file = new File(System.getProperty("java.io.tmpdir"), "tlds-" + System.nanoTime() + ".txt");
+            file.deleteOnExit();
+            TldVerify tldVerify = server.newTldVerify();
+            scheduler = new TldRefreshScheduler(tldVerify, file.getPath(), 50, TimeUnit.MILLISECONDS);
+            scheduler.setJitter(0);
+            scheduler.setBackoff(10, 40, TimeUnit.MILLISECONDS);
+            scheduler.start();
+
+            waitFor(server, 3);
+            assertThat(scheduler.getConsecutiveFailures()).isGreaterThanOrEqualTo(2);
+
+            server.setStatus(200);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getConsecutiveFailures() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(scheduler.getConsecutiveFailures()).isEqualTo(0);
+            assertThat(tldVerify.verifyTldOffline("www.aero")).isTrue();
+
+            server.setList(2006120302L, "AERO", "MUSEUM");
+            deadline = System.currentTimeMillis() + 5000;
+            while (!tldVerify.verifyTldOffline("MUSEUM") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(tldVerify.verifyTldOffline("MUSEUM")).isTrue();
+        } finally {
+            if (scheduler != null) {
+                scheduler.stop();
+            }
+            server.stop();
+        }
+    }
+
+    private static void waitFor(StubHttpServer server, int requests) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getListRequests() < requests && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
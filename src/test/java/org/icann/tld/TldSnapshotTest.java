@@ -0,0 +1,132 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TldSnapshotTest {
+
+    private static final String HEADER = "# Version 2006120301, Last Updated Mon Dec  4 09:07:02 2006 UTC";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        TldCache cache = new TldCache(2006120301L, HEADER, Arrays.asList("AERO", "COM", "XN--P1AI"));
+        File file = newSnapshotFile();
+        TldSnapshot.write(cache, file);
+
+        assertThat(TldSnapshot.readVersion(file)).isEqualTo(2006120301L);
+        TldCache read = TldSnapshot.read(file);
+        assertThat(read.getVersion()).isEqualTo(2006120301L);
+        assertThat(read.getHeader()).isEqualTo(HEADER);
+        assertThat(read.tlds()).containsExactly("AERO", "COM", "XN--P1AI");
+        assertThat(read).isEqualTo(cache);
+        assertThat(read.exist("aero")).isTrue();
+        assertThat(read.exist("xn--p1ai")).isTrue();
+        assertThat(read.exist("www.com.", 4, 7)).isTrue();
+        assertThat(read.exist("net")).isFalse();
+        char[] domain = "icann.org.com".toCharArray();
+        assertThat(read.exist(domain, 10, 13)).isTrue();
+        assertThat(read.exist(domain, 6, 9)).isFalse();
+    }
+
+    @Test
+    public void testLargeSnapshot() throws Exception {
+        List<String> tlds = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            tlds.add("XN--" + Integer.toString(i, 36).toUpperCase());
+        }
+        File file = newSnapshotFile();
+        TldSnapshot.write(new TldCache(7L, "# Version 7", tlds), file);
+        TldCache read = TldSnapshot.read(file);
+        for (String tld : tlds) {
+            assertThat(read.exist(tld.toLowerCase())).isTrue();
+        }
+        assertThat(read.exist("XN--" + Integer.toString(5000, 36))).isFalse();
+    }
+
+    @Test
+    public void testNotASnapshot() throws Exception {
+        File file = newSnapshotFile();
+        FileUtils.writeStringToFile(file, HEADER + "\nAERO\n", "US-ASCII");
+        assertThat(TldSnapshot.readVersion(file)).isEqualTo(-1L);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCorruptSnapshot() throws Exception {
+        File file = newSnapshotFile();
+        TldSnapshot.write(new TldCache(1L, "# Version 1", Arrays.asList("AERO", "COM")), file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            raf.write('X');
+        } finally {
+            raf.close();
+        }
+        TldSnapshot.read(file);
+    }
+
+    @Test
+    public void testTldVerifyUsesSnapshot() throws Exception {
+        File cacheFile = TldVerifyTest.writeCacheFile(2006120301L, "AERO", "COM");
+        File snapshotFile = TldSnapshot.snapshotFile(cacheFile);
+        snapshotFile.deleteOnExit();
+        StubHttpServer server = new StubHttpServer();
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            TldVerify tldVerify = server.newTldVerify();
+            tldVerify.setBinarySnapshot(true);
+            tldVerify.refreshTldDB(cacheFile.getPath());
+            assertThat(tldVerify.verifyTldOffline("www.icann.aero")).isTrue();
+        } finally {
+            server.stop();
+        }
+        assertThat(snapshotFile.isFile()).isTrue();
+        assertThat(TldSnapshot.read(snapshotFile).tlds()).containsExactly("AERO", "COM");
+
+        // a snapshot that is not older than the text file is used instead of it
+        TldSnapshot.write(new TldCache(2006120302L, "# Version 2006120302", Arrays.asList("NET")), snapshotFile);
+        TldVerify fromSnapshot = new TldVerify();
+        fromSnapshot.setBinarySnapshot(true);
+        fromSnapshot.loadTldDB(cacheFile.getPath());
+        assertThat(fromSnapshot.verifyTldOffline("www.icann.net")).isTrue();
+        assertThat(fromSnapshot.verifyTldOffline("www.icann.aero")).isFalse();
+
+        // without the flag the text file is read
+        TldVerify fromText = new TldVerify();
+        fromText.loadTldDB(cacheFile.getPath());
+        assertThat(fromText.verifyTldOffline("www.icann.aero")).isTrue();
+    }
+
+    private static File newSnapshotFile() throws IOException {
+        File file = File.createTempFile("tlds-alpha-by-domain", TldSnapshot.SUFFIX);
+        file.deleteOnExit();
+        return file;
+    }
+}
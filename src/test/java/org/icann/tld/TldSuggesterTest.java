@@ -0,0 +1,126 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.util.*;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TldSuggesterTest {
+
+    @Test
+    public void testDistances() {
+        int[][] rows = new int[3][8];
+        assertThat(TldSuggester.optimalStringAlignment("CMO".toCharArray(), "COM".toCharArray(), rows)).isEqualTo(1);
+        assertThat(TldSuggester.optimalStringAlignment("ORG".toCharArray(), "ORG".toCharArray(), rows)).isEqualTo(0);
+        assertThat(TldSuggester.optimalStringAlignment("NET".toCharArray(), "NETWORK".toCharArray(), rows)).isEqualTo(4);
+        assertThat(TldSuggester.optimalStringAlignment("CA".toCharArray(), "ABC".toCharArray(), rows)).isEqualTo(3);
+        assertThat(TldSuggester.optimalStringAlignment("".toCharArray(), "ABC".toCharArray(), rows)).isEqualTo(3);
+    }
+
+    @Test
+    public void testSuggest() throws Exception {
+        TldSuggester suggester = new TldSuggester(new TldIndex(TldVerify.bundledTlds().tlds()), 2);
+        assertThat(suggester.suggest("cmo", 0, 3, 1, 5)).contains("COM", "CEO");
+        assertThat(suggester.suggest("ogr", 0, 3, 1, 5)).contains("ORG");
+        assertThat(suggester.suggest("www.example.Net", 12, 15, 2, 5).get(0)).isEqualTo("NET");
+        assertThat(suggester.suggest("org", 0, 3, 0, 5)).isEqualTo(Arrays.asList("ORG"));
+        assertThat(suggester.suggest("qqqqqqqqqq", 0, 10, 2, 5)).isEmpty();
+        assertThat(suggester.suggest("cmo", 0, 3, 2, 3)).hasSize(3);
+        assertThat(new TldSuggester(new TldIndex(new ArrayList<String>()), 1).suggest("com", 0, 3, 1, 5)).isEmpty();
+    }
+
+    @Test(timeOut = 10000)
+    public void testSuggestLongInput() throws Exception {
+        TldSuggester suggester = new TldSuggester(new TldIndex(TldVerify.bundledTlds().tlds()), 2);
+        char[] input = new char[10000];
+        Arrays.fill(input, 'a');
+        for (int i = 0; i < 100; i++) {
+            assertThat(suggester.suggest(new String(input), 0, input.length, 2, 5)).isEmpty();
+        }
+        assertThat(suggester.suggest("xn--vermgensberatung-pwbx", 0, 24, 2, 5)).contains("XN--VERMGENSBERATUNG-PWB");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSuggestBeyondIndexedDistance() {
+        new TldSuggester(new TldIndex(Arrays.asList("COM")), 1).suggest("com", 0, 3, 2, 5);
+    }
+
+    @Test
+    public void testSuggestMatchesExhaustiveSearch() throws Exception {
+        List<String> tlds = TldVerify.bundledTlds().tlds();
+        TldSuggester suggester = new TldSuggester(new TldIndex(tlds), 2);
+        Random random = new Random(42);
+        int[][] rows = new int[3][64];
+        for (int n = 0; n < 500; n++) {
+            String tld = tlds.get(random.nextInt(tlds.size()));
+            char[] query = mutate(tld, random).toCharArray();
+            for (int maxDistance = 1; maxDistance <= 2; maxDistance++) {
+                List<String> expected = new ArrayList<String>();
+                for (int distance = 0; distance <= maxDistance; distance++) {
+                    for (String candidate : new TreeSet<String>(tlds)) {
+                        if (TldSuggester.optimalStringAlignment(query, candidate.toCharArray(), rows) == distance) {
+                            expected.add(candidate);
+                        }
+                    }
+                }
+                assertThat(suggester.suggest(new String(query), 0, query.length, maxDistance, Integer.MAX_VALUE))
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    /**
+     * @return the name with one or two random insertions, deletions, replacements or swaps
+     */
+    private static String mutate(String name, Random random) {
+        StringBuilder s = new StringBuilder(name);
+        for (int edits = 1 + random.nextInt(2); edits > 0; edits--) {
+            int i = random.nextInt(s.length());
+            char c = (char) ('A' + random.nextInt(26));
+            switch (random.nextInt(4)) {
+                case 0:
+                    s.insert(i, c);
+                    break;
+                case 1:
+                    if (s.length() > 1) {
+                        s.deleteCharAt(i);
+                    }
+                    break;
+                case 2:
+                    s.setCharAt(i, c);
+                    break;
+                default:
+                    if (i + 1 < s.length()) {
+                        char swapped = s.charAt(i);
+                        s.setCharAt(i, s.charAt(i + 1));
+                        s.setCharAt(i + 1, swapped);
+                    }
+            }
+        }
+        return s.toString();
+    }
+}
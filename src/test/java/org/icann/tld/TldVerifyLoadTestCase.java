@@ -0,0 +1,309 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Load test of {@link TldVerify} against the in-process {@link StubHttpServer} and
+ * {@link StubDnsServer}, so results are reproducible without network access. Each workload
+ * runs from many threads for a fixed time and reports throughput, latency percentiles and
+ * correctness violations. The class is excluded from the normal build, run it with
+ * <p/>
+ * <code>mvn test -Dtest=TldVerifyLoadTestCase [-Dtld.load.threads=8] [-Dtld.load.seconds=5]
+ * [-Dtld.load.tlds=1500] [-Dtld.load.nxdomainRate=0.2] [-Dtld.load.dnsDelayMillis=1]
+ * [-Dtld.load.dnsJitterMillis=4]</code>
+ *
+ * @author Simon Raveh
+ * @version 1.0
+ */
+public class TldVerifyLoadTestCase {
+
+    private static final int THREADS = Integer.getInteger("tld.load.threads", 8);
+    private static final long SECONDS = Long.getLong("tld.load.seconds", 5);
+    private static final int TLDS = Integer.getInteger("tld.load.tlds", 1500);
+    private static final double NXDOMAIN_RATE = Double.parseDouble(System.getProperty("tld.load.nxdomainRate", "0.2"));
+    private static final long DNS_DELAY_MILLIS = Long.getLong("tld.load.dnsDelayMillis", 1);
+    private static final long DNS_JITTER_MILLIS = Long.getLong("tld.load.dnsJitterMillis", 4);
+
+    /**
+     * Number of base TLDs verified along with the markers in one batch of the refresh workload
+     */
+    private static final int BASE_SAMPLE = 16;
+
+    private static final long FIRST_VERSION = 2006120301L;
+
+    /**
+     * A unit of work, run in a loop by each thread.
+     */
+    interface Operation {
+
+        /**
+         * @return <code>false</code> if the result was wrong
+         */
+        boolean run(Random random) throws Exception;
+    }
+
+    @Test
+    public void testOfflineLoad() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        try {
+            final String[] tlds = tlds(TLDS);
+            server.setList(FIRST_VERSION, tlds);
+            final TldVerify tldVerify = server.newTldVerify();
+            tldVerify.refreshTldDB(tempFile().getPath());
+            final String[] known = names(tlds);
+            final String[] unknown = names(unknownTlds(TLDS));
+            long violations = run("offline", new Operation() {
+                public boolean run(Random random) throws Exception {
+                    int i = random.nextInt(known.length);
+                    if (random.nextDouble() < NXDOMAIN_RATE) {
+                        return !tldVerify.verifyTldOffline(unknown[i]);
+                    }
+                    return tldVerify.verifyTldOffline(known[i]);
+                }
+            });
+            assertThat(violations).isEqualTo(0);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testOnlineLoad() throws Exception {
+        final String[] tlds = tlds(Math.min(TLDS, 256));
+        StubDnsServer dns = new StubDnsServer(tlds);
+        dns.setDelayMillis(DNS_DELAY_MILLIS);
+        dns.setJitterMillis(DNS_JITTER_MILLIS);
+        final TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServer(dns.getAddress());
+            tldVerify.setDnsCacheSize(0);
+            final String[] known = names(tlds);
+            final String[] unknown = names(unknownTlds(tlds.length));
+            long violations = run("online", new Operation() {
+                public boolean run(Random random) throws Exception {
+                    int i = random.nextInt(known.length);
+                    if (random.nextDouble() < NXDOMAIN_RATE) {
+                        return !tldVerify.verifyTld(unknown[i]);
+                    }
+                    return tldVerify.verifyTld(known[i]);
+                }
+            });
+            System.out.println("online: " + dns.getQueries() + " DNS queries, at most "
+                    + dns.getMaxOutstanding() + " outstanding");
+            assertThat(violations).isEqualTo(0);
+        } finally {
+            tldVerify.close();
+            dns.stop();
+        }
+    }
+
+    /**
+     * Readers verify a batch of names while a thread publishes new versions of the list. Each
+     * version holds the base TLDs and one marker TLD, <code>V&lt;n&gt;</code>. A batch must see
+     * the base TLDs and exactly one marker (no torn cache), at least the version published
+     * before it started (no missed update) and never an older version than the thread saw before.
+     */
+    @Test
+    public void testRefreshDuringQueryLoad() throws Exception {
+        final StubHttpServer server = new StubHttpServer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final String[] tlds = tlds(TLDS);
+            final int versions = (int) Math.max(10, SECONDS * 20);
+            final File file = tempFile();
+            final TldVerify tldVerify = server.newTldVerify();
+            final AtomicInteger published = new AtomicInteger();
+            publish(server, tlds, 0);
+            tldVerify.refreshTldDB(file.getPath());
+            final AtomicBoolean done = new AtomicBoolean();
+            Future<Integer> refresher = executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    long interval = TimeUnit.SECONDS.toMillis(SECONDS) / versions;
+                    int version = 0;
+                    while (!done.get() && version < versions) {
+                        publish(server, tlds, ++version);
+                        tldVerify.refreshTldDB(file.getPath());
+                        published.set(version);
+                        Thread.sleep(interval);
+                    }
+                    return version;
+                }
+            });
+            final String[] known = names(tlds);
+            final ThreadLocal<int[]> lastSeen = new ThreadLocal<int[]>() {
+                protected int[] initialValue() {
+                    return new int[1];
+                }
+            };
+            long violations = run("refresh-during-query", new Operation() {
+                public boolean run(Random random) throws Exception {
+                    int floor = published.get();
+                    CharSequence[] names = new CharSequence[versions + 1 + BASE_SAMPLE];
+                    for (int version = 0; version <= versions; version++) {
+                        names[version] = "host.v" + version;
+                    }
+                    for (int i = 0; i < BASE_SAMPLE; i++) {
+                        names[versions + 1 + i] = known[random.nextInt(known.length)];
+                    }
+                    boolean[] results = tldVerify.verifyTldOffline(names);
+                    int seen = -1;
+                    int markers = 0;
+                    for (int version = 0; version <= versions; version++) {
+                        if (results[version]) {
+                            seen = version;
+                            markers++;
+                        }
+                    }
+                    boolean valid = markers == 1 && seen >= floor && seen >= lastSeen.get()[0];
+                    for (int i = versions + 1; i < results.length; i++) {
+                        valid &= results[i];
+                    }
+                    lastSeen.get()[0] = Math.max(seen, lastSeen.get()[0]);
+                    return valid;
+                }
+            });
+            done.set(true);
+            int last = refresher.get();
+            System.out.println("refresh-during-query: " + last + " versions published, "
+                    + server.getListRequests() + " list downloads");
+            assertThat(violations).isEqualTo(0);
+            assertThat(tldVerify.verifyTldOffline("host.v" + last)).isTrue();
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    /**
+     * Run an operation from {@link #THREADS} threads for {@link #SECONDS} seconds and print a report.
+     *
+     * @return the number of operations that returned a wrong result
+     */
+    private static long run(String workload, final Operation operation) throws Exception {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicLong violations = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        long start = System.nanoTime();
+        for (int i = 0; i < THREADS; i++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Random random = ThreadLocalRandom.current();
+                    long now = System.nanoTime();
+                    while (now < end) {
+                        boolean valid;
+                        try {
+                            valid = operation.run(random);
+                        } catch (TLDVerifyException e) {
+                            errors.incrementAndGet();
+                            valid = false;
+                        }
+                        long finished = System.nanoTime();
+                        latencies.record(finished - now);
+                        if (!valid) {
+                            violations.incrementAndGet();
+                        }
+                        now = finished;
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        System.out.println(String.format("%-22s %2d threads %10d ops %12.0f ops/s  p50 %8d us  p99 %8d us"
+                + "  p99.9 %8d us  max %8d us  violations %d  errors %d",
+                workload, THREADS, latencies.count(), latencies.count() * 1e9 / elapsed,
+                micros(latencies.percentile(0.5)), micros(latencies.percentile(0.99)),
+                micros(latencies.percentile(0.999)), micros(latencies.max()),
+                violations.get(), errors.get()));
+        return violations.get();
+    }
+
+    private static void publish(StubHttpServer server, String[] tlds, int version) {
+        String[] list = Arrays.copyOf(tlds, tlds.length + 1);
+        list[tlds.length] = "V" + version;
+        server.setList(FIRST_VERSION + version, list);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * @return <code>count</code> distinct TLDs made of letters, all starting with L
+     */
+    private static String[] tlds(int count) {
+        return letters("L", count);
+    }
+
+    /**
+     * @return <code>count</code> distinct TLDs that {@link #tlds(int)} never returns
+     */
+    private static String[] unknownTlds(int count) {
+        return letters("N", count);
+    }
+
+    private static String[] letters(String prefix, int count) {
+        String[] tlds = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder tld = new StringBuilder(prefix);
+            int n = i;
+            do {
+                tld.append((char) ('A' + n % 26));
+                n /= 26;
+            } while (n > 0);
+            tlds[i] = tld.toString();
+        }
+        return tlds;
+    }
+
+    private static String[] names(String[] tlds) {
+        String[] names = new String[tlds.length];
+        for (int i = 0; i < tlds.length; i++) {
+            names[i] = "www.example." + tlds[i].toLowerCase();
+        }
+        return names;
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("tlds-alpha-by-domain", ".txt");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,251 @@
+package org.icann.tld;
+
+// Copyright 2006 ICANN. All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification,
+// are permitted provided that the following conditions are met:
+//
+//    1. Redistributions of source code must retain the above copyright notice, this list of conditions
+//       and the following disclaimer.
+//    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+//       and the following disclaimer in the documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY ICANN ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+// DISCLAIMED. IN NO EVENT SHALL THE FREEBSD PROJECT OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY,
+// OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+//  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+//  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+//  OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+//  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+//
+// The views and conclusions contained in the software and documentation are those of the authors
+// and should not be interpreted as representing official policies,
+// either expressed or implied, of ICANN.
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.commons.io.*;
+import org.testng.annotations.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TldVerifyServerTest {
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    @Test
+    public void testLineProtocol() throws Exception {
+        TldVerifyServer server = newServer();
+        try {
+            Socket socket = connect(server);
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            out.write("icann.com\nexample.sss\r\n  www.icann.AERO.  \nexample.\u0440\u0444\n\n#version\n#HEALTH\n#NOPE\n#QUIT\n");
+            out.flush();
+            assertThat(in.readLine()).isEqualTo("true");
+            assertThat(in.readLine()).isEqualTo("false");
+            assertThat(in.readLine()).isEqualTo("true");
+            assertThat(in.readLine()).isEqualTo("true");
+            assertThat(in.readLine()).isEqualTo("ERROR empty domain name");
+            assertThat(in.readLine()).isEqualTo("2006120301");
+            assertThat(in.readLine()).isEqualTo("UP");
+            assertThat(in.readLine()).isEqualTo("ERROR unknown command");
+            assertThat(in.readLine()).isNull();
+            assertThat(server.getRequests()).isEqualTo(9);
+            socket.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testPipelinedBatch() throws Exception {
+        TldVerifyServer server = newServer();
+        try {
+            final Socket socket = connect(server);
+            final int names = 50000;
+            Future<?> writer = Executors.newSingleThreadExecutor().submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "US-ASCII"));
+                    for (int i = 0; i < names; i++) {
+                        out.write(i % 2 == 0 ? "host" + i + ".com\n" : "host" + i + ".sss\n");
+                    }
+                    out.flush();
+                    return null;
+                }
+            });
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            for (int i = 0; i < names; i++) {
+                assertThat(in.readLine()).isEqualTo(i % 2 == 0 ? "true" : "false");
+            }
+            writer.get();
+            socket.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testLineTooLong() throws Exception {
+        TldVerifyServer server = newServer();
+        try {
+            Socket socket = connect(server);
+            socket.getOutputStream().write(new byte[TldVerifyServer.MAX_LINE_LENGTH + 1]);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            assertThat(in.readLine()).isEqualTo("ERROR line too long");
+            assertThat(in.readLine()).isNull();
+            socket.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        TldVerifyServer server = newServer();
+        try {
+            String base = "http://127.0.0.1:" + server.getHttpAddress().getPort();
+            assertThat(get(base + "/verify?domain=icann.com&domain=example.sss&domain=a%22b.aero"))
+                    .isEqualTo("{\"version\":2006120301,\"results\":[{\"domain\":\"icann.com\",\"valid\":true},"
+                            + "{\"domain\":\"example.sss\",\"valid\":false},{\"domain\":\"a\\\"b.aero\",\"valid\":true}]}");
+            assertThat(get(base + "/version")).isEqualTo("{\"version\":2006120301}");
+            assertThat(get(base + "/health")).startsWith("{\"status\":\"UP\",\"version\":2006120301,\"tlds\":3,");
+
+            HttpURLConnection post = (HttpURLConnection) new URL(base + "/verify").openConnection();
+            post.setDoOutput(true);
+            post.getOutputStream().write("icann.com\n\nexample.sss\n".getBytes("UTF-8"));
+            assertThat(post.getResponseCode()).isEqualTo(200);
+            assertThat(IOUtils.toString(post.getInputStream(), "UTF-8")).isEqualTo("{\"version\":2006120301,\"results\":["
+                    + "{\"domain\":\"icann.com\",\"valid\":true},{\"domain\":\"example.sss\",\"valid\":false}]}");
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHttpRequestTooLarge() throws Exception {
+        TldVerifyServer server = newServer();
+        try {
+            String url = "http://127.0.0.1:" + server.getHttpAddress().getPort() + "/verify";
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < TldVerifyServer.MAX_DOMAIN_NAMES; i++) {
+                names.append("host").append(i).append(".com\n");
+            }
+            assertThat(post(url, names.toString().getBytes("US-ASCII")).getResponseCode()).isEqualTo(200);
+            names.append("one.more.com\n");
+            assertThat(post(url, names.toString().getBytes("US-ASCII")).getResponseCode()).isEqualTo(413);
+
+            byte[] body = new byte[TldVerifyServer.MAX_BODY_LENGTH + 1];
+            Arrays.fill(body, (byte) 'a');
+            assertThat(post(url, body).getResponseCode()).isEqualTo(413);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testRefreshLifecycle() throws Exception {
+        StubHttpServer http = new StubHttpServer();
+        http.setList(2006120301L, "AERO", "COM");
+        File file = new File(System.getProperty("java.io.tmpdir"), "tlds-" + System.nanoTime() + ".txt");
+        file.deleteOnExit();
+        TldVerify verify = http.newTldVerify();
+        TldVerifyServer server = new TldVerifyServer(verify);
+        try {
+            server.setRefreshScheduler(new TldRefreshScheduler(verify, file.getPath(), 1, TimeUnit.HOURS));
+            server.start(null, LOOPBACK);
+            assertThat(server.getLineAddress()).isNull();
+            String health = "http://127.0.0.1:" + server.getHttpAddress().getPort() + "/health";
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!server.isUp() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(get(health)).contains("\"status\":\"UP\"").contains("\"refreshFailures\":0");
+        } finally {
+            server.close();
+            http.stop();
+        }
+    }
+
+    @Test
+    public void testUpWithBundledListWithoutCacheFileOrNetwork() throws Exception {
+        assertThat(new File(TldVerify.TLD_CACHE_FILE).exists()).isFalse();
+        StubHttpServer http = new StubHttpServer();
+        http.setStatus(503);
+        TldVerifyServer server = new TldVerifyServer(http.newTldVerify());
+        try {
+            server.start(LOOPBACK, LOOPBACK);
+            assertThat(server.isUp()).isTrue();
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:"
+                    + server.getHttpAddress().getPort() + "/health").openConnection();
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            Socket socket = connect(server);
+            socket.getOutputStream().write("icann.com\nexample.sss\n".getBytes("US-ASCII"));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            assertThat(in.readLine()).isEqualTo("true");
+            assertThat(in.readLine()).isEqualTo("false");
+            socket.close();
+            assertThat(http.getListRequests()).isEqualTo(0);
+        } finally {
+            server.close();
+            http.stop();
+        }
+    }
+
+    @Test
+    public void testDownUntilLoaded() throws Exception {
+        StubHttpServer http = new StubHttpServer();
+        http.setStatus(503);
+        TldVerify verify = http.newTldVerify();
+        verify.setBundledTldList(false);
+        TldVerifyServer server = new TldVerifyServer(verify);
+        try {
+            server.start(LOOPBACK, LOOPBACK);
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:"
+                    + server.getHttpAddress().getPort() + "/health").openConnection();
+            assertThat(connection.getResponseCode()).isEqualTo(503);
+            Socket socket = connect(server);
+            socket.getOutputStream().write("icann.com\n#HEALTH\n".getBytes("US-ASCII"));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            assertThat(in.readLine()).isEqualTo("ERROR no TLD list loaded");
+            assertThat(in.readLine()).isEqualTo("DOWN");
+            socket.close();
+        } finally {
+            server.close();
+            http.stop();
+        }
+    }
+
+    private static TldVerifyServer newServer() throws Exception {
+        TldVerifyServer server = new TldVerifyServer(TldVerifyTest.newOfflineTldVerify("COM", "AERO", "XN--P1AI"));
+        server.setSelectorThreads(2);
+        server.start(LOOPBACK, LOOPBACK);
+        return server;
+    }
+
+    private static Socket connect(TldVerifyServer server) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLineAddress().getPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private static HttpURLConnection post(String url, byte[] body) throws IOException {
+        HttpURLConnection post = (HttpURLConnection) new URL(url).openConnection();
+        post.setDoOutput(true);
+        post.getOutputStream().write(body);
+        return post;
+    }
+
+    private static String get(String url) throws IOException {
+        InputStream in = new URL(url).openStream();
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
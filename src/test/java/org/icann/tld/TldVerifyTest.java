@@ -26,10 +26,16 @@ package org.icann.tld;
 
 
 import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import org.apache.commons.io.*;
 import org.testng.annotations.Test;
 import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
 
 
 public class TldVerifyTest {
@@ -63,5 +69,872 @@ public class TldVerifyTest {
         assertThat(tldVerify.verifyTld("SS")).isFalse();
     }
 
+    @Test
+    public void testRefreshTldDBIsConditional() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            File file = new File(System.getProperty("java.io.tmpdir"), "tlds-" + System.nanoTime() + ".txt");
+            file.deleteOnExit();
+            TldVerify tldVerify = server.newTldVerify();
+            tldVerify.refreshTldDB(file.getPath());
+            assertThat(FileUtils.readFileToString(file, "US-ASCII")).contains("AERO");
+            assertThat(tldVerify.verifyTldOffline("icann.com")).isTrue();
+            assertThat(server.getMd5Requests()).isEqualTo(1);
+
+            tldVerify.refreshTldDB(file.getPath());
+            assertThat(server.getNotModified()).isEqualTo(1);
+            assertThat(server.getMd5Requests()).isEqualTo(1);
+
+            server.setList("# Version 2006120301, Last Updated Mon Dec  4 09:07:02 2006 UTC\nAERO\nCOM\n", "\"other\"");
+            tldVerify.refreshTldDB(file.getPath());
+            assertThat(server.getListRequests()).isEqualTo(3);
+            assertThat(server.getMd5Requests()).isEqualTo(1);
+
+            server.setList(2006120302L, "AERO", "COM", "ORG");
+            tldVerify.refreshTldDB(file.getPath());
+            assertThat(server.getMd5Requests()).isEqualTo(2);
+            assertThat(tldVerify.verifyTldOffline("icann.org")).isTrue();
+            assertThat(FileUtils.readFileToString(file, "US-ASCII")).contains("ORG");
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRefreshTldDBRejectsBadDigest() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            server.corruptDigest();
+            File file = new File(System.getProperty("java.io.tmpdir"), "tlds-" + System.nanoTime() + ".txt");
+            TldVerify tldVerify = server.newTldVerify();
+            try {
+                tldVerify.refreshTldDB(file.getPath());
+                fail("Expected the digest check to fail");
+            } catch (TLDVerifyException e) {
+                assertThat(file.exists()).isFalse();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRefreshTldDBWithSha256() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            File directory = new File(System.getProperty("java.io.tmpdir"), "tlds-" + System.nanoTime());
+            assertThat(directory.mkdir()).isTrue();
+            File file = new File(directory, "tlds-alpha-by-domain.txt");
+            TldVerify tldVerify = new TldVerify(server.getListUrl(), server.getSha256Url(), TldVerify.DIGEST_SHA256);
+            try {
+                tldVerify.refreshTldDB(file.getPath());
+                assertThat(tldVerify.verifyTldOffline("icann.aero")).isTrue();
+                assertThat(directory.list()).containsOnly(file.getName());
+                assertThat(FileUtils.readFileToString(file, "US-ASCII"))
+                        .isEqualTo("# Version 2006120301, Last Updated Mon Dec  4 09:07:02 2006 UTC\nAERO\nCOM\n");
+
+                server.setList(2006120302L, "AERO", "COM", "ORG");
+                server.corruptDigest();
+                try {
+                    tldVerify.refreshTldDB(file.getPath());
+                    fail("Expected the digest check to fail");
+                } catch (TLDVerifyException e) {
+                    assertThat(tldVerify.verifyTldOffline("icann.org")).isFalse();
+                    assertThat(FileUtils.readFileToString(file, "US-ASCII")).doesNotContain("ORG");
+                }
+            } finally {
+                FileUtils.deleteDirectory(directory);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownDigestAlgorithm() throws Exception {
+        new TldVerify("http://127.0.0.1/tlds.txt", "http://127.0.0.1/tlds.txt.digest", "NO-SUCH-DIGEST");
+    }
+
+    @Test
+    public void testVerifyTldOfflineBatch() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("AERO", "COM", "ORG");
+        tldVerify.setParallelThreshold(1);
+        boolean[] results = tldVerify.verifyTldOffline(new CharSequence[]{"icann.org", "AERO.", "example.sss", "", null, new StringBuilder("a.com")});
+        assertThat(results).isEqualTo(new boolean[]{true, true, false, false, false, true});
+    }
+
+    @Test
+    public void testVerifyTldOfflineBatchInParallel() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("AERO", "COM", "ORG");
+        List<String> domains = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            domains.add(i % 3 == 0 ? "host" + i + ".invalid" : "host" + i + ".com");
+        }
+        for (int threshold : new int[]{1, 100, 100000}) {
+            tldVerify.setParallelThreshold(threshold);
+            BitSet results = tldVerify.verifyTldOffline(domains);
+            for (int i = 0; i < domains.size(); i++) {
+                assertThat(results.get(i)).isEqualTo(i % 3 != 0);
+            }
+            boolean[] array = tldVerify.verifyTldOffline(domains.toArray(new CharSequence[domains.size()]));
+            for (int i = 0; i < domains.size(); i++) {
+                assertThat(array[i]).isEqualTo(i % 3 != 0);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentRefreshAndQuery() throws Exception {
+        final TldVerify tldVerify = newOfflineTldVerify("COM", "V0");
+        final List<File> files = new ArrayList<File>();
+        for (int version = 1; version <= 50; version++) {
+            files.add(writeCacheFile(2006120301L + version, "COM", "V" + version));
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger violations = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> readers = new ArrayList<Future<?>>();
+        for (int i = 0; i < 8; i++) {
+            readers.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    CharSequence[] names = new CharSequence[52];
+                    for (int version = 0; version <= 50; version++) {
+                        names[version] = "V" + version;
+                    }
+                    names[51] = "icann.com";
+                    int lastVersion = 0;
+                    while (!done.get()) {
+                        boolean[] results = tldVerify.verifyTldOffline(names);
+                        int version = -1;
+                        int found = 0;
+                        for (int i = 0; i <= 50; i++) {
+                            if (results[i]) {
+                                version = i;
+                                found++;
+                            }
+                        }
+                        if (!results[51] || found != 1 || version < lastVersion) {
+                            violations.incrementAndGet();
+                        }
+                        lastVersion = version;
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (File file : files) {
+            tldVerify.loadTldDB(file.getPath());
+        }
+        done.set(true);
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+        assertThat(violations.get()).isEqualTo(0);
+        assertThat(tldVerify.verifyTldOffline("V50")).isTrue();
+        assertThat(tldVerify.verifyTldOffline("V49")).isFalse();
+        tldVerify.loadTldDB(files.get(0).getPath());
+        assertThat(tldVerify.verifyTldOffline("V50")).isTrue();
+    }
+
+    @Test
+    public void testVerifyTldAsync() throws Exception {
+        StubDnsServer server = new StubDnsServer("com", "aero");
+        TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            assertThat(tldVerify.verifyTldAsync("icann.com").get()).isTrue();
+            assertThat(tldVerify.verifyTldAsync("example.sss").get()).isFalse();
+            assertThat(tldVerify.verifyTldAsync(".").get()).isFalse();
+            assertThat(tldVerify.verifyTld("AERO.")).isTrue();
+            assertThat(tldVerify.verifyTld("SS")).isFalse();
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldAsyncBatchKeepsQueriesInFlight() throws Exception {
+        StubDnsServer server = new StubDnsServer();
+        server.setDelayMillis(50);
+        TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            tldVerify.setMaxDnsQueriesInFlight(4);
+            List<String> domains = new ArrayList<String>();
+            for (int i = 0; i < 20; i++) {
+                if (i % 2 == 0) {
+                    server.addTld("tld" + i);
+                }
+                domains.add("a.tld" + i);
+                domains.add("b.TLD" + i + ".");
+            }
+            long start = System.nanoTime();
+            Map<String, Boolean> results = tldVerify.verifyTldAsync(domains).get();
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            assertThat(new ArrayList<String>(results.keySet())).isEqualTo(domains);
+            for (int i = 0; i < 20; i++) {
+                assertThat(results.get("a.tld" + i)).isEqualTo(i % 2 == 0);
+                assertThat(results.get("b.TLD" + i + ".")).isEqualTo(i % 2 == 0);
+            }
+            assertThat(server.getQueries()).isEqualTo(20);
+            assertThat(server.getMaxOutstanding()).isLessThanOrEqualTo(4);
+            assertThat(server.getMaxOutstanding()).isGreaterThan(1);
+            assertThat(elapsedMillis).isLessThan(20 * 50);
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldAsyncRandomizesIdsAndPorts() throws Exception {
+        StubDnsServer server = new StubDnsServer();
+        TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            List<String> domains = new ArrayList<String>();
+            for (int i = 0; i < 6000; i++) {
+                domains.add("a.tld" + i);
+            }
+            assertThat(tldVerify.verifyTldAsync(domains).get().containsValue(true)).isFalse();
+            assertThat(server.getClientPorts().size()).isGreaterThan(4);
+            List<Integer> ids = server.getQueryIds();
+            assertThat(ids.size()).isEqualTo(6000);
+            int sequential = 0;
+            for (int i = 1; i < ids.size(); i++) {
+                if (ids.get(i) == ((ids.get(i - 1) + 1) & 0xFFFF)) {
+                    sequential++;
+                }
+            }
+            assertThat(sequential).isLessThan(10);
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldAsyncTimesOut() throws Exception {
+        StubDnsServer server = new StubDnsServer("com");
+        server.setDropRate(1);
+        TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            tldVerify.setDnsTimeout(100, TimeUnit.MILLISECONDS);
+            try {
+                tldVerify.verifyTldAsync("icann.com").get();
+                fail("Expected the query to time out");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(SocketTimeoutException.class);
+            }
+            assertThat(tldVerify.verifyTld("icann.com")).isFalse();
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldAsyncFailsQueuedQueriesWhenSendsFail() throws Exception {
+        final TldVerify tldVerify = new TldVerify();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // sending to the broadcast address fails at once, like sending to an unroutable one
+            tldVerify.setDnsServer(new InetSocketAddress("255.255.255.255", 53));
+            tldVerify.setMaxDnsQueriesInFlight(1);
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Throwable>> batches = new ArrayList<Future<Throwable>>();
+            for (int thread = 0; thread < 8; thread++) {
+                final List<String> domains = new ArrayList<String>();
+                for (int i = 0; i < 2000; i++) {
+                    domains.add("a.t" + thread + "x" + i);
+                }
+                batches.add(executor.submit(new Callable<Throwable>() {
+                    public Throwable call() throws Exception {
+                        start.await();
+                        try {
+                            tldVerify.verifyTldAsync(domains).get();
+                            return null;
+                        } catch (ExecutionException e) {
+                            return e.getCause();
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Throwable> batch : batches) {
+                assertThat(batch.get(30, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+            }
+        } finally {
+            executor.shutdown();
+            tldVerify.close();
+        }
+    }
+
+    @Test
+    public void testVerifyTldCachesAnswersForTheirTtl() throws Exception {
+        StubDnsServer server = new StubDnsServer("com");
+        server.setTtl(3600, 1);
+        TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            for (int i = 0; i < 10; i++) {
+                assertThat(tldVerify.verifyTld("host" + i + ".COM")).isTrue();
+                assertThat(tldVerify.verifyTld("host" + i + ".sss")).isFalse();
+            }
+            assertThat(server.getQueries()).isEqualTo(2);
+            assertThat(tldVerify.getDnsCacheHits()).isEqualTo(18);
+            assertThat(tldVerify.getDnsCacheMisses()).isEqualTo(2);
+
+            Thread.sleep(1100);
+            assertThat(tldVerify.verifyTld("icann.com")).isTrue();
+            assertThat(tldVerify.verifyTld("icann.sss")).isFalse();
+            assertThat(server.getQueries()).isEqualTo(3);
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testWarmUpDnsCache() throws Exception {
+        StubDnsServer server = new StubDnsServer("com", "org");
+        TldVerify tldVerify = newOfflineTldVerify("COM", "ORG", "AERO");
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            tldVerify.warmUpDnsCache().get();
+            assertThat(server.getQueries()).isEqualTo(3);
+            assertThat(tldVerify.verifyTld("icann.org")).isTrue();
+            assertThat(tldVerify.verifyTld("www.aero")).isFalse();
+            assertThat(server.getQueries()).isEqualTo(3);
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldOfflineAgainstSeveralFiles() throws Exception {
+        File older = writeCacheFile(2006120301L, "AERO");
+        File newer = writeCacheFile(2006120302L, "COM");
+        TldVerify tldVerify = new TldVerify();
+        for (int i = 0; i < 3; i++) {
+            assertThat(tldVerify.verifyTldOffline("www.icann.aero", older.getPath())).isTrue();
+            assertThat(tldVerify.verifyTldOffline("www.icann.com", older.getPath())).isFalse();
+            assertThat(tldVerify.verifyTldOffline("www.icann.com", newer.getPath())).isTrue();
+            assertThat(tldVerify.verifyTldOffline("www.icann.aero", newer.getPath())).isFalse();
+        }
+        // only the newest file becomes the default database
+        assertThat(tldVerify.verifyTldOffline("www.icann.com")).isTrue();
+
+        // a changed file is read again
+        FileUtils.writeStringToFile(older, "# Version 2006120303, Last Updated Mon Dec  4 09:07:02 2006 UTC\nAERO\nNET\n", "US-ASCII");
+        older.setLastModified(older.lastModified() + 2000);
+        assertThat(tldVerify.verifyTldOffline("www.icann.net", older.getPath())).isTrue();
+        assertThat(tldVerify.verifyTldOffline("www.icann.net")).isTrue();
+    }
+
+    @Test
+    public void testVerifyTldOfflineInternationalized() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("COM", "XN--P1AI");
+        assertThat(tldVerify.verifyTldOffline("example.\u0440\u0444")).isTrue();
+        assertThat(tldVerify.verifyTldOffline("\u043f\u0440\u0438\u043c\u0435\u0440\u3002\u0440\u0444\u3002")).isTrue();
+        assertThat(tldVerify.verifyTldOffline("example.XN--P1AI")).isTrue();
+        assertThat(tldVerify.verifyTldOffline("\u00e9xample.com")).isTrue();
+        assertThat(tldVerify.verifyTldOffline("example.\u00e9")).isFalse();
+        char[] name = "example.\u0440\u0444".toCharArray();
+        assertThat(tldVerify.verifyTldOffline(name, 0, name.length)).isTrue();
+        assertThat(tldVerify.verifyTldOffline(new CharSequence[]{"a.\u0440\u0444", "a.\u0440"})).isEqualTo(new boolean[]{true, false});
+    }
+
+    @Test
+    public void testVerifyDomainOffline() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("COM", "UK");
+        DomainInfo info = tldVerify.verifyDomainOffline("www.icann.co.uk");
+        assertThat(info.isValidTld()).isTrue();
+        assertThat(info.getPublicSuffix()).isEqualTo("uk");
+        assertThat(info.getRegistrableDomain()).isEqualTo("co.uk");
+
+        tldVerify.setPublicSuffixList(PublicSuffixList.read(new StringReader(PublicSuffixListTest.RULES), true));
+        info = tldVerify.verifyDomainOffline("www.icann.co.uk.");
+        assertThat(info.getDomainName()).isEqualTo("www.icann.co.uk.");
+        assertThat(info.getPublicSuffix()).isEqualTo("co.uk");
+        assertThat(info.getRegistrableDomain()).isEqualTo("icann.co.uk");
+        info = tldVerify.verifyDomainOffline("b.ck");
+        assertThat(info.isValidTld()).isFalse();
+        assertThat(info.getRegistrableDomain()).isNull();
+    }
+
+    @Test
+    public void testVerifyTldOfflineBytes() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("COM", "ORG", "XN--P1AI");
+        byte[] line = "www.icann.org. 3600 IN A".getBytes("US-ASCII");
+        assertThat(tldVerify.verifyTldOffline(line, 0, 14)).isTrue();
+        assertThat(tldVerify.verifyTldOffline(line, 15, 4)).isFalse();
+        assertThat(tldVerify.verifyTldOffline(ByteBuffer.wrap("example.xn--p1ai".getBytes("US-ASCII")))).isTrue();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(64);
+        direct.put("junk example.Com".getBytes("US-ASCII")).flip().position(5);
+        assertThat(tldVerify.verifyTldOffline(direct)).isTrue();
+        assertThat(direct.position()).isEqualTo(5);
+        assertThat(tldVerify.verifyTldOffline(ByteBuffer.wrap(new byte[]{'a', '.', (byte) 0xC3, (byte) 0xA9}))).isFalse();
+    }
+
+    @Test
+    public void testVerifyTldOfflineWireFormat() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("COM", "ORG");
+        byte[] question = {0, 0, 5, 'i', 'c', 'a', 'n', 'n', 3, 'o', 'r', 'g', 0, 0, 1, 0, 1};
+        assertThat(tldVerify.verifyTldOfflineWireFormat(question, 2, question.length - 2)).isTrue();
+        assertThat(tldVerify.verifyTldOfflineWireFormat(question, 2, 6)).isFalse();
+        ByteBuffer buffer = ByteBuffer.wrap(question, 2, question.length - 2);
+        assertThat(tldVerify.verifyTldOfflineWireFormat(buffer)).isTrue();
+        assertThat(buffer.position()).isEqualTo(2);
+    }
+
+    @Test
+    public void testVerifyTldOfflineBytesDoesNotAllocate() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("COM", "ORG", "NET");
+        byte[] ascii = "www.icann.org".getBytes("US-ASCII");
+        ByteBuffer direct = ByteBuffer.allocateDirect(ascii.length);
+        direct.put(ascii).flip();
+        byte[] wire = {3, 'w', 'w', 'w', 5, 'i', 'c', 'a', 'n', 'n', 3, 'o', 'r', 'g', 0};
+        ByteBuffer wireBuffer = ByteBuffer.wrap(wire);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int calls = 100000;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            long after = threads.getThreadAllocatedBytes(thread);
+            long overhead = after - before;
+            before = threads.getThreadAllocatedBytes(thread);
+            int valid = 0;
+            for (int i = 0; i < calls; i++) {
+                if (tldVerify.verifyTldOffline(ascii, 0, ascii.length)) {
+                    valid++;
+                }
+                if (tldVerify.verifyTldOffline(direct)) {
+                    valid++;
+                }
+                if (tldVerify.verifyTldOfflineWireFormat(wire, 0, wire.length)) {
+                    valid++;
+                }
+                if (tldVerify.verifyTldOfflineWireFormat(wireBuffer)) {
+                    valid++;
+                }
+            }
+            after = threads.getThreadAllocatedBytes(thread);
+            assertThat(valid).isEqualTo(4 * calls);
+            if (round == 2) {
+                assertThat(after - before - overhead).isLessThan(calls);
+            }
+        }
+    }
+
+    @Test
+    public void testVerifyTldHybrid() throws Exception {
+        StubDnsServer server = new StubDnsServer("com", "aero");
+        TldVerify tldVerify = newOfflineTldVerify("COM");
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            assertThat(tldVerify.verifyTldHybrid("icann.com")).isTrue();
+            assertThat(server.getQueries()).isEqualTo(0);
+            assertThat(tldVerify.verifyTldHybrid("icann.aero")).isTrue();
+            assertThat(tldVerify.verifyTldHybrid("www.icann.AERO.")).isTrue();
+            assertThat(server.getQueries()).isEqualTo(1);
+            assertThat(tldVerify.getConfirmedTlds()).containsOnly("AERO");
+            assertThat(tldVerify.verifyTldHybrid("example.sss")).isFalse();
+            assertThat(tldVerify.verifyTldHybrid(".")).isFalse();
+
+            tldVerify.loadTldDB(writeCacheFile(2006120302L, "COM", "AERO").getPath());
+            assertThat(tldVerify.getConfirmedTlds()).isEmpty();
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldHybridCircuitBreaker() throws Exception {
+        StubDnsServer server = new StubDnsServer("com", "aero");
+        server.setDropRate(1);
+        TldVerify tldVerify = newOfflineTldVerify("COM");
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            tldVerify.setDnsTimeout(100, TimeUnit.MILLISECONDS);
+            tldVerify.setHybridDnsTimeout(50, TimeUnit.MILLISECONDS);
+            tldVerify.setCircuitBreaker(2, 1, TimeUnit.HOURS);
+            tldVerify.setFallbackPolicy(FallbackPolicy.FAIL_OPEN);
+            assertThat(tldVerify.verifyTldHybrid("icann.aero")).isTrue();
+            assertThat(tldVerify.isCircuitBreakerOpen()).isFalse();
+            assertThat(tldVerify.verifyTldHybrid("icann.sss")).isTrue();
+            assertThat(tldVerify.isCircuitBreakerOpen()).isTrue();
+            int queries = server.getQueries();
 
-}
\ No newline at end of file
+            tldVerify.setFallbackPolicy(FallbackPolicy.FAIL_CLOSED);
+            assertThat(tldVerify.verifyTldHybrid("icann.aero")).isFalse();
+            assertThat(tldVerify.verifyTldHybrid("icann.com")).isTrue();
+            assertThat(server.getQueries()).isEqualTo(queries);
+            assertThat(tldVerify.getConfirmedTlds()).isEmpty();
+        } finally {
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldHybridInterruptedTrialCall() throws Exception {
+        StubDnsServer server = new StubDnsServer("com", "aero", "org");
+        server.setDropRate(1);
+        TldVerify tldVerify = newOfflineTldVerify("COM");
+        try {
+            tldVerify.setDnsServer(server.getAddress());
+            tldVerify.setDnsTimeout(500, TimeUnit.MILLISECONDS);
+            tldVerify.setHybridDnsTimeout(200, TimeUnit.MILLISECONDS);
+            tldVerify.setCircuitBreaker(1, 20, TimeUnit.MILLISECONDS);
+            assertThat(tldVerify.verifyTldHybrid("icann.aero")).isFalse();
+            assertThat(tldVerify.isCircuitBreakerOpen()).isTrue();
+            Thread.sleep(150);
+
+            server.setDropRate(0);
+            server.setDelayMillis(1000);
+            Thread.currentThread().interrupt();
+            assertThat(tldVerify.verifyTldHybrid("icann.aero")).isFalse();
+            assertThat(Thread.interrupted()).isTrue();
+            server.setDelayMillis(0);
+            assertThat(tldVerify.verifyTldHybrid("icann.org")).isTrue();
+            assertThat(tldVerify.isCircuitBreakerOpen()).isFalse();
+        } finally {
+            Thread.interrupted();
+            tldVerify.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testTldListListener() throws Exception {
+        final List<TldListChange> changes = new ArrayList<TldListChange>();
+        TldVerify tldVerify = new TldVerify();
+        tldVerify.addTldListListener(new TldListListener() {
+            public void tldListChanged(TldListChange change) {
+                changes.add(change);
+            }
+        });
+        tldVerify.addTldListListener(new TldListListener() {
+            public void tldListChanged(TldListChange change) {
+                throw new IllegalStateException("listener failure is ignored");
+            }
+        });
+        tldVerify.loadTldDB(writeCacheFile(1L, "AERO", "BIZ", "COM").getPath());
+        tldVerify.loadTldDB(writeCacheFile(1L, "AERO").getPath());
+        tldVerify.loadTldDB(writeCacheFile(2L, "AERO", "CAT", "COM").getPath());
+        assertThat(changes).hasSize(2);
+        assertThat(changes.get(0).getOldVersion()).isEqualTo(-1L);
+        assertThat(changes.get(0).getAdded()).containsExactly("AERO", "BIZ", "COM");
+        assertThat(changes.get(1).getOldVersion()).isEqualTo(1L);
+        assertThat(changes.get(1).getNewVersion()).isEqualTo(2L);
+        assertThat(changes.get(1).getAdded()).containsExactly("CAT");
+        assertThat(changes.get(1).getRemoved()).containsExactly("BIZ");
+    }
+
+    @Test
+    public void testTldListListenerOrderWithConcurrentLoads() throws Exception {
+        final List<TldListChange> changes = Collections.synchronizedList(new ArrayList<TldListChange>());
+        final TldVerify tldVerify = new TldVerify();
+        tldVerify.addTldListListener(new TldListListener() {
+            public void tldListChanged(TldListChange change) {
+                changes.add(change);
+                Thread.yield();
+            }
+        });
+        final List<File> files = new ArrayList<File>();
+        for (int i = 1; i <= 100; i++) {
+            files.add(writeCacheFile(i, "COM", "V" + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> loads = new ArrayList<Future<?>>();
+            for (final File file : files) {
+                loads.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        tldVerify.loadTldDB(file.getPath());
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> load : loads) {
+                load.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Set<String> tlds = new TreeSet<String>();
+        long version = -1;
+        for (TldListChange change : changes) {
+            assertThat(change.getOldVersion()).isEqualTo(version);
+            assertThat(change.getNewVersion()).isGreaterThan(version);
+            version = change.getNewVersion();
+            tlds.removeAll(change.getRemoved());
+            tlds.addAll(change.getAdded());
+        }
+        assertThat(version).isEqualTo(100L);
+        assertThat(tlds).containsOnly("COM", "V100");
+    }
+
+    @Test
+    public void testVerifyTldWithSeveralDnsServers() throws Exception {
+        StubDnsServer slow = new StubDnsServer("com");
+        StubDnsServer fast = new StubDnsServer("com");
+        slow.setDelayMillis(1000);
+        TldVerify tldVerify = new TldVerify();
+        try {
+            tldVerify.setDnsServers(Arrays.asList(slow.getAddress(), fast.getAddress()));
+            tldVerify.setDnsHedgePercentile(0.9);
+            long start = System.nanoTime();
+            assertThat(tldVerify.verifyTld("icann.com")).isTrue();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(900);
+            assertThat(fast.getQueries()).isEqualTo(1);
+        } finally {
+            tldVerify.close();
+            slow.stop();
+            fast.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldOfflineUsesBundledTldList() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        try {
+            server.setStatus(503);
+            TldVerify tldVerify = server.newTldVerify();
+            assertThat(tldVerify.verifyTldOffline("icann.org")).isTrue();
+            assertThat(tldVerify.verifyTldOffline("example.xn--p1ai")).isTrue();
+            assertThat(tldVerify.verifyTldOffline("example.sss")).isFalse();
+            assertThat(tldVerify.getTldListVersion()).isGreaterThanOrEqualTo(2024040200L);
+            assertThat(server.getListRequests()).isEqualTo(0);
+
+            File file = new File(System.getProperty("java.io.tmpdir"), "tlds-" + System.nanoTime() + ".txt");
+            file.deleteOnExit();
+            server.setStatus(200);
+            server.setList(2006120301L, "AERO", "SSS");
+            tldVerify.refreshTldDB(file.getPath());
+            assertThat(tldVerify.verifyTldOffline("example.sss")).isFalse();
+
+            server.setList(2099010100L, "AERO", "SSS");
+            tldVerify.refreshTldDB(file.getPath());
+            assertThat(tldVerify.getTldListVersion()).isEqualTo(2099010100L);
+            assertThat(tldVerify.verifyTldOffline("example.sss")).isTrue();
+            assertThat(tldVerify.verifyTldOffline("icann.org")).isFalse();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerifyTldOfflineWithoutBundledTldList() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            TldVerify tldVerify = server.newTldVerify();
+            tldVerify.setBundledTldList(false);
+            assertThat(tldVerify.verifyTldOffline("icann.com")).isTrue();
+            assertThat(tldVerify.verifyTldOffline("icann.org")).isFalse();
+            assertThat(server.getListRequests()).isEqualTo(1);
+        } finally {
+            server.stop();
+            FileUtils.deleteQuietly(new File(TldVerify.TLD_CACHE_FILE));
+        }
+    }
+
+    @Test
+    public void testConcurrentRefreshesShareOneDownload() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            server.setDelayMillis(300);
+            final File file = new File(System.getProperty("java.io.tmpdir"), "tlds-" + System.nanoTime() + ".txt");
+            file.deleteOnExit();
+            final TldVerify tldVerify = server.newTldVerify();
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> refreshes = new ArrayList<Future<?>>();
+            for (int i = 0; i < 8; i++) {
+                refreshes.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        tldVerify.refreshTldDB(file.getPath());
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> refresh : refreshes) {
+                refresh.get();
+            }
+            assertThat(server.getListRequests()).isEqualTo(1);
+            assertThat(tldVerify.isRefreshing()).isFalse();
+            assertThat(tldVerify.verifyTldOffline("icann.com")).isTrue();
+
+            server.setStatus(503);
+            try {
+                tldVerify.refreshTldDB(file.getPath());
+                fail("Expected the failed download to be reported");
+            } catch (TLDVerifyException e) {
+                assertThat(server.getListRequests()).isEqualTo(2);
+            }
+            assertThat(tldVerify.isRefreshing()).isFalse();
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testColdVerificationsWaitForOneDownload() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            server.setList(2006120301L, "AERO", "COM");
+            server.setDelayMillis(300);
+            final TldVerify tldVerify = server.newTldVerify();
+            tldVerify.setBundledTldList(false);
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> verifications = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 8; i++) {
+                verifications.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        start.await();
+                        return tldVerify.verifyTldOffline("icann.com");
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> verification : verifications) {
+                assertThat(verification.get()).isTrue();
+            }
+            assertThat(server.getListRequests()).isEqualTo(1);
+
+            final TldVerify waiting = server.newTldVerify();
+            waiting.setBundledTldList(false);
+            waiting.setRefreshWaitTimeout(50, TimeUnit.MILLISECONDS);
+            server.setDelayMillis(1000);
+            Future<Boolean> leader = executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return waiting.verifyTldOffline("icann.com");
+                }
+            });
+            while (!waiting.isRefreshing()) {
+                Thread.sleep(10);
+            }
+            try {
+                waiting.verifyTldOffline("icann.com");
+                fail("Expected the wait for the download to time out");
+            } catch (TLDVerifyException e) {
+                assertThat(e.getMessage()).contains("Timed out");
+            }
+            assertThat(leader.get()).isTrue();
+            assertThat(server.getListRequests()).isEqualTo(2);
+        } finally {
+            executor.shutdown();
+            server.stop();
+            FileUtils.deleteQuietly(new File(TldVerify.TLD_CACHE_FILE));
+        }
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        StubHttpServer server = new StubHttpServer();
+        File cacheFile = new File(TldVerify.TLD_CACHE_FILE);
+        try {
+            server.setList(2099010100L, "AERO", "SSS");
+            server.setDelayMillis(300);
+            TldVerify tldVerify = server.newTldVerify();
+            tldVerify.setStaleAfter(1, TimeUnit.HOURS);
+            long start = System.nanoTime();
+            assertThat(tldVerify.verifyTldOffline("example.sss")).isFalse();
+            assertThat(tldVerify.verifyTldOffline("icann.org")).isTrue();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(300);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!cacheFile.isFile() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(tldVerify.getTldListVersion()).isEqualTo(2099010100L);
+            assertThat(tldVerify.verifyTldOffline("example.sss")).isTrue();
+            assertThat(tldVerify.verifyTldOffline("example.sss")).isTrue();
+            assertThat(server.getListRequests()).isEqualTo(1);
+        } finally {
+            server.stop();
+            FileUtils.deleteQuietly(cacheFile);
+        }
+    }
+
+    @Test
+    public void testVerifyTldRootZone() throws Exception {
+        TldVerify tldVerify = new TldVerify();
+        assertThat(tldVerify.getRootZoneSerial()).isEqualTo(-1L);
+        try {
+            tldVerify.verifyTldRootZone("icann.org");
+            fail("Expected a root zone file to be required");
+        } catch (TLDVerifyException e) {
+            assertThat(e.getMessage()).contains("root zone");
+        }
+        File file = File.createTempFile("root", ".zone");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, RootZoneTest.ZONE, "US-ASCII");
+        tldVerify.setRootZoneFile(file.getPath());
+        assertThat(tldVerify.getRootZoneSerial()).isEqualTo(2024040200L);
+        assertThat(tldVerify.verifyTldRootZone("icann.org")).isTrue();
+        assertThat(tldVerify.verifyTldRootZone("ICANN.COM.")).isTrue();
+        assertThat(tldVerify.verifyTldRootZone("example.\u0440\u0444")).isTrue();
+        assertThat(tldVerify.verifyTldRootZone("example.net")).isFalse();
+        assertThat(tldVerify.verifyTldRootZone("example.undelegated")).isFalse();
+        assertThat(tldVerify.isTldSigned("icann.com")).isTrue();
+        assertThat(tldVerify.isTldSigned("example.xn--p1ai")).isTrue();
+        assertThat(tldVerify.isTldSigned("icann.org")).isFalse();
+        assertThat(tldVerify.isTldSigned("example.undelegated")).isFalse();
+    }
+
+    @Test
+    public void testSuggestTlds() throws Exception {
+        TldVerify tldVerify = newOfflineTldVerify("COM", "CO", "ORG", "NET", "XN--P1AI");
+        assertThat(tldVerify.suggestTlds("example.cmo")).isEqualTo(Arrays.asList("CO", "COM"));
+        assertThat(tldVerify.suggestTlds("example.ogr.")).isEqualTo(Arrays.asList("ORG"));
+        assertThat(tldVerify.suggestTlds("example.com")).isEqualTo(Arrays.asList("COM", "CO"));
+        assertThat(tldVerify.suggestTlds("example.nte", 1, 1)).isEqualTo(Arrays.asList("NET"));
+        assertThat(tldVerify.suggestTlds("example.\u0440\u0444", 0, 5)).isEqualTo(Arrays.asList("XN--P1AI"));
+        assertThat(tldVerify.suggestTlds("example.info")).isEmpty();
+        try {
+            tldVerify.suggestTlds("example.com", TldVerify.MAX_SUGGESTION_DISTANCE + 1, 5);
+            fail("Expected the distance to be bounded");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("distance");
+        }
+    }
+
+    static TldVerify newOfflineTldVerify(String... tlds) throws Exception {
+        File file = writeCacheFile(2006120301L, tlds);
+        TldVerify tldVerify = new TldVerify();
+        tldVerify.verifyTldOffline(tlds[0], file.getPath());
+        return tldVerify;
+    }
+
+    static File writeCacheFile(long version, String... tlds) throws IOException {
+        File file = File.createTempFile("tlds-alpha-by-domain", ".txt");
+        file.deleteOnExit();
+        StringBuilder content = new StringBuilder("# Version " + version + ", Last Updated Mon Dec  4 09:07:02 2006 UTC\n");
+        for (String tld : tlds) {
+            content.append(tld).append('\n');
+        }
+        FileUtils.writeStringToFile(file, content.toString(), "US-ASCII");
+        return file;
+    }
+}
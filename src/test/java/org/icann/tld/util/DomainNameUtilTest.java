@@ -26,6 +26,9 @@ package org.icann.tld.util;
 
 
 import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 public class DomainNameUtilTest {
@@ -43,4 +46,89 @@ public class DomainNameUtilTest {
         tld = new DomainNameUtil().getTopLevelDomain("org");
         assertThat("org").isEqualTo(tld);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetTopLevelDomainBounds() throws Exception {
+        DomainNameUtil util = new DomainNameUtil();
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds("icann.org"), "icann.org")).isEqualTo("org");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds("icann.org."), "icann.org.")).isEqualTo("org");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds(".icann.org."), ".icann.org.")).isEqualTo("org");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds(".AERO."), ".AERO.")).isEqualTo("AERO");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds("org"), "org")).isEqualTo("org");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds("."), ".")).isEqualTo("");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds("org.."), "org..")).isEqualTo("");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds(new StringBuilder("icann.org")), "icann.org")).isEqualTo("org");
+    }
+
+    @Test
+    public void testGetTopLevelDomainBoundsWithOffset() throws Exception {
+        DomainNameUtil util = new DomainNameUtil();
+        String line = "www.icann.org. 3600 IN A";
+        long bounds = util.getTopLevelDomainBounds(line, 0, 14);
+        assertThat(topLevelDomain(bounds, line)).isEqualTo("org");
+        bounds = util.getTopLevelDomainBounds(line, 4, 5);
+        assertThat(topLevelDomain(bounds, line)).isEqualTo("icann");
+
+        char[] chars = line.toCharArray();
+        bounds = util.getTopLevelDomainBounds(chars, 0, 14);
+        assertThat(topLevelDomain(bounds, line)).isEqualTo("org");
+        bounds = util.getTopLevelDomainBounds("icann.org".toCharArray());
+        assertThat(topLevelDomain(bounds, "icann.org")).isEqualTo("org");
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testGetTopLevelDomainBoundsOutOfRange() throws Exception {
+        new DomainNameUtil().getTopLevelDomainBounds("icann.org", 5, 5);
+    }
+
+    @Test
+    public void testGetTopLevelDomainBoundsOfBytes() throws Exception {
+        DomainNameUtil util = new DomainNameUtil();
+        String line = "www.icann.org. 3600 IN A";
+        byte[] bytes = line.getBytes("US-ASCII");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds(bytes, 0, 14), line)).isEqualTo("org");
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds(bytes, 4, 5), line)).isEqualTo("icann");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 4, 10);
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds(buffer), line)).isEqualTo("org");
+        assertThat(buffer.position()).isEqualTo(4);
+        assertThat(topLevelDomain(util.getTopLevelDomainBounds(ByteBuffer.wrap(new byte[]{'.'})), ".")).isEqualTo("");
+    }
+
+    @Test
+    public void testGetWireTopLevelDomainBounds() throws Exception {
+        DomainNameUtil util = new DomainNameUtil();
+        byte[] wire = {5, 'i', 'c', 'a', 'n', 'n', 3, 'o', 'r', 'g', 0, 0, 1};
+        long bounds = util.getWireTopLevelDomainBounds(wire, 0, wire.length);
+        assertThat(DomainNameUtil.topLevelDomainStart(bounds)).isEqualTo(7);
+        assertThat(DomainNameUtil.topLevelDomainEnd(bounds)).isEqualTo(10);
+        bounds = util.getWireTopLevelDomainBounds(wire, 0, 10);
+        assertThat(DomainNameUtil.topLevelDomainEnd(bounds)).isEqualTo(10);
+        bounds = util.getWireTopLevelDomainBounds(wire, 0, 6);
+        assertThat(DomainNameUtil.topLevelDomainStart(bounds)).isEqualTo(1);
+        assertThat(DomainNameUtil.topLevelDomainEnd(bounds)).isEqualTo(6);
+        bounds = util.getWireTopLevelDomainBounds(wire, 10, 1);
+        assertThat(DomainNameUtil.topLevelDomainEnd(bounds) - DomainNameUtil.topLevelDomainStart(bounds)).isEqualTo(0);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(wire.length);
+        buffer.put(wire).flip();
+        bounds = util.getWireTopLevelDomainBounds(buffer);
+        assertThat(DomainNameUtil.topLevelDomainStart(bounds)).isEqualTo(7);
+        assertThat(DomainNameUtil.topLevelDomainEnd(bounds)).isEqualTo(10);
+        assertThat(buffer.position()).isEqualTo(0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGetWireTopLevelDomainBoundsCompressed() throws Exception {
+        new DomainNameUtil().getWireTopLevelDomainBounds(new byte[]{3, 'w', 'w', 'w', (byte) 0xC0, 12}, 0, 6);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGetWireTopLevelDomainBoundsTruncated() throws Exception {
+        new DomainNameUtil().getWireTopLevelDomainBounds(new byte[]{5, 'i', 'c', 'a'}, 0, 4);
+    }
+
+    private static String topLevelDomain(long bounds, String domainName) {
+        return domainName.substring(DomainNameUtil.topLevelDomainStart(bounds), DomainNameUtil.topLevelDomainEnd(bounds));
+    }
+}